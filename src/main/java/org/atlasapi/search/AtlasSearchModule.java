@@ -8,12 +8,14 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.metabroadcast.common.health.HealthProbe;
 import com.metabroadcast.common.persistence.mongo.DatabasedMongo;
 import com.metabroadcast.common.persistence.mongo.DatabasedMongoClient;
 import com.metabroadcast.common.persistence.mongo.MongoSecondaryReadPreferenceBuilder;
 import com.metabroadcast.common.properties.Configurer;
 import com.metabroadcast.common.scheduling.SimpleScheduler;
+import com.metabroadcast.common.time.SystemClock;
 import com.metabroadcast.common.webapp.health.HealthController;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientOptions;
@@ -48,16 +50,34 @@ import org.atlasapi.persistence.lookup.mongo.MongoLookupEntryStore;
 import org.atlasapi.search.loader.ContentBootstrapper;
 import org.atlasapi.search.searcher.BroadcastBooster;
 import org.atlasapi.search.searcher.ChannelGroupBroadcastChannelBooster;
+import org.atlasapi.search.searcher.FuzzyExpansionsProbe;
+import org.atlasapi.search.searcher.FuzzyPruning;
 import org.atlasapi.search.searcher.LuceneContentIndex;
+import org.atlasapi.search.searcher.QueryComplexityLimits;
+import org.atlasapi.search.searcher.QueryDegradationsProbe;
+import org.atlasapi.search.searcher.RewrittenQueryCache;
+import org.atlasapi.search.searcher.RewrittenQueryCacheProbe;
+import org.atlasapi.search.searcher.SearchResultsCache;
+import org.atlasapi.search.searcher.SearchResultsCacheProbe;
+import org.atlasapi.search.searcher.SearchTiersProbe;
+import org.atlasapi.search.searcher.SearchTimeoutsProbe;
+import org.atlasapi.search.searcher.ShardLayout;
+import org.atlasapi.search.searcher.TermFilterCache;
+import org.atlasapi.search.searcher.TermFilterCacheProbe;
+import org.atlasapi.search.searcher.TitleSynonyms;
 import org.atlasapi.search.view.JsonSearchResultsView;
 import org.atlasapi.search.www.BackupController;
 import org.atlasapi.search.www.ContentIndexController;
 import org.atlasapi.search.www.DocumentController;
+import org.atlasapi.search.www.SynonymsController;
 import org.atlasapi.search.www.WebAwareModule;
+import org.joda.time.Duration;
 import org.springframework.context.annotation.Bean;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Executors;
 
 import static org.atlasapi.persistence.content.listing.ContentListingCriteria.defaultCriteria;
 
@@ -76,6 +96,28 @@ public class AtlasSearchModule extends WebAwareModule {
     private final int cassandraRequestTimeout = Configurer.get("cassandra.requestTimeout").toInt();
     private final String luceneDir = Configurer.get("lucene.contentDir").get();
     private final String luceneIndexAtStartup = Configurer.get("lucene.indexAtStartup", "").get();
+    private final String luceneShards = Configurer.get("lucene.shards", "").get();
+    private final String luceneNearRealTimeReopenMillis = Configurer.get("lucene.nearRealTimeReopenMillis", "").get();
+    private final String resultsCacheSize = Configurer.get("search.resultsCache.size", "").get();
+    private final String resultsCacheMaxStalenessMillis = Configurer.get("search.resultsCache.maxStalenessMillis", "0").get();
+    private final String rewrittenQueryCacheSize = Configurer.get("search.rewrittenQueryCache.size", "").get();
+    private final String cursorRetentionMillis = Configurer.get("search.cursorRetentionMillis", "0").get();
+    private final String searchTimeoutMillis = Configurer.get("search.timeoutMillis", "").get();
+    private final String cascadingTiers = Configurer.get("search.cascadingTiers", "false").get();
+    private final String fuzzyWellAttestedDocFreq = Configurer.get("search.fuzzy.wellAttestedDocFreq", "").get();
+    private final String fuzzyShortTokenLength = Configurer.get("search.fuzzy.shortTokenLength", "4").get();
+    private final String fuzzyShortTokenMaxExpansions = Configurer.get("search.fuzzy.shortTokenMaxExpansions", "10").get();
+    private final String synonymsFile = Configurer.get("search.synonyms.file", "").get();
+    private final String prefixFieldsMaxLength = Configurer.get("search.prefixFields.maxLength", "").get();
+    private final String shingles = Configurer.get("search.shingles", "false").get();
+    private final String rankedPartitionMaxHits = Configurer.get("search.rankedPartition.maxHits", "").get();
+    private final String complexityMaxCost = Configurer.get("search.complexity.maxCost", "").get();
+    private final String complexityMaxTokens = Configurer.get("search.complexity.maxTokens", "12").get();
+    private final String complexityPolicy = Configurer.get("search.complexity.policy", "degrade").get();
+    private final String batchThreads = Configurer.get("search.batch.threads", "").get();
+    private final String batchMaxQueries = Configurer.get("search.batch.maxQueries", "50").get();
+    private final String parallelSearchThreads = Configurer.get("lucene.parallelSearch.threads", "").get();
+    private final String parallelSearchMaxConcurrentTasks = Configurer.get("lucene.parallelSearch.maxConcurrentTasks", "").get();
 	private final String enablePeople = Configurer.get("people.enabled").get();
 	private final String enableMusic = Configurer.get("music.enabled").get();
 	private final String enableCassandra = Configurer.get("cassandra.enabled").get();
@@ -96,18 +138,89 @@ public class AtlasSearchModule extends WebAwareModule {
 	    SimpleScheduler simplescheduler = new SimpleScheduler();
 
 	    channelStore.start();
-        LuceneContentIndex index = new LuceneContentIndex(
+        Builder<HealthProbe> probes = ImmutableList.builder();
+
+        TermFilterCache termFilterCache = new TermFilterCache();
+        probes.add(new TermFilterCacheProbe(termFilterCache));
+        LuceneContentIndex.Builder indexBuilder = LuceneContentIndex.builder(
                 new File(luceneDir), 
                 contentResolver, 
                 booster,
                 channelStore, 
                 backupDirectory
-        );
+        )
+            .withCursorRetention(Duration.millis(Long.parseLong(cursorRetentionMillis)))
+            .withTermFilterCache(termFilterCache)
+            .withShardLayout(ShardLayout.fromSpec(luceneShards));
+        if (!Strings.isNullOrEmpty(luceneNearRealTimeReopenMillis)) {
+            indexBuilder.withNearRealTimeReopen(Duration.millis(Long.parseLong(luceneNearRealTimeReopenMillis)));
+        }
+        if (!Strings.isNullOrEmpty(searchTimeoutMillis)) {
+            indexBuilder.withDefaultTimeout(Duration.millis(Long.parseLong(searchTimeoutMillis)));
+        }
+        if (!Strings.isNullOrEmpty(synonymsFile)) {
+            try {
+                indexBuilder.withSynonyms(TitleSynonyms.fromFile(new File(synonymsFile)));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (!Strings.isNullOrEmpty(prefixFieldsMaxLength)) {
+            indexBuilder.withPrefixFields(Integer.parseInt(prefixFieldsMaxLength));
+        }
+        if (Boolean.parseBoolean(shingles)) {
+            indexBuilder.withShingles();
+        }
+        if (!Strings.isNullOrEmpty(rankedPartitionMaxHits)) {
+            indexBuilder.withRankedPartition(Integer.parseInt(rankedPartitionMaxHits));
+        }
+        if (!Strings.isNullOrEmpty(complexityMaxCost)) {
+            indexBuilder.withComplexityLimits(QueryComplexityLimits.of(Integer.parseInt(complexityMaxTokens), 
+                    Integer.parseInt(complexityMaxCost), QueryComplexityLimits.Policy.valueOf(complexityPolicy.toUpperCase())));
+        }
+        if (Boolean.parseBoolean(cascadingTiers)) {
+            indexBuilder.withCascadingTiers();
+        }
+        if (!Strings.isNullOrEmpty(fuzzyWellAttestedDocFreq)) {
+            indexBuilder.withFuzzyPruning(FuzzyPruning.of(Integer.parseInt(fuzzyWellAttestedDocFreq), 
+                    Integer.parseInt(fuzzyShortTokenLength), Integer.parseInt(fuzzyShortTokenMaxExpansions)));
+        }
+        if (!Strings.isNullOrEmpty(batchThreads)) {
+            indexBuilder.withBatchExecutor(Executors.newFixedThreadPool(Integer.parseInt(batchThreads), 
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("search-batch-%d").build()));
+        }
+        if (!Strings.isNullOrEmpty(parallelSearchThreads)) {
+            int threads = Integer.parseInt(parallelSearchThreads);
+            int maxConcurrentTasks = Strings.isNullOrEmpty(parallelSearchMaxConcurrentTasks) 
+                                         ? threads 
+                                         : Integer.parseInt(parallelSearchMaxConcurrentTasks);
+            indexBuilder.withParallelSegmentSearch(Executors.newFixedThreadPool(threads, 
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("lucene-segment-search-%d").build()), 
+                    maxConcurrentTasks);
+        }
+        if (!Strings.isNullOrEmpty(resultsCacheSize)) {
+            SearchResultsCache resultsCache = new SearchResultsCache(
+                    Long.parseLong(resultsCacheSize), 
+                    Duration.millis(Long.parseLong(resultsCacheMaxStalenessMillis)), 
+                    new SystemClock()
+            );
+            indexBuilder.withResultsCache(resultsCache);
+            probes.add(new SearchResultsCacheProbe(resultsCache));
+        }
+        if (!Strings.isNullOrEmpty(rewrittenQueryCacheSize)) {
+            RewrittenQueryCache rewrittenQueries = new RewrittenQueryCache(Long.parseLong(rewrittenQueryCacheSize));
+            indexBuilder.withRewrittenQueryCache(rewrittenQueries);
+            probes.add(new RewrittenQueryCacheProbe(rewrittenQueries));
+        }
+        LuceneContentIndex index = indexBuilder.build();
+        probes.add(new SearchTimeoutsProbe(index.timeouts()));
+        probes.add(new SearchTiersProbe(index.tiers()));
+        probes.add(new FuzzyExpansionsProbe(index.fuzzyExpansions()));
+        probes.add(new QueryDegradationsProbe(index.degradations()));
 
 //        IndexBackupScheduledTask indexBackupTask = new IndexBackupScheduledTask(index);
 //        simplescheduler.schedule(indexBackupTask, RepetitionRules.every(Duration.standardHours(24)));
 
-        Builder<HealthProbe> probes = ImmutableList.builder();
 
 //        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(3);
 //        ReloadingContentBootstrapper mongoBootstrapper = new ReloadingContentBootstrapper(index, mongoBootstrapper(), scheduler, Boolean.valueOf(luceneIndexAtStartup), 180, TimeUnit.MINUTES);
@@ -128,9 +241,15 @@ public class AtlasSearchModule extends WebAwareModule {
         // TODO: these need to be created using @Bean methods for any autowiring to work
 		bind("/system/health", new HealthController(probes.build()));
 		bind("/titles", new SearchServlet(new JsonSearchResultsView(), index));
+		bind("/titles/batch", new BatchSearchServlet(new JsonSearchResultsView(), index, Integer.parseInt(batchMaxQueries)));
+		bind("/titles/suggest", new SuggestServlet(new JsonSearchResultsView(), index));
 		bind("/debug/document", new DocumentController(index));
 		bind("/index", new ContentIndexController(new LookupResolvingContentResolver(contentResolver, lookupEntryStore), index));
 		bind("/system/backup", new BackupController(index));
+		if (!Strings.isNullOrEmpty(synonymsFile)) {
+		    bind("/system/synonyms/reload", new SynonymsController(new File(synonymsFile), 
+		            new LookupResolvingContentResolver(contentResolver, lookupEntryStore), index));
+		}
 
 //		mongoBootstrapper.startAsync();
 //
@@ -0,0 +1,185 @@
+package org.atlasapi.search;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.metabroadcast.common.http.HttpStatusCode;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.atlasapi.search.SearchRequestParser.InvalidSearchRequestException;
+import org.atlasapi.search.model.SearchQuery;
+import org.atlasapi.search.model.SearchResultsError;
+import org.atlasapi.search.searcher.QueryTooComplexException;
+import org.atlasapi.search.searcher.SearchOptions;
+import org.atlasapi.search.view.SearchResultsView;
+import org.joda.time.Duration;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Runs several title searches in one request, against the same snapshot of the
+ * index. The body is a JSON array of objects, each holding the parameters of a
+ * /titles request, and the response is an array of their results in the same
+ * order. Timeout and priorityChannelGroup parameters on the request itself
+ * apply to each search; entries can't have a cursor, a timeout or a channel
+ * group of their own. If any search is rejected as too complex, the request
+ * fails as a bad request.
+ */
+public class BatchSearchServlet extends HttpServlet {
+
+    private static final Log log = LogFactory.getLog(BatchSearchServlet.class);
+    private static final long serialVersionUID = 1L;
+    private final SearchResultsView view;
+    private final CursorContentSearcher searcher;
+    private final int maxQueries;
+
+    public BatchSearchServlet(SearchResultsView view, CursorContentSearcher searcher, int maxQueries) {
+        checkArgument(maxQueries > 0, "maxQueries must be positive");
+        this.view = checkNotNull(view);
+        this.searcher = checkNotNull(searcher);
+        this.maxQueries = maxQueries;
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        log.info(Utils.fullRequestURL(request));
+        JsonElement body;
+        try {
+            body = new JsonParser().parse(request.getReader());
+        } catch (JsonParseException e) {
+            badRequest(request, response, "Request body is not valid JSON");
+            return;
+        }
+        if (!body.isJsonArray()) {
+            badRequest(request, response, "Request body must be a JSON array of searches");
+            return;
+        }
+        JsonArray entries = body.getAsJsonArray();
+        if (entries.size() > maxQueries) {
+            badRequest(request, response, "At most " + maxQueries + " searches may be batched");
+            return;
+        }
+
+        SearchRequestParser parser = new SearchRequestParser();
+        SearchOptions.Builder options = SearchOptions.builder();
+        List<SearchQuery> queries = Lists.newArrayListWithCapacity(entries.size());
+        try {
+            Optional<Duration> timeout = parser.timeout(request);
+            if (timeout.isPresent()) {
+                options.withTimeout(timeout.get());
+            }
+            Optional<String> priorityChannelGroup = parser.priorityChannelGroup(request);
+            if (priorityChannelGroup.isPresent()) {
+                options.withPriorityChannelGroup(priorityChannelGroup.get());
+            }
+        } catch (InvalidSearchRequestException e) {
+            view.renderError(request, response, e.error());
+            return;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            Optional<Map<String, String>> parameters = parametersOf(entries.get(i));
+            if (!parameters.isPresent()) {
+                badRequest(request, response, "Search " + i + " must be an object of parameter values");
+                return;
+            }
+            if (parameters.get().containsKey("cursor") || parameters.get().containsKey("timeoutMillis")
+                    || parameters.get().containsKey("priorityChannelGroup")) {
+                badRequest(request, response, "Search " + i 
+                        + " can't have its own 'cursor', 'timeoutMillis' or 'priorityChannelGroup'");
+                return;
+            }
+            try {
+                queries.add(parser.query(new EntryRequest(request, parameters.get())));
+            } catch (InvalidSearchRequestException e) {
+                if (e.getCause() != null) {
+                    log.error(e.getCause().getMessage(), e.getCause());
+                }
+                SearchResultsError error = e.error();
+                view.renderError(request, response, new SearchResultsError(error.getCode(), "Search " + i + ": " + error.getMessage()));
+                return;
+            }
+        }
+        try {
+            view.render(searcher.search(queries, options.build()), request, response);
+        } catch (QueryTooComplexException e) {
+            badRequest(request, response, e.getMessage());
+        }
+    }
+
+    private Optional<Map<String, String>> parametersOf(JsonElement entry) {
+        if (!entry.isJsonObject()) {
+            return Optional.absent();
+        }
+        ImmutableMap.Builder<String, String> parameters = ImmutableMap.builder();
+        for (Entry<String, JsonElement> parameter : entry.getAsJsonObject().entrySet()) {
+            if (!parameter.getValue().isJsonPrimitive()) {
+                return Optional.absent();
+            }
+            parameters.put(parameter.getKey(), parameter.getValue().getAsString());
+        }
+        return Optional.<Map<String, String>>of(parameters.build());
+    }
+
+    private void badRequest(HttpServletRequest request, HttpServletResponse response, String message) throws IOException {
+        view.renderError(request, response, new SearchResultsError(HttpStatusCode.BAD_REQUEST, message));
+    }
+
+    /**
+     * Presents one entry of a batch as the parameters of a request.
+     */
+    private static final class EntryRequest extends HttpServletRequestWrapper {
+
+        private final Map<String, String> parameters;
+
+        private EntryRequest(HttpServletRequest request, Map<String, String> parameters) {
+            super(request);
+            this.parameters = parameters;
+        }
+
+        @Override
+        public String getParameter(String name) {
+            return parameters.get(name);
+        }
+
+        @Override
+        public String[] getParameterValues(String name) {
+            String value = parameters.get(name);
+            return value == null ? null : new String[] { value };
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Enumeration getParameterNames() {
+            return Iterators.asEnumeration(parameters.keySet().iterator());
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Map getParameterMap() {
+            Map<String, String[]> parameterMap = Maps.newHashMap();
+            for (Entry<String, String> parameter : parameters.entrySet()) {
+                parameterMap.put(parameter.getKey(), new String[] { parameter.getValue() });
+            }
+            return Collections.unmodifiableMap(parameterMap);
+        }
+    }
+}
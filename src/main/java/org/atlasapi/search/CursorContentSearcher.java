@@ -0,0 +1,25 @@
+package org.atlasapi.search;
+
+import java.util.List;
+
+import org.atlasapi.search.model.SearchQuery;
+import org.atlasapi.search.model.SearchResults;
+import org.atlasapi.search.searcher.SearchOptions;
+
+public interface CursorContentSearcher extends DebuggableContentSearcher {
+
+    /**
+     * Searches for the page following the options' cursor, if any, ignoring the
+     * query's offset. With default options this is the same as 
+     * {@link #search(SearchQuery)}.
+     */
+    SearchResults search(SearchQuery query, SearchOptions options);
+
+    /**
+     * Searches for each of the queries against the same snapshot of the index,
+     * returning their results in the same order. The options' timeout applies to
+     * each query, and they must not have a cursor.
+     */
+    List<SearchResults> search(List<SearchQuery> queries, SearchOptions options);
+
+}
@@ -0,0 +1,195 @@
+package org.atlasapi.search;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.atlasapi.media.entity.Publisher;
+import org.atlasapi.media.entity.Specialization;
+import org.atlasapi.search.model.SearchQuery;
+import org.atlasapi.search.model.SearchResultsError;
+import org.atlasapi.search.searcher.SearchCursor;
+import org.joda.time.Duration;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Longs;
+import com.metabroadcast.common.http.HttpStatusCode;
+import com.metabroadcast.common.query.Selection;
+import com.metabroadcast.common.query.Selection.SelectionBuilder;
+import com.metabroadcast.common.text.MoreStrings;
+
+/**
+ * Reads the parameters of a title search. One parser can read each entry of a
+ * batch, in which case entries naming the same publishers or specializations
+ * share the parsed lists. Not thread-safe.
+ */
+final class SearchRequestParser {
+
+    private static final SelectionBuilder SELECTION_BUILDER = Selection.builder();
+
+    private final Map<String, ImmutableList<Publisher>> publishers = Maps.newHashMap();
+    private final Map<String, Iterable<Specialization>> specializations = Maps.newHashMap();
+
+    SearchQuery query(HttpServletRequest request) throws InvalidSearchRequestException {
+        String title = request.getParameter("title");
+        if (title == null) {
+            throw badRequest("Missing required parameter 'title'");
+        }
+        float titleWeighting = floatParameter("titleWeighting", request);
+        float broadcastWeighting = floatParameter("broadcastWeighting", request);
+        float catchupWeighting = floatParameter("catchupWeighting", request);
+        float priorityChannelWeighting = priorityChannelBoost(request);
+
+        return SearchQuery.builder(title)
+            .withSelection(SELECTION_BUILDER.build(request))
+            .withSpecializations(specializations(request))
+            .withPublishers(publishers(request))
+            .withTitleWeighting(titleWeighting)
+            .withBroadcastWeighting(broadcastWeighting)
+            .withCatchupWeighting(catchupWeighting)
+            .withType(request.getParameter("type"))
+            .isTopLevelOnly(topLevelOnly(request))
+            .withCurrentBroadcastsOnly(currentBroadcastsOnly(request))
+            .withPriorityChannelWeighting(priorityChannelWeighting)
+            .build();
+    }
+
+    /**
+     * @return a query completing the prefix, filtered by the request's
+     *         parameters as a title search's are
+     */
+    SearchQuery suggestion(HttpServletRequest request, String prefix, int limit) throws InvalidSearchRequestException {
+        return SearchQuery.builder(prefix)
+            .withSelection(Selection.limitedTo(limit))
+            .withSpecializations(specializations(request))
+            .withPublishers(publishers(request))
+            .withType(request.getParameter("type"))
+            .isTopLevelOnly(topLevelOnly(request))
+            .withCurrentBroadcastsOnly(currentBroadcastsOnly(request))
+            .build();
+    }
+
+    Optional<SearchCursor> cursor(HttpServletRequest request) throws InvalidSearchRequestException {
+        String cursorParam = request.getParameter("cursor");
+        if (Strings.isNullOrEmpty(cursorParam)) {
+            return Optional.absent();
+        }
+        Optional<SearchCursor> cursor = SearchCursor.decode(cursorParam);
+        if (!cursor.isPresent()) {
+            throw badRequest("Invalid value of parameter 'cursor'");
+        }
+        return cursor;
+    }
+
+    Optional<Duration> timeout(HttpServletRequest request) throws InvalidSearchRequestException {
+        String timeoutParam = request.getParameter("timeoutMillis");
+        if (Strings.isNullOrEmpty(timeoutParam)) {
+            return Optional.absent();
+        }
+        Long timeoutMillis = Longs.tryParse(timeoutParam);
+        if (timeoutMillis == null || timeoutMillis < 0) {
+            throw badRequest("Invalid value of parameter 'timeoutMillis'");
+        }
+        return Optional.of(Duration.millis(timeoutMillis));
+    }
+
+    Optional<String> priorityChannelGroup(HttpServletRequest request) {
+        return Optional.fromNullable(Strings.emptyToNull(request.getParameter("priorityChannelGroup")));
+    }
+
+    ImmutableList<Publisher> publishers(HttpServletRequest request) throws InvalidSearchRequestException {
+        String publishersCsv = request.getParameter("publishers");
+        if (Strings.isNullOrEmpty(publishersCsv)) {
+            throw badRequest("Missing required (and non-empty) parameter 'publishers'");
+        }
+        ImmutableList<Publisher> parsed = publishers.get(publishersCsv);
+        if (parsed != null) {
+            return parsed;
+        }
+        try {
+            parsed = Publisher.fromCsv(publishersCsv);
+        } catch (IllegalArgumentException e) {
+            throw badRequest(e.getMessage());
+        } catch (Exception e) {
+            throw new InvalidSearchRequestException(new SearchResultsError(HttpStatusCode.SERVER_ERROR, "Problem processing specified publishers"), e);
+        }
+        publishers.put(publishersCsv, parsed);
+        return parsed;
+    }
+
+    private Iterable<Specialization> specializations(HttpServletRequest request) {
+        String specializationsCsv = request.getParameter("specializations");
+        if (specializationsCsv == null || specializationsCsv.isEmpty()) {
+            return Arrays.asList(Specialization.FILM, Specialization.TV, Specialization.RADIO);
+        }
+        Iterable<Specialization> parsed = specializations.get(specializationsCsv);
+        if (parsed == null) {
+            parsed = Specialization.fromCsv(specializationsCsv);
+            specializations.put(specializationsCsv, parsed);
+        }
+        return parsed;
+    }
+
+    private Boolean topLevelOnly(HttpServletRequest request) {
+        String param = request.getParameter("topLevelOnly");
+        if (param == null || "true".equals(param)) {
+            return true;
+        }
+        return false;
+    }
+
+    private float priorityChannelBoost(HttpServletRequest request) {
+        String param = request.getParameter("priorityChannelWeighting");
+        if(param == null) {
+            return 1.0f;
+        }
+        return Float.parseFloat(param);
+    }
+
+    private Boolean currentBroadcastsOnly(HttpServletRequest request) {
+        String param = request.getParameter("currentBroadcastsOnly");
+        if (param == null || "false".equals(param)) {
+            return false;
+        }
+        return true;
+    }
+
+    private float floatParameter(String parameterName, HttpServletRequest request) throws InvalidSearchRequestException {
+        String parameterValue = request.getParameter(parameterName);
+        if (Strings.isNullOrEmpty(parameterValue)) {
+            throw badRequest("Missing required parameter '" + parameterName + "'");
+        }
+        if (!MoreStrings.containsOnlyDecimalCharacters(parameterValue)) {
+            throw badRequest("Invalid value of parameter '" + parameterName + "'");
+        }
+        return Float.parseFloat(parameterValue);
+    }
+
+    private static InvalidSearchRequestException badRequest(String message) {
+        return new InvalidSearchRequestException(new SearchResultsError(HttpStatusCode.BAD_REQUEST, message));
+    }
+
+    static final class InvalidSearchRequestException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+        private final SearchResultsError error;
+
+        InvalidSearchRequestException(SearchResultsError error) {
+            super(error.getMessage());
+            this.error = error;
+        }
+
+        InvalidSearchRequestException(SearchResultsError error, Throwable cause) {
+            super(error.getMessage(), cause);
+            this.error = error;
+        }
+
+        SearchResultsError error() {
+            return error;
+        }
+    }
+}
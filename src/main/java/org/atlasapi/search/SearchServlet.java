@@ -1,20 +1,19 @@
 package org.atlasapi.search;
 
-import com.google.common.base.Strings;
-import com.google.common.collect.ImmutableList;
-import com.metabroadcast.common.base.Maybe;
+import com.google.common.base.Optional;
 import com.metabroadcast.common.http.HttpStatusCode;
 import com.metabroadcast.common.media.MimeType;
-import com.metabroadcast.common.query.Selection;
-import com.metabroadcast.common.query.Selection.SelectionBuilder;
-import com.metabroadcast.common.text.MoreStrings;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.atlasapi.media.entity.Publisher;
-import org.atlasapi.media.entity.Specialization;
+import org.atlasapi.search.SearchRequestParser.InvalidSearchRequestException;
 import org.atlasapi.search.model.SearchQuery;
 import org.atlasapi.search.model.SearchResultsError;
+import org.atlasapi.search.searcher.CursorExpiredException;
+import org.atlasapi.search.searcher.QueryTooComplexException;
+import org.atlasapi.search.searcher.SearchCursor;
+import org.atlasapi.search.searcher.SearchOptions;
 import org.atlasapi.search.view.SearchResultsView;
+import org.joda.time.Duration;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -22,17 +21,15 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Arrays;
 
 public class SearchServlet extends HttpServlet {
 
     private static final Log log = LogFactory.getLog(SearchServlet.class);
-    private static final SelectionBuilder SELECTION_BUILDER = Selection.builder();
     private static final long serialVersionUID = 1L;
     private final SearchResultsView view;
-    private final DebuggableContentSearcher searcher;
+    private final CursorContentSearcher searcher;
 
-    public SearchServlet(SearchResultsView view, DebuggableContentSearcher searcher) {
+    public SearchServlet(SearchResultsView view, CursorContentSearcher searcher) {
         this.view = view;
         this.searcher = searcher;
     }
@@ -40,112 +37,44 @@ public class SearchServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         log.info(Utils.fullRequestURL(request));
-        String title = request.getParameter("title");
-        if (title == null) {
-            view.renderError(request, response, new SearchResultsError(HttpStatusCode.BAD_REQUEST, "Missing required parameter 'title'"));
-            return;
-        }
-
-        Maybe<Float> titleWeighting = getFloatParameter("titleWeighting", request, response);
-        if (titleWeighting.isNothing()) {
-            return;
-        }
-
-        Maybe<Float> broadcastWeighting = getFloatParameter("broadcastWeighting", request, response);
-        if (broadcastWeighting.isNothing()) {
-            return;
-        }
-
-        Maybe<Float> catchupWeighting = getFloatParameter("catchupWeighting", request, response);
-        if (catchupWeighting.isNothing()) {
-            return;
-        }
-        
-        float priorityChannelWeighting = priorityChannelBoost(request);
-
-        String publishersCsv = request.getParameter("publishers");
-        if (Strings.isNullOrEmpty(publishersCsv)) {
-            view.renderError(request, response, new SearchResultsError(HttpStatusCode.BAD_REQUEST, "Missing required (and non-empty) parameter 'publishers'"));
-            return;
-        }
-
-        ImmutableList<Publisher> publishers = ImmutableList.of();
+        SearchRequestParser parser = new SearchRequestParser();
+        SearchQuery query;
+        SearchOptions.Builder options = SearchOptions.builder();
         try {
-            publishers = Publisher.fromCsv(publishersCsv);
-        } catch (IllegalArgumentException e) {
-            view.renderError(request, response, new SearchResultsError(HttpStatusCode.BAD_REQUEST, e.getMessage()));
-            return;
-        } catch (Exception e) {
-            view.renderError(request, response, new SearchResultsError(HttpStatusCode.SERVER_ERROR, "Problem processing specified publishers"));
-            log.error(e.getMessage(), e);
+            query = parser.query(request);
+            Optional<SearchCursor> cursor = parser.cursor(request);
+            if (cursor.isPresent()) {
+                options.withCursor(cursor.get());
+            }
+            Optional<Duration> timeout = parser.timeout(request);
+            if (timeout.isPresent()) {
+                options.withTimeout(timeout.get());
+            }
+            Optional<String> priorityChannelGroup = parser.priorityChannelGroup(request);
+            if (priorityChannelGroup.isPresent()) {
+                options.withPriorityChannelGroup(priorityChannelGroup.get());
+            }
+        } catch (InvalidSearchRequestException e) {
+            if (e.getCause() != null) {
+                log.error(e.getCause().getMessage(), e.getCause());
+            }
+            view.renderError(request, response, e.error());
             return;
         }
-
-        String specializationsCsv = request.getParameter("specializations");
-        Iterable<Specialization> specializations = null;
-        if (specializationsCsv != null && !specializationsCsv.isEmpty()) {
-            specializations = Specialization.fromCsv(specializationsCsv);
-        } else {
-            specializations = Arrays.asList(Specialization.FILM, Specialization.TV, Specialization.RADIO);
-        }
-        SearchQuery query = SearchQuery.builder(title)
-            .withSelection(SELECTION_BUILDER.build(request))
-            .withSpecializations(specializations)
-            .withPublishers(publishers)
-            .withTitleWeighting(titleWeighting.requireValue())
-            .withBroadcastWeighting(broadcastWeighting.requireValue())
-            .withCatchupWeighting(catchupWeighting.requireValue())
-            .withType(request.getParameter("type"))
-            .isTopLevelOnly(topLevelOnly(request))
-            .withCurrentBroadcastsOnly(currentBroadcastsOnly(request))
-            .withPriorityChannelWeighting(priorityChannelWeighting)
-            .build();
-        if (request.getParameter("debug") != null) {
-            response.setContentType(MimeType.TEXT_PLAIN.toString());
-            ServletOutputStream outputStream = response.getOutputStream();
-            outputStream.write(searcher.debug(query).getBytes());
-        } else {
-            view.render(searcher.search(query), request, response);
-        }
-
-    }
-
-    private Boolean topLevelOnly(HttpServletRequest request) {
-        String param = request.getParameter("topLevelOnly");
-        if (param == null || "true".equals(param)) {
-            return true;
-        }
-        return false;
-    }
-    
-    private float priorityChannelBoost(HttpServletRequest request) {
-        String param = request.getParameter("priorityChannelWeighting");
-        if(param == null) {
-            return 1.0f;
-        }
-        return Float.parseFloat(param);
-    }
-    
-    private Boolean currentBroadcastsOnly(HttpServletRequest request) {
-        String param = request.getParameter("currentBroadcastsOnly");
-        if (param == null || "false".equals(param)) {
-            return false;
-        }
-        return true;
-    }
-
-    private Maybe<Float> getFloatParameter(String parameterName, HttpServletRequest request, HttpServletResponse response) throws IOException {
-        String parameterValue = request.getParameter(parameterName);
-        if (!Strings.isNullOrEmpty(parameterValue)) {
-            if (MoreStrings.containsOnlyDecimalCharacters(parameterValue)) {
-                return Maybe.just(Float.parseFloat(parameterValue));
+        try {
+            if (request.getParameter("debug") != null) {
+                String debug = searcher.debug(query);
+                response.setContentType(MimeType.TEXT_PLAIN.toString());
+                ServletOutputStream outputStream = response.getOutputStream();
+                outputStream.write(debug.getBytes());
             } else {
-                view.renderError(request, response, new SearchResultsError(HttpStatusCode.BAD_REQUEST, "Invalid value of parameter '" + parameterName + "'"));
-                return Maybe.nothing();
+                view.render(searcher.search(query, options.build()), request, response);
             }
-        } else {
-            view.renderError(request, response, new SearchResultsError(HttpStatusCode.BAD_REQUEST, "Missing required parameter '" + parameterName + "'"));
-            return Maybe.nothing();
+        } catch (QueryTooComplexException e) {
+            view.renderError(request, response, new SearchResultsError(HttpStatusCode.BAD_REQUEST, e.getMessage()));
+        } catch (CursorExpiredException e) {
+            view.renderError(request, response, new SearchResultsError(HttpStatusCode.BAD_REQUEST, e.getMessage()));
         }
+
     }
 }
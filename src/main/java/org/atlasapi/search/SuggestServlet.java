@@ -0,0 +1,77 @@
+package org.atlasapi.search;
+
+import com.google.common.base.Strings;
+import com.google.common.primitives.Ints;
+import com.metabroadcast.common.http.HttpStatusCode;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.atlasapi.search.SearchRequestParser.InvalidSearchRequestException;
+import org.atlasapi.search.model.SearchQuery;
+import org.atlasapi.search.model.SearchResultsError;
+import org.atlasapi.search.view.SearchResultsView;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Completes a title prefix for type-ahead, from the required 'prefix' and
+ * 'publishers' parameters, returning at most 'limit' results. Completions are
+ * filtered by the 'specializations', 'type', 'topLevelOnly' and
+ * 'currentBroadcastsOnly' parameters, with the same defaults as a title search.
+ */
+public class SuggestServlet extends HttpServlet {
+
+    private static final Log log = LogFactory.getLog(SuggestServlet.class);
+    private static final long serialVersionUID = 1L;
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 50;
+    private final SearchResultsView view;
+    private final TitleSuggester suggester;
+
+    public SuggestServlet(SearchResultsView view, TitleSuggester suggester) {
+        this.view = checkNotNull(view);
+        this.suggester = checkNotNull(suggester);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        log.debug(Utils.fullRequestURL(request));
+        String prefix = request.getParameter("prefix");
+        if (Strings.isNullOrEmpty(prefix)) {
+            badRequest(request, response, "Missing required (and non-empty) parameter 'prefix'");
+            return;
+        }
+
+        int limit = DEFAULT_LIMIT;
+        String limitParam = request.getParameter("limit");
+        if (!Strings.isNullOrEmpty(limitParam)) {
+            Integer parsed = Ints.tryParse(limitParam);
+            if (parsed == null || parsed < 1 || parsed > MAX_LIMIT) {
+                badRequest(request, response, "Parameter 'limit' must be between 1 and " + MAX_LIMIT);
+                return;
+            }
+            limit = parsed;
+        }
+
+        SearchQuery query;
+        try {
+            query = new SearchRequestParser().suggestion(request, prefix, limit);
+        } catch (InvalidSearchRequestException e) {
+            if (e.getCause() != null) {
+                log.error(e.getCause().getMessage(), e.getCause());
+            }
+            view.renderError(request, response, e.error());
+            return;
+        }
+        view.render(suggester.suggest(query), request, response);
+    }
+
+    private void badRequest(HttpServletRequest request, HttpServletResponse response, String message) throws IOException {
+        view.renderError(request, response, new SearchResultsError(HttpStatusCode.BAD_REQUEST, message));
+    }
+}
@@ -0,0 +1,17 @@
+package org.atlasapi.search;
+
+import org.atlasapi.search.model.SearchQuery;
+import org.atlasapi.search.model.SearchResults;
+
+public interface TitleSuggester {
+
+    /**
+     * @param query whose term is the prefix to complete, and whose selection's
+     *        limit is the most completions to return; its weightings are ignored
+     * @return content which the query's publishers, specializations, type and
+     *         flags allow, and whose title, or whose container's title, starts
+     *         with the prefix, best first
+     */
+    SearchResults suggest(SearchQuery query);
+
+}
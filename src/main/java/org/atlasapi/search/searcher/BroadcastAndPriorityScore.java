@@ -0,0 +1,137 @@
+package org.atlasapi.search.searcher;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.function.CustomScoreProvider;
+import org.apache.lucene.search.function.CustomScoreQuery;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * Scales the score of each hit by the distance from the hour the boosted
+ * docs are for to its closest broadcast, if the broadcast weighting isn't 0, then by the priority
+ * channel weighting if it's still to be broadcast on a priority channel.
+ * The broadcast hour is read from each segment's ranking columns, in one
+ * pass over the hits.
+ */
+final class BroadcastAndPriorityScore extends CustomScoreQuery {
+    
+    private static final long serialVersionUID = 1L;
+    private static final float ROUNDING_HEADROOM = 1e-4f;
+    private final RankingColumns rankingColumns;
+    private final PriorityBroadcasts.Boosted boosted;
+    private final Query subQuery;
+    private final int currentHour;
+    private final float broadcastWeighting;
+    private final float priorityChannelWeighting;
+    
+    BroadcastAndPriorityScore(Query subQuery, RankingColumns rankingColumns, 
+            PriorityBroadcasts.Boosted boosted, float broadcastWeighting, float priorityChannelWeighting) {
+        super(subQuery);
+        setStrict(true);
+        this.subQuery = subQuery;
+        this.rankingColumns = rankingColumns;
+        this.boosted = boosted;
+        this.currentHour = boosted.hour();
+        this.broadcastWeighting = broadcastWeighting;
+        this.priorityChannelWeighting = priorityChannelWeighting;
+    }
+    
+    @Override
+    protected CustomScoreProvider getCustomScoreProvider(IndexReader reader) throws IOException {
+        final RankingColumns.SegmentColumns columns = rankingColumns.forSegment(reader);
+        final boolean broadcastWeighted = broadcastWeighting != 0.0f;
+        final OpenBitSet onPriorityChannel = boosted.docs(reader);
+        return new CustomScoreProvider(reader) {
+            
+            @Override
+            public float customScore(int doc, float subQueryScore, float[] valSrcScores) {
+                float score = subQueryScore;
+                if (broadcastWeighted) {
+                    score = broadcastScore(score, columns.broadcastHour(doc));
+                }
+                if (onPriorityChannel.fastGet(doc)) {
+                    score = priorityChannelWeighting * score;
+                }
+                return score;
+            }
+            
+            @Override
+            public Explanation customExplain(int doc, Explanation subQueryExpl, Explanation[] valSrcExpls) {
+                Explanation explanation = new Explanation(customScore(doc, subQueryExpl.getValue(), new float[0]), 
+                        "broadcast and priority channel score, product of:");
+                explanation.addDetail(subQueryExpl);
+                if (broadcastWeighted) {
+                    explanation.addDetail(new Explanation(columns.broadcastHour(doc), "hour of closest broadcast"));
+                }
+                explanation.addDetail(new Explanation(onPriorityChannel.fastGet(doc) ? 1 : 0, 
+                        "on priority channel in future"));
+                return explanation;
+            }
+        };
+    }
+    
+    int currentHour() {
+        return currentHour;
+    }
+    
+    /**
+     * @return the most a doc outside the partition could score: its sub
+     *         query score is at most the query's {@link RankedPartition#maxScore},
+     *         with a little headroom for rounding, its broadcast is at least
+     *         the partition's window away, and it isn't lifted by the
+     *         priority channel weighting
+     */
+    float maxScoreOutsidePartition(IndexSearcher searcher, QueryBudget budget) throws IOException {
+        Query rewritten = budget.rewrite(subQuery, searcher.getIndexReader());
+        float maxSubQueryScore = RankedPartition.maxScore(rewritten, queryNorm(rewritten, searcher) * getBoost(), 
+                searcher) * (1.0f + ROUNDING_HEADROOM);
+        return getBoost() * broadcastScore(maxSubQueryScore, currentHour - RankedPartition.WINDOW_HOURS);
+    }
+    
+    /**
+     * @param others a query with the same structure as this one, whose
+     *        title query has only the clauses some docs could match
+     * @return the most such a doc could score: its sub query score is at
+     *         most the other query's {@link RankedPartition#maxScore} when
+     *         weighted by this query's norm, with a little headroom for
+     *         rounding, which a broadcast this hour and the priority channel
+     *         weighting may both lift
+     */
+    float maxScoreMatchingOnly(BroadcastAndPriorityScore others, IndexSearcher searcher, QueryBudget budget) 
+            throws IOException {
+        float norm = queryNorm(budget.rewrite(subQuery, searcher.getIndexReader()), searcher);
+        float maxSubQueryScore = RankedPartition.maxScore(budget.rewrite(others.subQuery, 
+                searcher.getIndexReader()), norm * getBoost(), searcher) * (1.0f + ROUNDING_HEADROOM);
+        if (broadcastWeighting > 0.0f) {
+            maxSubQueryScore = broadcastScore(maxSubQueryScore, currentHour);
+        }
+        return getBoost() * Math.max(1.0f, priorityChannelWeighting) * maxSubQueryScore;
+    }
+    
+    // Weighted as Query.weight weights this query, whose weight scales its
+    // sub query's by its boost.
+    private float queryNorm(Query rewrittenSubQuery, IndexSearcher searcher) throws IOException {
+        float sumOfSquaredWeights = rewrittenSubQuery.createWeight(searcher).sumOfSquaredWeights() 
+                * getBoost() * getBoost();
+        float norm = getSimilarity(searcher).queryNorm(sumOfSquaredWeights);
+        if (Float.isInfinite(norm) || Float.isNaN(norm)) {
+            return 1.0f;
+        }
+        return norm;
+    }
+    
+    private float broadcastScore(float subQueryScore, float broadcastHour) {
+        float hoursBetweenBroadcastAndNow = Math.abs(currentHour - broadcastHour);
+
+        // This is inverted; a higher number means we scale less. We up-weigh
+        // items broadcast or to be broadcast in the last week.
+        int scalingFactor = hoursBetweenBroadcastAndNow < LuceneContentIndex.HOURS_IN_A_WEEK ? 50 : 1;
+        
+        float broadcastScore = (float) (1f / ((hoursBetweenBroadcastAndNow / scalingFactor) + 1));
+        return subQueryScore + (broadcastWeighting * broadcastScore * subQueryScore);
+    }
+}
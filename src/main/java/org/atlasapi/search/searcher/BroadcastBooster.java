@@ -1,9 +1,23 @@
 package org.atlasapi.search.searcher;
 
-import org.atlasapi.media.entity.Broadcast;
+import java.util.Set;
 
+/**
+ * The channels whose broadcasts boost their content while they're still to
+ * come. Channels are asked for when searching, so a change to them applies
+ * without reindexing.
+ */
 public interface BroadcastBooster {
 
-    public boolean shouldBoost(Broadcast broadcast);
+    /**
+     * @return the URIs of the channels boosted by default
+     */
+    public Set<String> priorityChannels();
 
-}
\ No newline at end of file
+    /**
+     * @return the URIs of the channels in the given channel group, or none if
+     *         there's no such group
+     */
+    public Set<String> priorityChannels(String channelGroup);
+
+}
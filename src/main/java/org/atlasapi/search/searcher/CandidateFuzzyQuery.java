@@ -0,0 +1,206 @@
+package org.atlasapi.search.searcher;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
+
+import org.apache.lucene.index.FilterIndexReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FilteredTermEnum;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.FuzzyTermEnum;
+import org.apache.lucene.search.Query;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * A {@link FuzzyQuery} which only measures the edit distance to the terms
+ * {@link FuzzyCandidates} finds, rather than to every term sharing its prefix.
+ * Since those include every term it would match, it rewrites to exactly the
+ * same terms and boosts, less any {@link FuzzyPruning} removes.
+ */
+final class CandidateFuzzyQuery extends FuzzyQuery {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient FuzzyCandidates candidates;
+    private final transient FuzzyPruning pruning;
+    private final transient FuzzyExpansions expansions;
+
+    CandidateFuzzyQuery(FuzzyCandidates candidates, FuzzyPruning pruning, FuzzyExpansions expansions, 
+            Term term, float minimumSimilarity) {
+        super(term, minimumSimilarity, FuzzyCandidates.PREFIX_LENGTH);
+        this.candidates = candidates;
+        this.pruning = pruning;
+        this.expansions = expansions;
+    }
+
+    @Override
+    public Query rewrite(IndexReader reader) throws IOException {
+        Query rewritten = super.rewrite(reader);
+        expansions.expanded(rewritten instanceof BooleanQuery ? ((BooleanQuery) rewritten).clauses().size() : 1);
+        return rewritten;
+    }
+
+    @Override
+    protected FilteredTermEnum getEnum(IndexReader reader) throws IOException {
+        if (term.text().length() <= FuzzyCandidates.PREFIX_LENGTH) {
+            return super.getEnum(reader);
+        }
+        SortedSet<String> texts;
+        if (pruning.isWellAttested(reader.docFreq(term))) {
+            expansions.narrowed();
+            texts = ImmutableSortedSet.of(term.text());
+        } else {
+            texts = mostSimilar(reader, candidates.candidates(reader, term, getMinSimilarity()), 
+                    pruning.maxExpansions(term.text()));
+        }
+        return fuzzyEnum(reader, texts);
+    }
+
+    /**
+     * @return at least as many terms as the query will rewrite to against the
+     *         reader, found without measuring any edit distances
+     */
+    int estimatedExpansions(IndexReader reader) throws IOException {
+        if (term.text().length() <= FuzzyCandidates.PREFIX_LENGTH || pruning.isWellAttested(reader.docFreq(term))) {
+            return 1;
+        }
+        int candidateCount = candidates.candidates(reader, term, getMinSimilarity()).size();
+        return Math.max(1, Math.min(candidateCount, pruning.maxExpansions(term.text())));
+    }
+
+    private FuzzyTermEnum fuzzyEnum(IndexReader reader, SortedSet<String> texts) throws IOException {
+        return new FuzzyTermEnum(new CandidateReader(reader, term.field(), texts), term, getMinSimilarity(), getPrefixLength());
+    }
+
+    /**
+     * @return the candidates if no more than the given number match, otherwise
+     *         the most similar of those that do, preferring earlier terms
+     */
+    private SortedSet<String> mostSimilar(IndexReader reader, SortedSet<String> texts, int maxExpansions) throws IOException {
+        if (texts.size() <= maxExpansions) {
+            return texts;
+        }
+        List<ScoredText> matches = Lists.newArrayList();
+        FuzzyTermEnum matching = fuzzyEnum(reader, texts);
+        try {
+            do {
+                Term matched = matching.term();
+                if (matched == null) {
+                    break;
+                }
+                matches.add(new ScoredText(matched.text(), matching.difference()));
+            } while (matching.next());
+        } finally {
+            matching.close();
+        }
+        if (matches.size() <= maxExpansions) {
+            return texts;
+        }
+        expansions.capped();
+        Collections.sort(matches, MOST_SIMILAR_FIRST);
+        SortedSet<String> kept = Sets.newTreeSet();
+        for (ScoredText match : matches.subList(0, maxExpansions)) {
+            kept.add(match.text);
+        }
+        return kept;
+    }
+
+    private static final Comparator<ScoredText> MOST_SIMILAR_FIRST = new Comparator<ScoredText>() {
+
+        @Override
+        public int compare(ScoredText left, ScoredText right) {
+            int byDifference = Float.compare(right.difference, left.difference);
+            return byDifference != 0 ? byDifference : left.text.compareTo(right.text);
+        }
+    };
+
+    private static final class ScoredText {
+
+        private final String text;
+        private final float difference;
+
+        private ScoredText(String text, float difference) {
+            this.text = text;
+            this.difference = difference;
+        }
+    }
+
+    /**
+     * Reads as the wrapped reader does, except that its terms, from wherever
+     * they are asked for, are only the candidates.
+     */
+    private static final class CandidateReader extends FilterIndexReader {
+
+        private final String field;
+        private final SortedSet<String> texts;
+
+        private CandidateReader(IndexReader in, String field, SortedSet<String> texts) {
+            super(in);
+            this.field = field;
+            this.texts = texts;
+        }
+
+        @Override
+        public TermEnum terms() {
+            return new CandidateTermEnum(in, field, texts.iterator());
+        }
+
+        @Override
+        public TermEnum terms(Term t) {
+            return terms();
+        }
+    }
+
+    private static final class CandidateTermEnum extends TermEnum {
+
+        private final IndexReader reader;
+        private final String field;
+        private final Iterator<String> texts;
+        private Term current;
+
+        private CandidateTermEnum(IndexReader reader, String field, Iterator<String> texts) {
+            this.reader = reader;
+            this.field = field;
+            this.texts = texts;
+            this.current = texts.hasNext() ? new Term(field, texts.next()) : null;
+        }
+
+        @Override
+        public boolean next() {
+            QueryBudget.checkDeadline(reader);
+            current = texts.hasNext() ? new Term(field, texts.next()) : null;
+            return current != null;
+        }
+
+        @Override
+        public Term term() {
+            return current;
+        }
+
+        @Override
+        public int docFreq() {
+            if (current == null) {
+                return 0;
+            }
+            try {
+                return reader.docFreq(current);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
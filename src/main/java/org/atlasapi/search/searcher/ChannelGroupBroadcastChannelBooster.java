@@ -3,13 +3,14 @@ package org.atlasapi.search.searcher;
 import java.math.BigInteger;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.atlasapi.media.channel.Channel;
 import org.atlasapi.media.channel.ChannelGroup;
 import org.atlasapi.media.channel.ChannelGroupResolver;
 import org.atlasapi.media.channel.ChannelNumbering;
 import org.atlasapi.media.channel.ChannelResolver;
-import org.atlasapi.media.entity.Broadcast;
 import org.joda.time.DateTimeZone;
 import org.joda.time.Duration;
 import org.joda.time.LocalDate;
@@ -18,32 +19,40 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSet.Builder;
 import com.metabroadcast.common.base.Maybe;
 import com.metabroadcast.common.caching.BackgroundComputingValue;
 import com.metabroadcast.common.ids.SubstitutionTableNumberCodec;
 
+/**
+ * Boosts the channels of a channel group, refreshed hourly. Other groups asked
+ * for are held for an hour once resolved.
+ */
 public class ChannelGroupBroadcastChannelBooster implements BroadcastBooster {
 
     private static final Logger log = LoggerFactory.getLogger(ChannelGroupBroadcastChannelBooster.class);
     
+    private final ChannelGroupResolver channelGroupResolver;
     private final ChannelResolver channelResolver;
     private final BackgroundComputingValue<Set<String>> priorityChannels;
+    private final Cache<String, Set<String>> otherGroups = CacheBuilder.newBuilder()
+            .maximumSize(100)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
     private final SubstitutionTableNumberCodec codec = new SubstitutionTableNumberCodec();
 
-    public ChannelGroupBroadcastChannelBooster(final ChannelGroupResolver channelGroupResolver, ChannelResolver channelResolver, String channelGroup) {
-        final BigInteger channelGroupId = codec.decode(channelGroup);
+    public ChannelGroupBroadcastChannelBooster(ChannelGroupResolver channelGroupResolver, ChannelResolver channelResolver, final String channelGroup) {
+        this.channelGroupResolver = Preconditions.checkNotNull(channelGroupResolver);
         this.channelResolver = Preconditions.checkNotNull(channelResolver);
         this.priorityChannels = new BackgroundComputingValue<Set<String>>(Duration.standardHours(1), new Callable<Set<String>>() {
 
             @Override
             public Set<String> call() throws Exception {
-                Optional<ChannelGroup> channelGroup = channelGroupResolver.channelGroupFor(channelGroupId.longValue());
-                if (!channelGroup.isPresent()) {
-                    return ImmutableSet.of();
-                }
-                return getCurrentChannelsInGroup(channelGroup.get());
+                return channelsOf(channelGroup);
             }
             
         });
@@ -51,6 +60,20 @@ public class ChannelGroupBroadcastChannelBooster implements BroadcastBooster {
         priorityChannels.start();
     }
     
+    private Set<String> channelsOf(String channelGroup) {
+        BigInteger channelGroupId;
+        try {
+            channelGroupId = codec.decode(channelGroup);
+        } catch (IllegalArgumentException e) {
+            return ImmutableSet.of();
+        }
+        Optional<ChannelGroup> group = channelGroupResolver.channelGroupFor(channelGroupId.longValue());
+        if (!group.isPresent()) {
+            return ImmutableSet.of();
+        }
+        return getCurrentChannelsInGroup(group.get());
+    }
+    
     private Set<String> getCurrentChannelsInGroup(ChannelGroup channelGroup) {
 
         LocalDate today = new LocalDate(DateTimeZone.UTC);
@@ -71,7 +94,22 @@ public class ChannelGroupBroadcastChannelBooster implements BroadcastBooster {
     };
     
     @Override
-    public boolean shouldBoost(Broadcast broadcast) {
-        return broadcast.getTransmissionEndTime().isAfterNow() && priorityChannels.get().contains(broadcast.getBroadcastOn());
+    public Set<String> priorityChannels() {
+        return priorityChannels.get();
+    }
+    
+    @Override
+    public Set<String> priorityChannels(final String channelGroup) {
+        try {
+            return otherGroups.get(channelGroup, new Callable<Set<String>>() {
+
+                @Override
+                public Set<String> call() {
+                    return channelsOf(channelGroup);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
     }
 }
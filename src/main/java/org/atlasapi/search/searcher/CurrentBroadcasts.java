@@ -0,0 +1,137 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.metabroadcast.common.time.Clock;
+
+/**
+ * Matches the items whose closest broadcast is within {@link #WINDOW_HOURS}
+ * of the current hour, from the broadcast hours in each segment's
+ * {@link RankingColumns}, so that which items are current follows the clock
+ * rather than the time they were indexed.
+ *
+ * Each segment's set is cached for the current hour, keyed on the segment's
+ * core, and the sets of earlier hours are dropped once the hour moves on. Sets
+ * include docs deleted after they were built, which is harmless since filters
+ * only ever narrow the docs a query scorer matches.
+ */
+final class CurrentBroadcasts {
+
+    static final int WINDOW_HOURS = 24 * 8;
+
+    private static final long MILLIS_IN_HOUR = 60 * 60 * 1000;
+
+    private final RankingColumns rankingColumns;
+    private final TermFilterCache termFilterCache;
+    private final Term items;
+    private final Clock clock;
+    private volatile HourSets current = new HourSets(Integer.MIN_VALUE);
+
+    /**
+     * @param items the term items are indexed with, which other docs only have
+     *        if they have no broadcast hour
+     */
+    CurrentBroadcasts(RankingColumns rankingColumns, TermFilterCache termFilterCache, Term items, Clock clock) {
+        this.rankingColumns = checkNotNull(rankingColumns);
+        this.termFilterCache = checkNotNull(termFilterCache);
+        this.items = checkNotNull(items);
+        this.clock = checkNotNull(clock);
+    }
+
+    /**
+     * @return a filter of the items current in this hour
+     */
+    Filter filter() {
+        return filter((int) (clock.now().getMillis() / MILLIS_IN_HOUR));
+    }
+
+    /**
+     * @param hour the hour since the epoch; the sets of an hour before the
+     *        latest asked for aren't cached beyond the search asking
+     * @return a filter of the items current in the given hour
+     */
+    Filter filter(int hour) {
+        HourSets sets = current;
+        if (sets.hour != hour) {
+            sets = new HourSets(hour);
+            if (hour > current.hour) {
+                current = sets;
+            }
+        }
+        return new CurrentFilter(sets);
+    }
+
+    private DocIdSet load(IndexReader segment, int hour) throws IOException {
+        RankingColumns.SegmentColumns columns = rankingColumns.forSegment(segment);
+        OpenBitSet bits = new OpenBitSet(segment.maxDoc());
+        DocIdSetIterator itemDocs = termFilterCache.docIdSet(segment, items).iterator();
+        for (int doc = itemDocs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = itemDocs.nextDoc()) {
+            if (Math.abs(hour - columns.broadcastHour(doc)) < WINDOW_HOURS) {
+                bits.fastSet(doc);
+            }
+        }
+        return bits;
+    }
+
+    private final class HourSets {
+
+        private final int hour;
+        private final Cache<Object, DocIdSet> segments = CacheBuilder.newBuilder()
+                .weakKeys()
+                .build();
+
+        private HourSets(int hour) {
+            this.hour = hour;
+        }
+
+        DocIdSet docIdSet(final IndexReader segment) throws IOException {
+            try {
+                return segments.get(segment.getFieldCacheKey(), new Callable<DocIdSet>() {
+
+                    @Override
+                    public DocIdSet call() throws IOException {
+                        return load(segment, hour);
+                    }
+                });
+            } catch (ExecutionException e) {
+                Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+    }
+
+    private static final class CurrentFilter extends Filter {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient HourSets sets;
+
+        private CurrentFilter(HourSets sets) {
+            this.sets = sets;
+        }
+
+        @Override
+        public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+            return sets.docIdSet(reader);
+        }
+
+        @Override
+        public String toString() {
+            return "CurrentBroadcasts(" + sets.hour + ")";
+        }
+    }
+}
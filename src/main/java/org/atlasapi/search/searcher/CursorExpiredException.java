@@ -0,0 +1,15 @@
+package org.atlasapi.search.searcher;
+
+/**
+ * Thrown instead of searching when a {@link SearchCursor} comes from a searcher
+ * generation which is no longer retained, since its position means nothing in
+ * any other generation. The search must be started again without it.
+ */
+public final class CursorExpiredException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    CursorExpiredException(String message) {
+        super(message);
+    }
+}
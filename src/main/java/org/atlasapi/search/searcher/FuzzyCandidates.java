@@ -0,0 +1,203 @@
+package org.atlasapi.search.searcher;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.util.ReaderUtil;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Finds the terms of a field which could be within a fuzzy match of a term,
+ * without walking every term which shares its prefix.
+ *
+ * Each segment's terms are grouped by their first {@link #PREFIX_LENGTH}
+ * characters and then by length, so only the lengths a match allows are looked
+ * at. Each of those is kept only if the characters it has and lacks compared
+ * with the term don't already need more edits than a match allows. Both tests
+ * bound the edit distance from below, so every term a fuzzy match accepts is a
+ * candidate; the exact distance is left to {@link org.apache.lucene.search.FuzzyTermEnum}.
+ *
+ * Groups are keyed on the segment's core, so they are only built for segments
+ * new to a generation, and are dropped once a segment is no longer referenced.
+ */
+final class FuzzyCandidates {
+
+    static final int PREFIX_LENGTH = 2;
+
+    private static final int CHARACTER_BUCKETS = 128;
+
+    private final Cache<Object, ConcurrentMap<String, SegmentTerms>> segments = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    /**
+     * @param minimumSimilarity as given to the fuzzy query
+     * @return the texts of the candidate terms in any segment of the reader, in
+     *         term order, all starting with the term's first {@link #PREFIX_LENGTH}
+     *         characters
+     */
+    SortedSet<String> candidates(IndexReader reader, Term term, float minimumSimilarity) throws IOException {
+        String prefix = term.text().substring(0, PREFIX_LENGTH);
+        String suffix = term.text().substring(PREFIX_LENGTH);
+        int[] suffixCounts = characterCounts(suffix);
+
+        List<IndexReader> segmentReaders = Lists.newArrayList();
+        ReaderUtil.gatherSubReaders(segmentReaders, reader);
+        SortedSet<String> candidates = Sets.newTreeSet();
+        for (IndexReader segment : segmentReaders) {
+            String[][] byLength = termsFor(segment, term.field()).withPrefix(prefix);
+            for (int length = 1; length < byLength.length; length++) {
+                int maxDistance = maxDistance(minimumSimilarity, suffix.length(), length);
+                if (maxDistance < Math.abs(length - suffix.length())) {
+                    continue;
+                }
+                for (String text : byLength[length]) {
+                    if (countDistance(suffixCounts, text) <= maxDistance) {
+                        candidates.add(text);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * The most edits {@link org.apache.lucene.search.FuzzyTermEnum} allows
+     * between suffixes, computed as it does.
+     */
+    private static int maxDistance(float minimumSimilarity, int suffixLength, int otherLength) {
+        return (int) ((1 - minimumSimilarity) * (Math.min(suffixLength, otherLength) + PREFIX_LENGTH));
+    }
+
+    /**
+     * A lower bound on the edit distance between the suffix and the text after
+     * its prefix: each edit adds at most one missing character and removes at
+     * most one surplus one.
+     */
+    private static int countDistance(int[] suffixCounts, String text) {
+        int[] counts = suffixCounts.clone();
+        for (int i = PREFIX_LENGTH; i < text.length(); i++) {
+            counts[bucket(text.charAt(i))]--;
+        }
+        int missing = 0;
+        int surplus = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                missing += count;
+            } else {
+                surplus -= count;
+            }
+        }
+        return Math.max(missing, surplus);
+    }
+
+    private static int[] characterCounts(String text) {
+        int[] counts = new int[CHARACTER_BUCKETS];
+        for (int i = 0; i < text.length(); i++) {
+            counts[bucket(text.charAt(i))]++;
+        }
+        return counts;
+    }
+
+    // sharing a bucket only loosens the bound
+    private static int bucket(char c) {
+        return c < CHARACTER_BUCKETS ? c : CHARACTER_BUCKETS - 1;
+    }
+
+    private SegmentTerms termsFor(final IndexReader segment, final String field) throws IOException {
+        ConcurrentMap<String, SegmentTerms> fields;
+        try {
+            fields = segments.get(segment.getFieldCacheKey(), new Callable<ConcurrentMap<String, SegmentTerms>>() {
+
+                @Override
+                public ConcurrentMap<String, SegmentTerms> call() {
+                    return Maps.newConcurrentMap();
+                }
+            });
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+        SegmentTerms terms = fields.get(field);
+        if (terms == null) {
+            terms = SegmentTerms.load(segment, field);
+            SegmentTerms existing = fields.putIfAbsent(field, terms);
+            if (existing != null) {
+                terms = existing;
+            }
+        }
+        return terms;
+    }
+
+    private static final class SegmentTerms {
+
+        private static final String[][] NONE = new String[0][];
+
+        // by prefix, then by length after the prefix, in term order
+        private final Map<String, String[][]> byPrefix;
+
+        private SegmentTerms(Map<String, String[][]> byPrefix) {
+            this.byPrefix = byPrefix;
+        }
+
+        static SegmentTerms load(IndexReader segment, String field) throws IOException {
+            Map<String, List<List<String>>> grouped = Maps.newHashMap();
+            TermEnum terms = segment.terms(new Term(field, ""));
+            try {
+                do {
+                    Term term = terms.term();
+                    if (term == null || !field.equals(term.field())) {
+                        break;
+                    }
+                    String text = term.text();
+                    if (text.length() <= PREFIX_LENGTH) {
+                        continue;
+                    }
+                    String prefix = text.substring(0, PREFIX_LENGTH);
+                    List<List<String>> byLength = grouped.get(prefix);
+                    if (byLength == null) {
+                        byLength = Lists.newArrayList();
+                        grouped.put(prefix, byLength);
+                    }
+                    int length = text.length() - PREFIX_LENGTH;
+                    while (byLength.size() <= length) {
+                        byLength.add(Lists.<String>newArrayList());
+                    }
+                    byLength.get(length).add(text);
+                } while (terms.next());
+            } finally {
+                terms.close();
+            }
+
+            ImmutableMap.Builder<String, String[][]> byPrefix = ImmutableMap.builder();
+            for (Map.Entry<String, List<List<String>>> entry : grouped.entrySet()) {
+                List<List<String>> byLength = entry.getValue();
+                String[][] texts = new String[byLength.size()][];
+                for (int length = 0; length < texts.length; length++) {
+                    texts[length] = byLength.get(length).toArray(new String[0]);
+                }
+                byPrefix.put(entry.getKey(), texts);
+            }
+            return new SegmentTerms(byPrefix.build());
+        }
+
+        String[][] withPrefix(String prefix) {
+            String[][] texts = byPrefix.get(prefix);
+            return texts != null ? texts : NONE;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.atlasapi.search.searcher;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the fuzzy title clauses rewritten, the terms they expanded to, and how
+ * many were narrowed or capped by {@link FuzzyPruning}.
+ */
+public final class FuzzyExpansions {
+
+    private final AtomicLong clauses = new AtomicLong();
+    private final AtomicLong terms = new AtomicLong();
+    private final AtomicLong narrowed = new AtomicLong();
+    private final AtomicLong capped = new AtomicLong();
+
+    void expanded(int termCount) {
+        clauses.incrementAndGet();
+        terms.addAndGet(termCount);
+    }
+
+    void narrowed() {
+        narrowed.incrementAndGet();
+    }
+
+    void capped() {
+        capped.incrementAndGet();
+    }
+
+    public long clauses() {
+        return clauses.get();
+    }
+
+    public long terms() {
+        return terms.get();
+    }
+
+    public long narrowedClauses() {
+        return narrowed.get();
+    }
+
+    public long cappedClauses() {
+        return capped.get();
+    }
+}
@@ -0,0 +1,41 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.metabroadcast.common.health.ProbeResult.ProbeResultType.INFO;
+
+import com.metabroadcast.common.health.HealthProbe;
+import com.metabroadcast.common.health.ProbeResult;
+import com.metabroadcast.common.health.ProbeResult.ProbeResultEntry;
+
+public class FuzzyExpansionsProbe implements HealthProbe {
+
+    private final FuzzyExpansions expansions;
+
+    public FuzzyExpansionsProbe(FuzzyExpansions expansions) {
+        this.expansions = checkNotNull(expansions);
+    }
+
+    @Override
+    public ProbeResult probe() {
+        ProbeResult result = new ProbeResult(title());
+        result.addEntry(info("fuzzy clauses", expansions.clauses()));
+        result.addEntry(info("terms expanded to", expansions.terms()));
+        result.addEntry(info("narrowed to a well-attested term", expansions.narrowedClauses()));
+        result.addEntry(info("capped for a short token", expansions.cappedClauses()));
+        return result;
+    }
+
+    private ProbeResultEntry info(String key, long value) {
+        return new ProbeResultEntry(INFO, key, String.valueOf(value));
+    }
+
+    @Override
+    public String title() {
+        return "Fuzzy title expansions";
+    }
+
+    @Override
+    public String slug() {
+        return "fuzzy-expansions";
+    }
+}
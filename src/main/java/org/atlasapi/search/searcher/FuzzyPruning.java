@@ -0,0 +1,45 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Limits the terms a fuzzy title clause expands to, judged from the term
+ * statistics of the reader it is rewritten against.
+ *
+ * A token which is itself a term in at least wellAttestedDocFreq docs is
+ * narrowed to that term alone: its near misses would add cost, but rarely a
+ * result worth having. A token no longer than shortTokenLength has so many
+ * near misses that only the maxShortTokenExpansions most similar are kept.
+ */
+public final class FuzzyPruning {
+
+    private static final FuzzyPruning NONE = new FuzzyPruning(Integer.MAX_VALUE, 0, Integer.MAX_VALUE);
+
+    private final int wellAttestedDocFreq;
+    private final int shortTokenLength;
+    private final int maxShortTokenExpansions;
+
+    private FuzzyPruning(int wellAttestedDocFreq, int shortTokenLength, int maxShortTokenExpansions) {
+        this.wellAttestedDocFreq = wellAttestedDocFreq;
+        this.shortTokenLength = shortTokenLength;
+        this.maxShortTokenExpansions = maxShortTokenExpansions;
+    }
+
+    public static FuzzyPruning none() {
+        return NONE;
+    }
+
+    public static FuzzyPruning of(int wellAttestedDocFreq, int shortTokenLength, int maxShortTokenExpansions) {
+        checkArgument(wellAttestedDocFreq > 0, "wellAttestedDocFreq must be positive");
+        checkArgument(maxShortTokenExpansions > 0, "maxShortTokenExpansions must be positive");
+        return new FuzzyPruning(wellAttestedDocFreq, shortTokenLength, maxShortTokenExpansions);
+    }
+
+    boolean isWellAttested(int docFreq) {
+        return docFreq >= wellAttestedDocFreq;
+    }
+
+    int maxExpansions(String token) {
+        return token.length() <= shortTokenLength ? maxShortTokenExpansions : Integer.MAX_VALUE;
+    }
+}
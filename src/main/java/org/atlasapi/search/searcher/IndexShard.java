@@ -0,0 +1,116 @@
+package org.atlasapi.search.searcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One directory of the content index and its writer. Tracks whether it has
+ * uncommitted changes, and whether it has changed since it was last optimized,
+ * so that a batch of changes to one publisher only commits and optimizes the
+ * shard holding it.
+ */
+final class IndexShard {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexShard.class);
+
+    private final String name;
+    private final File directory;
+    private final Directory contentDir;
+    private final SnapshotDeletionPolicy snapshotter;
+    private final IndexWriter writer;
+    private final AtomicBoolean uncommitted = new AtomicBoolean(false);
+    private final AtomicBoolean unoptimized = new AtomicBoolean(false);
+
+    IndexShard(String name, File directory) throws IOException {
+        this.name = name;
+        this.directory = directory;
+        this.snapshotter = new SnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy());
+        this.contentDir = MMapDirectory.open(directory);
+        this.writer = new IndexWriter(contentDir, new StandardAnalyzer(Version.LUCENE_30),
+                snapshotter, MaxFieldLength.UNLIMITED);
+        writer.commit();
+        writer.setWriteLockTimeout(5000);
+    }
+
+    String name() {
+        return name;
+    }
+
+    IndexReader openReader(boolean nearRealTime) throws IOException {
+        if (nearRealTime) {
+            return writer.getReader();
+        }
+        return IndexReader.open(contentDir, true);
+    }
+
+    /**
+     * The writer for changes to this shard, which are then committed by
+     * {@link #commitIfChanged()}.
+     */
+    IndexWriter writer() {
+        uncommitted.set(true);
+        unoptimized.set(true);
+        return writer;
+    }
+
+    /**
+     * @return true if there were changes to commit
+     */
+    boolean commitIfChanged() throws IOException {
+        if (!uncommitted.getAndSet(false)) {
+            return false;
+        }
+        log.trace("Commiting writer for shard {}", name);
+        writer.commit();
+        return true;
+    }
+
+    void optimizeIfChanged() throws IOException {
+        if (unoptimized.getAndSet(false)) {
+            log.trace("Optimizing shard {}", name);
+            writer.optimize();
+            uncommitted.set(true);
+        }
+    }
+
+    void close() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            contentDir.close();
+        }
+    }
+
+    /**
+     * Copies the files of the latest commit into the given directory.
+     */
+    void backupTo(Path destination) throws IOException {
+        IndexCommit commit = snapshotter.snapshot();
+        try {
+            Files.createDirectories(destination);
+            for (String filename : commit.getFileNames()) {
+                Path source = Paths.get(directory.getAbsolutePath(), filename);
+                Files.copy(source, destination.resolve(source.getFileName()));
+            }
+        } finally {
+            snapshotter.release();
+        }
+    }
+}
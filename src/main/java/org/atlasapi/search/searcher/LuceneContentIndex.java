@@ -13,6 +13,7 @@
  permissions and limitations under the License. */
 package org.atlasapi.search.searcher;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
@@ -21,29 +22,30 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
-import com.google.common.primitives.Floats;
-import com.google.common.primitives.Ints;
+import com.google.common.collect.Sets;
 import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.metabroadcast.common.base.Maybe;
 import com.metabroadcast.common.query.Selection;
 import com.metabroadcast.common.time.SystemClock;
 import com.metabroadcast.common.time.Timestamp;
 import com.metabroadcast.common.time.Timestamper;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.document.NumericField;
 import org.apache.lucene.index.CorruptIndexException;
-import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriter.MaxFieldLength;
-import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
-import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanFilter;
 import org.apache.lucene.search.BooleanQuery;
@@ -54,17 +56,10 @@ import org.apache.lucene.search.FilteredQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TermsFilter;
+import org.apache.lucene.search.TimeLimitingCollector.TimeExceededException;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.search.TopScoreDocCollector;
-import org.apache.lucene.search.function.CustomScoreQuery;
-import org.apache.lucene.search.function.IntFieldSource;
-import org.apache.lucene.search.function.ValueSourceQuery;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.MMapDirectory;
-import org.apache.lucene.util.Version;
+import org.apache.lucene.search.Weight;
 import org.atlasapi.media.channel.Channel;
 import org.atlasapi.media.channel.ChannelResolver;
 import org.atlasapi.media.entity.Broadcast;
@@ -83,124 +78,502 @@ import org.atlasapi.media.entity.Song;
 import org.atlasapi.media.entity.Specialization;
 import org.atlasapi.media.entity.simple.ContentIdentifier;
 import org.atlasapi.persistence.content.KnownTypeContentResolver;
-import org.atlasapi.search.DebuggableContentSearcher;
+import org.atlasapi.search.CursorContentSearcher;
+import org.atlasapi.search.TitleSuggester;
 import org.atlasapi.search.model.SearchQuery;
 import org.atlasapi.search.model.SearchResults;
+import org.atlasapi.search.searcher.QueryBudget.RewriteTimeoutException;
+import org.atlasapi.search.searcher.TitleLengthTopDocsCollector.Hit;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-public class LuceneContentIndex implements ContentChangeListener, DebuggableContentSearcher {
+public class LuceneContentIndex implements ContentChangeListener, CursorContentSearcher, TitleSuggester, Closeable {
     
-    private static final float TOLERANCE = 0.000001f;
     
-    private static final int HOURS_IN_EIGHT_DAYS = 24 * 8;
     private static final int MAX_RESULTS = 1000;
     private static final Logger log = LoggerFactory.getLogger(LuceneContentIndex.class);
     static final String FIELD_TITLE_FLATTENED = "title-flattened";
     static final String FIELD_CONTENT_TITLE = "title";
+    static final String FIELD_TITLE_LENGTH = "title-length";
     static final String FIELD_CONTAINER_TITLE_FLATTENED = "container-title-flattened";
     static final String FIELD_CONTAINER_CONTENT_TITLE = "container-title";
     static final String FIELD_CONTENT_SPECIALIZATION = "specialization";
     static final String FIELD_CONTENT_PUBLISHER = "publisher";
-    static final String FIELD_CURRENT_BROADCASTS = "current-broadcasts";
     static final String FIELD_TYPE = "entity-type";
     private static final String FIELD_CONTENT_URI = "contentUri";
     private static final String FIELD_AVAILABLE = "available";
-    private static final String FIELD_BROADCAST_HOUR_TS = "broadcast";
+    static final String FIELD_BROADCAST_HOUR_TS = "broadcast";
     private static final String FIELD_CONTENT_IS_CONTAINER = "isContainer";
     private static final String FIELD_CONTENT_IS_TOP_LEVEL = "topLevel";
-    private static final String FIELD_ON_PRIORITY_CHANNEL_IN_FUTURE = "priorityChannel";
-    private static final int HOURS_IN_A_WEEK = 168;
+    // only in docs indexed before their future broadcasts were
+    static final String FIELD_ON_PRIORITY_CHANNEL_IN_FUTURE = "priorityChannel";
+    static final String FIELD_FUTURE_BROADCASTS = "futureBroadcasts";
+    static final int HOURS_IN_A_WEEK = 168;
     private static final String TRUE = "T";
     private static final String FALSE = "F";
-    private static final TitleQueryBuilder titleQueryBuilder = new TitleQueryBuilder();
     private static final Timestamper clock = new SystemClock();
 
-    private final Directory contentDir;
     private final KnownTypeContentResolver contentResolver;
-    private volatile Searcher contentSearcher;
+    private final SearcherManager searcherManager;
     private Duration maxBroadcastAgeForInclusion = Duration.standardDays(365);
-    private final IndexWriter indexWriter;
-    private final BroadcastBooster broadcastBooster;
     private final ChannelResolver channelResolver;
-    private final SnapshotDeletionPolicy snapshotter;
     private final String backupDirectory;
-    private final File luceneDir;
-    private final ReentrantReadWriteLock lock;
+    private final ShardLayout shardLayout;
+    private final List<IndexShard> shards;
+    private final Optional<Duration> nearRealTimeReopenInterval;
+    private final Optional<SearchResultsCache> resultsCache;
+    private final Optional<RewrittenQueryCache> rewrittenQueries;
+    private final TermFilterCache termFilterCache;
+    private final Optional<ParallelSegmentSearcher> parallelSearcher;
+    private final Optional<ExecutorService> batchExecutor;
+    private final Optional<Duration> defaultTimeout;
+    private final boolean cascadingTiers;
+    private final TitleQueryBuilder titleQueryBuilder;
+    private final Optional<PrefixFields> prefixFields;
+    private final TitleQueryBuilder prefixTitleQueryBuilder;
+    private final Optional<TitleShingles> shingles;
+    private final Optional<RankedPartition> rankedPartition;
+    private final QueryComplexityLimits complexityLimits;
+    private final QueryDegradations degradations = new QueryDegradations();
+    private volatile TitleSynonyms synonyms;
+    private final SchemaMarker synonymsMarker = new SchemaMarker("synonyms");
+    private final SearchTimeouts timeouts = new SearchTimeouts();
+    private final SearchTiers tiers = new SearchTiers();
+    private final RankingColumns rankingColumns = new RankingColumns();
+    private final PriorityBroadcasts priorityBroadcasts;
+    private final TitleSuggestions titleSuggestions;
+    private final CurrentBroadcasts currentBroadcasts;
+    private final AtomicBoolean unpublishedChanges = new AtomicBoolean(false);
+    private final Optional<ScheduledExecutorService> nearRealTimeReopener;
+    private final Optional<ScheduledExecutorService> cursorGenerationReleaser;
     
     public LuceneContentIndex(File luceneDir, KnownTypeContentResolver contentResolver, 
             BroadcastBooster broadcastBooster,
             ChannelResolver channelResolver, String backupDirectory) {
-        this.luceneDir = luceneDir;
-        this.contentResolver = checkNotNull(contentResolver);
-        this.broadcastBooster = checkNotNull(broadcastBooster);
-        this.channelResolver = checkNotNull(channelResolver);
-        this.backupDirectory = checkNotNull(backupDirectory);
-        this.lock = new ReentrantReadWriteLock();
-        this.snapshotter = new SnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy());
+        this(builder(luceneDir, contentResolver, broadcastBooster, channelResolver, backupDirectory));
+    }
+    
+    private LuceneContentIndex(Builder builder) {
+        this.contentResolver = checkNotNull(builder.contentResolver);
+        this.priorityBroadcasts = new PriorityBroadcasts(checkNotNull(builder.broadcastBooster), rankingColumns, 
+                new SystemClock());
+        this.titleSuggestions = new TitleSuggestions(rankingColumns, priorityBroadcasts);
+        this.channelResolver = checkNotNull(builder.channelResolver);
+        this.backupDirectory = checkNotNull(builder.backupDirectory);
+        this.nearRealTimeReopenInterval = builder.nearRealTimeReopenInterval;
+        this.resultsCache = builder.resultsCache;
+        this.rewrittenQueries = builder.rewrittenQueries;
+        this.termFilterCache = builder.termFilterCache;
+        this.currentBroadcasts = new CurrentBroadcasts(rankingColumns, termFilterCache, 
+                new Term(FIELD_CONTENT_IS_CONTAINER, FALSE), new SystemClock());
+        this.parallelSearcher = builder.parallelSearcher;
+        this.batchExecutor = builder.batchExecutor;
+        this.defaultTimeout = builder.defaultTimeout;
+        this.cascadingTiers = builder.cascadingTiers;
+        this.titleQueryBuilder = new TitleQueryBuilder(builder.fuzzyPruning);
+        this.prefixFields = builder.prefixFields;
+        this.prefixTitleQueryBuilder = prefixFields.isPresent() ? titleQueryBuilder.withPrefixFields(prefixFields.get()) 
+                                                                : titleQueryBuilder;
+        this.shingles = builder.shingles;
+        this.rankedPartition = builder.rankedPartitionMaxHits.isPresent() 
+                ? Optional.of(new RankedPartition(rankingColumns, builder.rankedPartitionMaxHits.get())) 
+                : Optional.<RankedPartition>absent();
+        this.complexityLimits = builder.complexityLimits;
+        this.synonyms = builder.synonyms;
+        this.shardLayout = builder.shardLayout;
         try {
-            this.contentDir = MMapDirectory.open(luceneDir);
-            this.indexWriter = new IndexWriter(contentDir, new StandardAnalyzer(Version.LUCENE_30), 
-                    snapshotter, MaxFieldLength.UNLIMITED);
-            touchIndex();
-            indexWriter.setWriteLockTimeout(5000);
-            this.contentSearcher = new IndexSearcher(contentDir);
+            this.shards = openShards(builder.luceneDir, shardLayout);
+            this.searcherManager = new SearcherManager(openReader(), builder.cursorRetention, new SystemClock());
+            checkSchemaMarkers();
+            warmRankingColumns();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+        this.nearRealTimeReopener = nearRealTimeReopenInterval.isPresent() 
+                ? Optional.of(scheduleNearRealTimeReopen(nearRealTimeReopenInterval.get())) 
+                : Optional.<ScheduledExecutorService>absent();
+        this.cursorGenerationReleaser = builder.cursorRetention.getMillis() > 0 
+                ? Optional.of(scheduleCursorGenerationRelease(builder.cursorRetention)) 
+                : Optional.<ScheduledExecutorService>absent();
+    }
+    
+    public static Builder builder(File luceneDir, KnownTypeContentResolver contentResolver, 
+            BroadcastBooster broadcastBooster,
+            ChannelResolver channelResolver, String backupDirectory) {
+        return new Builder(luceneDir, contentResolver, broadcastBooster, channelResolver, backupDirectory);
+    }
+    
+    public SearchTimeouts timeouts() {
+        return timeouts;
+    }
+    
+    public SearchTiers tiers() {
+        return tiers;
+    }
+    
+    public FuzzyExpansions fuzzyExpansions() {
+        return titleQueryBuilder.fuzzyExpansions();
+    }
+    
+    public QueryDegradations degradations() {
+        return degradations;
+    }
+    
+    private static List<IndexShard> openShards(File luceneDir, ShardLayout layout) throws IOException {
+        if (!layout.isSharded()) {
+            return ImmutableList.of(new IndexShard(ShardLayout.DEFAULT_SHARD, luceneDir));
+        }
+        ImmutableList.Builder<IndexShard> shards = ImmutableList.builder();
+        for (String shard : layout.shards()) {
+            shards.add(new IndexShard(shard, new File(luceneDir, shard)));
+        }
+        return shards.build();
+    }
+    
+    /**
+     * When sharded, the reader is a {@link MultiReader} over the shards in layout
+     * order, which reopens only the shards which have changed.
+     */
+    private IndexReader openReader() throws IOException {
+        List<IndexReader> readers = Lists.newArrayList();
+        for (IndexShard shard : shards) {
+            readers.add(shard.openReader(nearRealTimeReopenInterval.isPresent()));
+        }
+        if (readers.size() == 1) {
+            return readers.get(0);
+        }
+        return new MultiReader(readers.toArray(new IndexReader[readers.size()]));
+    }
+    
+    private IndexWriter writerFor(Publisher publisher) {
+        return shards.get(shardLayout.shardFor(publisher)).writer();
+    }
+    
+    private ScheduledExecutorService scheduleNearRealTimeReopen(Duration interval) {
+        ScheduledExecutorService reopener = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("lucene-nrt-reopen-%d").build());
+        reopener.scheduleWithFixedDelay(new Runnable() {
+            
+            @Override
+            public void run() {
+                try {
+                    reopenIfChanged();
+                } catch (Exception e) {
+                    log.error("Failed to reopen searcher", e);
+                }
+            }
+        }, interval.getMillis(), interval.getMillis(), TimeUnit.MILLISECONDS);
+        return reopener;
+    }
+    
+    /**
+     * Publishes the changes committed since the searcher was last refreshed, as
+     * the near-real-time reopen does on each tick.
+     */
+    @VisibleForTesting
+    void reopenIfChanged() {
+        if (unpublishedChanges.get()) {
+            refreshSearcher();
+        }
+    }
+    
+    /**
+     * Releases generations retained for cursors once they expire, rather than
+     * waiting for the next refresh or cursor to, so that superseded readers
+     * aren't held open while the index is idle.
+     */
+    private ScheduledExecutorService scheduleCursorGenerationRelease(Duration retention) {
+        ScheduledExecutorService releaser = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("lucene-cursor-release-%d").build());
+        releaser.scheduleWithFixedDelay(new Runnable() {
+            
+            @Override
+            public void run() {
+                try {
+                    searcherManager.releaseExpired();
+                } catch (Exception e) {
+                    log.error("Failed to release expired searcher generations", e);
+                }
+            }
+        }, retention.getMillis(), retention.getMillis(), TimeUnit.MILLISECONDS);
+        return releaser;
+    }
+    
+    /**
+     * Stops the scheduled reopens and releases, closes every searcher
+     * generation, and closes the shards' writers. Executors given to the
+     * builder are left to their owners to shut down.
+     */
+    @Override
+    public void close() throws IOException {
+        for (ScheduledExecutorService executor : Optional.presentInstances(
+                ImmutableList.of(nearRealTimeReopener, cursorGenerationReleaser))) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        searcherManager.close();
+        for (IndexShard shard : shards) {
+            shard.close();
+        }
     }
     
     @Override
     public SearchResults search(SearchQuery q) {
-        ReadLock readLock = lock.readLock();
+        return search(q, SearchOptions.defaults());
+    }
+    
+    /**
+     * A page after a cursor is scored as of the hour the cursor's page was, so
+     * that hits rank as they did on the pages before it.
+     * 
+     * Results which ran out of time are marked partial, and are neither cached 
+     * nor given a cursor. Those of a title query which ran out of time being
+     * rewritten are the hits of its exact and prefix clauses.
+     * Results boosting a channel group other than the default aren't cached.
+     * 
+     * @throws QueryTooComplexException if the title query is beyond the index's
+     *         {@link QueryComplexityLimits} and they say to reject it
+     * @throws CursorExpiredException if the cursor's generation is no longer
+     *         retained
+     */
+    @Override
+    public SearchResults search(SearchQuery q, SearchOptions options) {
+        SearcherGeneration generation = acquireFor(options.cursor());
         try {
-            readLock.lock();
-            return new SearchResults(search(getQuery(q), getFilter(q), q.getSelection()));
+            return search(generation, q, options, SharedFilters.unshared(termFilterCache));
         } finally {
-            readLock.unlock();
+            searcherManager.release(generation);
+        }
+    }
+    
+    /**
+     * Searches for each query against the same generation, concurrently if the
+     * index has a batch executor, returning results in query order. Queries with 
+     * the same publishers or specializations share their filters.
+     */
+    @Override
+    public List<SearchResults> search(List<SearchQuery> queries, final SearchOptions options) {
+        checkArgument(!options.cursor().isPresent(), "A batch can't continue from a cursor");
+        final SharedFilters filters = SharedFilters.forBatch(termFilterCache);
+        final SearcherGeneration generation = searcherManager.acquire();
+        try {
+            List<Callable<SearchResults>> searches = Lists.newArrayListWithCapacity(queries.size());
+            for (final SearchQuery q : queries) {
+                searches.add(new Callable<SearchResults>() {
+                    
+                    @Override
+                    public SearchResults call() {
+                        return search(generation, q, options, filters);
+                    }
+                });
+            }
+            return runAll(searches);
+        } finally {
+            searcherManager.release(generation);
+        }
+    }
+    
+    private List<SearchResults> runAll(List<Callable<SearchResults>> searches) {
+        List<SearchResults> results = Lists.newArrayListWithCapacity(searches.size());
+        try {
+            if (!batchExecutor.isPresent() || searches.size() < 2) {
+                for (Callable<SearchResults> search : searches) {
+                    results.add(search.call());
+                }
+                return results;
+            }
+            for (Future<SearchResults> result : batchExecutor.get().invokeAll(searches)) {
+                results.add(result.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+    
+    private SearchResults search(SearcherGeneration generation, SearchQuery q, SearchOptions options, 
+            SharedFilters filters) {
+        Optional<SearchCursor> after = options.cursor();
+        boolean cacheable = resultsCache.isPresent() && !after.isPresent() 
+                && !options.priorityChannelGroup().isPresent();
+        int hour = after.isPresent() ? after.get().hour() : hourOf(clock.timestamp());
+        if (cacheable) {
+            Optional<SearchResults> cached = resultsCache.get().get(q, hour, generation.generation());
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+        QueryBudget budget = QueryBudget.of(options.timeout().or(defaultTimeout));
+        PagedSearchResults results = search(generation, q, filters, 
+                priorityBroadcasts.boosted(options.priorityChannelGroup(), hour), after, budget);
+        if (cacheable && !results.isPartial()) {
+            resultsCache.get().put(q, hour, generation.generation(), results);
+        }
+        return results;
+    }
+    
+    /**
+     * Only the shards holding the query's publishers need to be searched.
+     */
+    private SegmentSlice segmentsFor(SearcherGeneration generation, SearchQuery q) {
+        return generation.segmentsOf(shardLayout.shardsFor(q.getIncludedPublishers()));
+    }
+    
+    private SearcherGeneration acquireFor(Optional<SearchCursor> after) {
+        if (!after.isPresent()) {
+            return searcherManager.acquire();
+        }
+        Optional<SearcherGeneration> pinned = searcherManager.acquire(after.get().generation());
+        if (!pinned.isPresent()) {
+            throw new CursorExpiredException("cursor expired");
+        }
+        return pinned.get();
+    }
+    
+    /**
+     * Completions are ranked once an hour for each segment, rather than scored
+     * per query, so they're cheap enough for every keystroke. They're filtered
+     * as the query's search would be.
+     */
+    @Override
+    public SearchResults suggest(SearchQuery q) {
+        String flattenedPrefix = titleQueryBuilder.flatten(q.getTerm());
+        if (flattenedPrefix.isEmpty() || q.getIncludedPublishers().isEmpty()) {
+            return new SearchResults(ImmutableList.<ContentIdentifier>of());
+        }
+        int hour = hourOf(clock.timestamp());
+        SearcherGeneration generation = searcherManager.acquire();
+        try {
+            int[] docs = titleSuggestions.suggest(segmentsFor(generation, q), flattenedPrefix, 
+                    q.getIncludedPublishers(), filtersFor(q, SharedFilters.unshared(termFilterCache), hour), hour, 
+                    q.getSelection().limitOrDefaultValue(MAX_RESULTS));
+            List<Result> results = Lists.newArrayList();
+            for (int doc : docs) {
+                results.add(new Result(generation.searcher().doc(doc, RESULT_FIELDS)));
+            }
+            return new SearchResults(ImmutableList.copyOf(Lists.transform(results, TO_CONTENT_IDENTIFIER)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            searcherManager.release(generation);
         }
     }
     
     @Override
     public String debug(SearchQuery q) {
-        ReadLock readLock = lock.readLock();
+        SearcherGeneration generation = searcherManager.acquire();
+        SharedFilters filters = SharedFilters.unshared(termFilterCache);
+        try {
+            TieredTopDocs tiered = collect(generation, q, filters, priorityBroadcasts.boosted(Optional.<String>absent()), 
+                    Optional.<SearchCursor>absent(), QueryBudget.unlimited());
+            int titleClauses = TitleQueryBuilder.clauseCount(
+                    QueryBudget.unlimited().rewrite(tiered.titleQuery, generation.reader()));
+            List<String> lines = Lists.newArrayList();
+            lines.add("tier: " + tiered.tier);
+            lines.add("title clauses: " + titleClauses);
+            lines.addAll(debug(generation.searcher(), tiered));
+            return Joiner.on("\n").join(lines);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            searcherManager.release(generation);
+        }
+    }
+    
+    /**
+     * Indexes titles with the given synonyms from now on. Titles already
+     * indexed keep the synonyms they were indexed with until they're indexed
+     * again.
+     * 
+     * @return the canonical URIs of the content whose title or container title
+     *         has a word with different synonyms, which is all that must be
+     *         indexed again
+     */
+    public synchronized Set<String> replaceSynonyms(TitleSynonyms replacement) {
+        Set<String> changedWords = synonyms.changedWords(checkNotNull(replacement));
+        synonyms = replacement;
+        if (changedWords.isEmpty()) {
+            return ImmutableSet.of();
+        }
+        SearcherGeneration generation = searcherManager.acquire();
         try {
-            readLock.lock();
-            return Joiner.on("\n").join(debug(getQuery(q), getFilter(q), q.getSelection()));
+            IndexReader reader = generation.reader();
+            Set<Integer> docs = Sets.newTreeSet();
+            TermDocs termDocs = reader.termDocs();
+            try {
+                for (String word : changedWords) {
+                    // titles indexed with the word as a synonym have it too
+                    for (String field : ImmutableList.of(FIELD_CONTENT_TITLE, FIELD_CONTAINER_CONTENT_TITLE)) {
+                        termDocs.seek(new Term(field, word));
+                        while (termDocs.next()) {
+                            docs.add(termDocs.doc());
+                        }
+                    }
+                }
+            } finally {
+                termDocs.close();
+            }
+            ImmutableSet.Builder<String> uris = ImmutableSet.builder();
+            for (int doc : docs) {
+                uris.add(reader.document(doc, RESULT_FIELDS).get(FIELD_CONTENT_URI));
+            }
+            return uris.build();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         } finally {
-            readLock.unlock();
+            searcherManager.release(generation);
         }
     }
     
     @Override
     public Optional<String> document(String uri) {
+        SearcherGeneration generation = searcherManager.acquire();
         try {
-            TopDocs topDocs = getTopDocs(new TermQuery(new Term(FIELD_CONTENT_URI, uri)), null, Selection.all());
+            IndexSearcher searcher = generation.searcher();
+            TopDocs topDocs = getTopDocs(searcher, generation.allSegments(), 
+                    new TermQuery(new Term(FIELD_CONTENT_URI, uri)), null, Selection.all());
             
             if (topDocs.totalHits == 0) {
                 return Optional.absent();
             }
             
-            return Optional.of(contentSearcher.doc(topDocs.scoreDocs[0].doc).toString());
+            return Optional.of(searcher.doc(topDocs.scoreDocs[0].doc).toString());
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            searcherManager.release(generation);
         }
     }
     
@@ -243,23 +616,15 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
     }
     
     public synchronized void backup() throws IOException {
-        IndexCommit commit = snapshotter.snapshot();
-        try {
-            Collection<String> filenames = commit.getFileNames();
-            
-            Path singleBackupSubdir = createBackupDirectory();
-            for (String filename: filenames) {
-                Path source = Paths.get(luceneDir.getAbsolutePath(), filename);
-                Path destination = singleBackupSubdir.resolve(source.getFileName());
-                Files.copy(source, destination);
-            }
-            // remove symlink first
-            Path symlinkToCurrentBackup = Paths.get(backupDirectory, "current");
-            Files.deleteIfExists(symlinkToCurrentBackup);
-            Files.createSymbolicLink(symlinkToCurrentBackup, singleBackupSubdir);
-        } finally {
-            snapshotter.release();
+        Path singleBackupSubdir = createBackupDirectory();
+        for (IndexShard shard : shards) {
+            shard.backupTo(shardLayout.isSharded() ? singleBackupSubdir.resolve(shard.name()) 
+                                                   : singleBackupSubdir);
         }
+        // remove symlink first
+        Path symlinkToCurrentBackup = Paths.get(backupDirectory, "current");
+        Files.deleteIfExists(symlinkToCurrentBackup);
+        Files.createSymbolicLink(symlinkToCurrentBackup, singleBackupSubdir);
     }
     
     private Path createBackupDirectory() throws IOException {
@@ -267,24 +632,29 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
         return Files.createDirectory(Paths.get(backupDirectory, timestamp.toString()));
     }
     
+    /**
+     * In near-real-time mode the index is not optimized here: merging everything
+     * into one segment would stop the reopened searcher sharing unchanged segments
+     * with the previous one, so the writer's merge policy is left to it.
+     */
     @Override
     public void afterContentChange() {
-        optimizeIndex();
-        refreshSearcher();
-    }
-    
-    private void touchIndex() {
-        try {
-            indexWriter.commit();
-        } catch (Exception e) {
-            Throwables.propagate(e);
+        if (!nearRealTimeReopenInterval.isPresent()) {
+            optimizeIndex();
         }
+        refreshSearcher();
     }
     
+    /**
+     * Only shards changed since they were last optimized are optimized, so a
+     * batch of changes to one publisher leaves the other shards alone.
+     */
     private void optimizeIndex()  {
         try {
             log.trace("Optimizing index");
-            indexWriter.optimize();
+            for (IndexShard shard : shards) {
+                shard.optimizeIfChanged();
+            }
             log.trace("Done optimizing index");
         } catch (Exception e) {
             Throwables.propagate(e);
@@ -296,7 +666,13 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
     private void commitWriter() {
         try {
             log.trace("Commiting writer");
-            indexWriter.commit();
+            boolean committed = false;
+            for (IndexShard shard : shards) {
+                committed |= shard.commitIfChanged();
+            }
+            if (committed) {
+                unpublishedChanges.set(true);
+            }
             log.trace("Done commiting writer");
         } catch (Exception e) {
             Throwables.propagate(e);
@@ -315,7 +691,7 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
                 if (!thisItemHasBeenOnAnAdultChannel) {
                     index(item, Optional.<Iterable<Item>>absent(), Optional.of(container));
                 } else {
-                    indexWriter.deleteDocuments(new Term(FIELD_CONTENT_URI, item.getCanonicalUri()));
+                    writerFor(item.getPublisher()).deleteDocuments(new Term(FIELD_CONTENT_URI, item.getCanonicalUri()));
                 }
                 
                 itemInBrandFiltered = itemInBrandFiltered || thisItemHasBeenOnAnAdultChannel;
@@ -324,7 +700,7 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
             if (!itemInBrandFiltered) {
                 index(content, Optional.of(items), Optional.<Container>absent());
             } else {
-                indexWriter.deleteDocuments(new Term(FIELD_CONTENT_URI, content.getCanonicalUri()));
+                writerFor(content.getPublisher()).deleteDocuments(new Term(FIELD_CONTENT_URI, content.getCanonicalUri()));
             }
         } else {
             index(content, Optional.<Iterable<Item>>absent(), Optional.<Container>absent());
@@ -355,7 +731,7 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
         Document doc = asDocument(content, children, parent);
         if (doc != null) {
             log.trace("Updating document");
-            indexWriter.updateDocument(new Term(FIELD_CONTENT_URI, content.getCanonicalUri()), doc);
+            writerFor(content.getPublisher()).updateDocument(new Term(FIELD_CONTENT_URI, content.getCanonicalUri()), doc);
             log.trace("Done updating document");
         } else {
             log.info("{} with title {} and uri {} not added due to null elements",
@@ -371,16 +747,16 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
         }
         Document doc = new Document();
         
-        doc.add(new Field(FIELD_CONTENT_TITLE, content.getTitle(), Field.Store.NO, Field.Index.ANALYZED));
-        doc.add(new Field(FIELD_TITLE_FLATTENED, titleQueryBuilder.flatten(content.getTitle()), Field.Store.YES, Field.Index.ANALYZED));
+        TitleSynonyms synonyms = this.synonyms;
+        String flattenedTitle = addTitle(doc, FIELD_CONTENT_TITLE, FIELD_TITLE_FLATTENED, content.getTitle(), synonyms);
+        doc.add(new NumericField(FIELD_TITLE_LENGTH, Field.Store.NO, true).setIntValue(flattenedTitle.length()));
         doc.add(new Field(FIELD_CONTENT_URI, content.getCanonicalUri(), Field.Store.YES, Field.Index.NOT_ANALYZED));
         doc.add(new Field(FIELD_TYPE, EntityType.from(content).toString(), Field.Store.YES, Field.Index.NOT_ANALYZED));
         
         if(parent.isPresent()) {
             Container container = parent.get();
             if(!Strings.isNullOrEmpty(container.getTitle())) {
-                doc.add(new Field(FIELD_CONTAINER_CONTENT_TITLE, container.getTitle(), Field.Store.NO, Field.Index.ANALYZED));
-                doc.add(new Field(FIELD_CONTAINER_TITLE_FLATTENED, titleQueryBuilder.flatten(container.getTitle()), Field.Store.YES, Field.Index.ANALYZED));
+                addTitle(doc, FIELD_CONTAINER_CONTENT_TITLE, FIELD_CONTAINER_TITLE_FLATTENED, container.getTitle(), synonyms);
             }
         }
         if (content.getSpecialization() != null) {
@@ -416,9 +792,42 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
             topLevel = false;
         }
         doc.add(new Field(FIELD_CONTENT_IS_TOP_LEVEL, topLevel ? TRUE : FALSE, Field.Store.NO, Field.Index.NOT_ANALYZED));
+        for (SchemaMarker marker : schemaMarkers()) {
+            doc.add(marker.field());
+        }
         return doc;
     }
     
+    /**
+     * Indexes the title's tokens with their synonyms, and its flattened form.
+     * The flattened title with words replaced by synonyms is indexed too, but
+     * not stored, so that exact, prefix and suggestion matches on flattened
+     * titles find it by any of them. With prefix fields, the prefixes of all
+     * of those are indexed as well, and with shingles, the title's shingles.
+     * 
+     * @return the flattened title
+     */
+    private String addTitle(Document doc, String field, String flattenedField, String title, TitleSynonyms synonyms) {
+        doc.add(new Field(field, titleQueryBuilder.titleTokens(title, synonyms)));
+        String flattenedTitle = titleQueryBuilder.flatten(title);
+        doc.add(new Field(flattenedField, flattenedTitle, Field.Store.YES, Field.Index.ANALYZED));
+        Set<String> variants = titleQueryBuilder.flattenedVariants(title, synonyms);
+        for (String variant : variants) {
+            doc.add(new Field(flattenedField, variant, Field.Store.NO, Field.Index.ANALYZED));
+        }
+        if (prefixFields.isPresent()) {
+            PrefixFields prefixes = prefixFields.get();
+            doc.add(new Field(PrefixFields.of(field), prefixes.prefixes(titleQueryBuilder.titleTokens(title, synonyms))));
+            for (String flattened : Iterables.concat(ImmutableList.of(flattenedTitle), variants)) {
+                doc.add(new Field(PrefixFields.of(flattenedField), prefixes.prefixes(titleQueryBuilder.indexedTokens(flattened))));
+            }
+        }
+        if (shingles.isPresent()) {
+            doc.add(new Field(TitleShingles.of(field), shingles.get().shingles(titleQueryBuilder.indexedTokens(title))));
+        }
+        return flattenedTitle;
+    }
+    
     private boolean addBroadcastAndAvailabilityFields(Song song, Document doc) {
         return true;
     }
@@ -438,11 +847,7 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
             hourOfClosestBroadcast = Math.max(hourOf(now.minus(Duration.standardDays(30))), hourOfClosestBroadcast);
         }
         
-        boolean currentBroadcasts = Math.abs(hourOf(clock.timestamp()) - hourOfClosestBroadcast) < HOURS_IN_EIGHT_DAYS;
-        doc.add(new Field(FIELD_CURRENT_BROADCASTS, currentBroadcasts ? TRUE : FALSE, Field.Store.NO, Field.Index.NOT_ANALYZED));
-        
-        boolean priorityChannelBoost = shouldApplyPriorityChannelBoost(Item.FLATTEN_BROADCASTS.apply(item));
-        doc.add(new NumericField(FIELD_ON_PRIORITY_CHANNEL_IN_FUTURE, Field.Store.YES, true).setIntValue(priorityChannelBoost ? 1 : 0));
+        addFutureBroadcasts(doc, Item.FLATTEN_BROADCASTS.apply(item), now);
         
         doc.add(new NumericField(FIELD_BROADCAST_HOUR_TS, Field.Store.YES, true).setIntValue(hourOfClosestBroadcast));
         return true;
@@ -460,8 +865,7 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
             int hourOfClosestBroadcastForItems = hourOf(hourOfClosestBroadcastForItems(children, now));
             doc.add(new NumericField(FIELD_BROADCAST_HOUR_TS, Field.Store.YES, true).setIntValue(hourOfClosestBroadcastForItems));
             
-            boolean priorityChannelBoost = shouldApplyPriorityChannelBoost(Iterables.concat(Iterables.transform(children, Item.FLATTEN_BROADCASTS)));
-            doc.add(new NumericField(FIELD_ON_PRIORITY_CHANNEL_IN_FUTURE, Field.Store.YES, true).setIntValue(priorityChannelBoost ? 1 : 0));
+            addFutureBroadcasts(doc, Iterables.concat(Iterables.transform(children, Item.FLATTEN_BROADCASTS)), now);
             
             return true;
         }
@@ -478,13 +882,21 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
         return hourOfClosestBroadcast(Iterables.concat(Iterables.transform(items, Item.FLATTEN_BROADCASTS)), now);
     }
     
-    private boolean shouldApplyPriorityChannelBoost(Iterable<Broadcast> broadcasts) {
-        for(Broadcast broadcast : broadcasts) {
-            if(broadcastBooster.shouldBoost(broadcast)) {
-                return true;
+    /**
+     * Indexes the channel and end hour of each broadcast yet to end, whichever
+     * channel it's on, so that the channels boosted can be chosen when searching.
+     */
+    private void addFutureBroadcasts(Document doc, Iterable<Broadcast> broadcasts, Timestamp now) {
+        Set<String> terms = Sets.newHashSet();
+        for (Broadcast broadcast : broadcasts) {
+            DateTime end = broadcast.getTransmissionEndTime();
+            if (broadcast.getBroadcastOn() != null && end != null && end.getMillis() > now.millis()) {
+                terms.add(PriorityBroadcasts.term(broadcast.getBroadcastOn(), hourOf(end)));
             }
         }
-        return false;
+        for (String term : terms) {
+            doc.add(new Field(FIELD_FUTURE_BROADCASTS, term, Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+        }
     }
     
     private Optional<DateTime> hourOfClosestBroadcast(Iterable<Broadcast> broadcasts, Timestamp now) {
@@ -535,17 +947,76 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
         return false;
     }
     
-    private Filter getFilter(SearchQuery q) {
-        return getPublisherFilter(q.getIncludedPublishers());
+    private Filter getFilter(SearchQuery q, SharedFilters filters) {
+        return getPublisherFilter(q.getIncludedPublishers(), filters);
+    }
+    
+    /**
+     * Prefix fields are only queried in generations in which every document
+     * has them. Until every document is indexed with its synonyms, "dr" and
+     * "rd" are expanded at query time as well, so that titles indexed before
+     * synonyms were are still found by them.
+     */
+    private TitleQueryBuilder titleQueries(SearcherGeneration generation) {
+        TitleQueryBuilder builder = prefixFields.isPresent() && prefixFields.get().marker().marks(generation) 
+                ? prefixTitleQueryBuilder : titleQueryBuilder;
+        return synonymsMarker.marks(generation) ? builder : builder.withQueryTimeExpansions();
     }
     
-    private Query getQuery(SearchQuery q) {
+    private List<SchemaMarker> schemaMarkers() {
+        ImmutableList.Builder<SchemaMarker> markers = ImmutableList.builder();
+        markers.add(priorityBroadcasts.marker());
+        markers.add(synonymsMarker);
+        if (prefixFields.isPresent()) {
+            markers.add(prefixFields.get().marker());
+        }
+        if (shingles.isPresent()) {
+            markers.add(shingles.get().marker());
+        }
+        return markers.build();
+    }
+    
+    private void checkSchemaMarkers() throws IOException {
+        SearcherGeneration generation = searcherManager.acquire();
+        try {
+            for (SchemaMarker marker : schemaMarkers()) {
+                if (marker.check(generation)) {
+                    log.info("Every document is indexed with schema {}, querying its fields from generation {}", 
+                            marker.schema(), generation.generation());
+                }
+            }
+        } finally {
+            searcherManager.release(generation);
+        }
+    }
+    
+    /**
+     * The title query in primitive form, rewritten against the generation's
+     * reader or taken from the cache of rewritten queries. Either way it's a
+     * copy which the caller may change. How many tokens a term's query has
+     * clauses for only depends on the generation, so cached queries are those
+     * that would be built.
+     */
+    private Query titleQuery(String term, int maxTokens, SearcherGeneration generation, QueryBudget budget) throws IOException {
+        if (!rewrittenQueries.isPresent()) {
+            return titleQueries(generation).build(term, maxTokens);
+        }
+        Optional<Query> cached = rewrittenQueries.get().get(term, generation.generation());
+        if (cached.isPresent()) {
+            return (Query) cached.get().clone();
+        }
+        Query rewritten = budget.rewrite(titleQueries(generation).build(term, maxTokens), generation.reader());
+        rewrittenQueries.get().put(term, generation.generation(), rewritten);
+        return (Query) rewritten.clone();
+    }
+    
+    private BroadcastAndPriorityScore getQuery(SearchQuery q, Query titleQuery, SharedFilters filters, 
+            PriorityBroadcasts.Boosted boosted) {
         BooleanQuery query = new BooleanQuery(true);
         // Title:
-        Query titleQuery = titleQueryBuilder.build(q.getTerm());
         titleQuery.setBoost(q.getTitleWeighting());
         // Apply filters
-        Optional<BooleanFilter> filter = filtersFor(q);
+        Optional<BooleanFilter> filter = filtersFor(q, filters, boosted.hour());
         if(filter.isPresent()) {
             titleQuery = new FilteredQuery(titleQuery, filter.get());
         }
@@ -556,17 +1027,11 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
             query.add(availabilityQuery, Occur.SHOULD);
         }
         // Result:
-        Query retQuery;
-        if (q.getBroadcastWeighting() != 0.0f) {
-            retQuery = new DistanceToBroadcastScore(query).withBroadcastWeight(q.getBroadcastWeighting());
-        } else {
-            retQuery = query;
-        }
-        return new BooleanBoostScore(retQuery, FIELD_ON_PRIORITY_CHANNEL_IN_FUTURE).withWeighting(q.getPriorityChannelWeighting());
-        
+        return new BroadcastAndPriorityScore(query, rankingColumns, boosted, q.getBroadcastWeighting(), 
+                q.getPriorityChannelWeighting());
     }
 
-    private Optional<BooleanFilter> filtersFor(SearchQuery q) {
+    private Optional<BooleanFilter> filtersFor(SearchQuery q, SharedFilters sharedFilters, int hour) {
         
         Set<String> types;
         if (q.type() == null) {
@@ -577,33 +1042,27 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
         List<FilterClause> filters = Lists.newArrayList();
         
         if (!q.getIncludedSpecializations().isEmpty()) {
-            filters.add(new FilterClause(getSpecializationFilter(q.getIncludedSpecializations()), Occur.MUST));            
+            filters.add(new FilterClause(getSpecializationFilter(q.getIncludedSpecializations(), sharedFilters), Occur.MUST));            
         }
         if (types.contains("item") ^ types.contains("container")) {
             if (types.contains("item")) {
-                TermsFilter typeField = new TermsFilter();
-                typeField.addTerm(new Term(FIELD_CONTENT_IS_CONTAINER, FALSE));
+                Filter typeField = termFilterCache.filterFor(new Term(FIELD_CONTENT_IS_CONTAINER, FALSE));
                 filters.add(new FilterClause(typeField, Occur.MUST));
             } else if (types.contains("container")) {
-                TermsFilter typeField = new TermsFilter();
-                typeField.addTerm(new Term(FIELD_CONTENT_IS_CONTAINER, TRUE));
+                Filter typeField = termFilterCache.filterFor(new Term(FIELD_CONTENT_IS_CONTAINER, TRUE));
                 filters.add(new FilterClause(typeField, Occur.MUST));
             }
         }
         if (! types.contains("person")) {
-            TermsFilter typeField = new TermsFilter();
-            typeField.addTerm(new Term(FIELD_TYPE, EntityType.PERSON.toString()));
+            Filter typeField = termFilterCache.filterFor(new Term(FIELD_TYPE, EntityType.PERSON.toString()));
             filters.add(new FilterClause(typeField, Occur.MUST_NOT));
         }
         if (q.topLevelOnly() != null && q.topLevelOnly()) {
-            TermsFilter typeField = new TermsFilter();
-            typeField.addTerm(new Term(FIELD_CONTENT_IS_TOP_LEVEL, TRUE));
+            Filter typeField = termFilterCache.filterFor(new Term(FIELD_CONTENT_IS_TOP_LEVEL, TRUE));
             filters.add(new FilterClause(typeField, Occur.MUST));
         }
         if(q.currentBroadcastsOnly() != null && q.currentBroadcastsOnly()) {
-            TermsFilter typeField = new TermsFilter();
-            typeField.addTerm(new Term(FIELD_CURRENT_BROADCASTS, TRUE));
-            filters.add(new FilterClause(typeField, Occur.MUST));
+            filters.add(new FilterClause(currentBroadcasts.filter(hour), Occur.MUST));
         }
         if(filters.isEmpty()) {
             return Optional.absent();
@@ -633,69 +1092,87 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
         return hourOf(ts.toDateTimeUTC());
     }
     
-    private Filter getPublisherFilter(Set<Publisher> includedPublishers) {
-        TermsFilter filter = new TermsFilter();
+    private Filter getPublisherFilter(Set<Publisher> includedPublishers, SharedFilters filters) {
+        List<Term> terms = Lists.newArrayList();
         for (Publisher publisher : includedPublishers) {
-            filter.addTerm(new Term(FIELD_CONTENT_PUBLISHER, publisher.toString()));
+            terms.add(new Term(FIELD_CONTENT_PUBLISHER, publisher.toString()));
         }
-        return filter;
+        return filters.filterFor(terms);
     }
     
-    private Filter getSpecializationFilter(Set<Specialization> includedSpecializations) {
-        TermsFilter filter = new TermsFilter();
+    private Filter getSpecializationFilter(Set<Specialization> includedSpecializations, SharedFilters filters) {
+        List<Term> terms = Lists.newArrayList();
         for (Specialization specialization : includedSpecializations) {
-            filter.addTerm(new Term(FIELD_CONTENT_SPECIALIZATION, specialization.toString()));
-            // People don't have a specialization, so the specialization filter should not apply
-            // to them
-            filter.addTerm(new Term(FIELD_TYPE, EntityType.PERSON.toString()));
+            terms.add(new Term(FIELD_CONTENT_SPECIALIZATION, specialization.toString()));
         }
-        return filter;
+        // People don't have a specialization, so the specialization filter should not apply
+        // to them
+        terms.add(new Term(FIELD_TYPE, EntityType.PERSON.toString()));
+        return filters.filterFor(terms);
     }
     
     private Query availabilityQuery(float boost) {
-        TermsFilter filter = new TermsFilter();
-        filter.addTerm(new Term(FIELD_AVAILABLE, TRUE));
+        Filter filter = termFilterCache.filterFor(new Term(FIELD_AVAILABLE, TRUE));
         
         ConstantScoreQuery query = new ConstantScoreQuery(filter);
         query.setBoost(boost);
         return query;
     }
     
+    /**
+     * Reopens the current reader rather than opening a new one, so segments which
+     * haven't changed (and their field caches) are shared with the previous searcher.
+     * Queries in flight carry on with the previous searcher until they release it.
+     */
     private void refreshSearcher() {
-        Exception error = null;
-        WriteLock writeLock = lock.writeLock();
+        unpublishedChanges.set(false);
         try {
-            writeLock.lock();
-            this.contentSearcher.close();
-        } catch (Exception ex) {
-            error = ex;
-        } finally {            
-            // Refresh the searcher in any case:
-            try {
-                this.contentSearcher = new IndexSearcher(contentDir);
-            } catch (IOException ex) {
-                // An error in refreshing the searcher is more important than an error in closing it:
-                error =  ex;
-            } finally {
-                writeLock.unlock();
-            }
-            // If there was an error, propagate it:
-            if (error != null) {
-                throw new RuntimeException(error);
+            if (searcherManager.maybeRefresh()) {
+                checkSchemaMarkers();
+                warmRankingColumns();
+                warmSuggestions();
             }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * Loads the ranking columns of new segments before searches need them, and
+     * deletes those of segments which have been merged away.
+     */
+    private void warmRankingColumns() {
+        SearcherGeneration generation = searcherManager.acquire();
+        try {
+            rankingColumns.warm(generation.allSegments());
+            rankingColumns.retainOnly(generation.allSegments());
+        } catch (IOException e) {
+            log.warn("Failed to load ranking columns for generation " + generation.generation(), e);
+        } finally {
+            searcherManager.release(generation);
+        }
+    }
+    
+    private void warmSuggestions() {
+        SearcherGeneration generation = searcherManager.acquire();
+        try {
+            titleSuggestions.warm(generation.allSegments(), hourOf(clock.timestamp()));
+        } catch (IOException e) {
+            log.warn("Failed to load title suggestions for generation " + generation.generation(), e);
+        } finally {
+            searcherManager.release(generation);
         }
     }
     
-    private static final class Result implements Comparable<Result> {
+    private static final FieldSelector RESULT_FIELDS = new MapFieldSelector(FIELD_CONTENT_URI, FIELD_TYPE);
+    
+    private static final class Result {
         
         private String uri;
-        private int titleLength;
-        private float score;
         private String entityType;
         
-        private Result(ScoreDoc scoreDoc, Document doc) {
+        private Result(Document doc) {
             uri = doc.getField(FIELD_CONTENT_URI).stringValue();
-            titleLength = doc.getField(FIELD_TITLE_FLATTENED).stringValue().length();
             Field entityTypeField = doc.getField(FIELD_TYPE);
             
             if(entityTypeField != null) {
@@ -703,18 +1180,59 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
             } else {
                 entityType = EntityType.ITEM.toString();
             }
-            score = scoreDoc.score;
         }
-        
-        @Override
-        public int compareTo(Result other) {
-            int cmp = Floats.compare(other.score, score);
-            if (cmp != 0) {
-                return cmp;
+    }
+    
+    private static final class TieredTopDocs {
+
+        private final SearchTier tier;
+        private final Query titleQuery;
+        private final Query query;
+        private final TopDocs topDocs;
+        private final int startIndex;
+        private final boolean everyHitCounted;
+
+        private TieredTopDocs(SearchTier tier, Query titleQuery, Query query, TopDocs topDocs, int startIndex, 
+                boolean everyHitCounted) {
+            this.tier = tier;
+            this.titleQuery = titleQuery;
+            this.query = query;
+            this.topDocs = topDocs;
+            this.startIndex = startIndex;
+            this.everyHitCounted = everyHitCounted;
+        }
+
+        /**
+         * @return a cursor after the page's last hit, unless the page is empty
+         *         or every hit of the query was counted and none follow it
+         */
+        Optional<SearchCursor> nextCursor(long generation, int hour) {
+            int returned = topDocs.scoreDocs.length;
+            if (returned == 0 || (everyHitCounted && topDocs.totalHits <= startIndex + returned)) {
+                return Optional.absent();
             }
-            return Ints.compare(titleLength, other.titleLength);
+            Hit last = (Hit) topDocs.scoreDocs[returned - 1];
+            return Optional.of(new SearchCursor(generation, hour, last.score, last.titleLength(), last.doc));
         }
     }
+
+    /**
+     * The docs a query narrower than the title query matches, and the clauses
+     * of the title query which a doc it doesn't match could still match.
+     */
+    private static final class NarrowerTier {
+
+        private final SearchTier tier;
+        private final Query matching;
+        private final Query othersTitleQuery;
+
+        private NarrowerTier(SearchTier tier, Query matching, Query othersTitleQuery) {
+            this.tier = tier;
+            this.matching = matching;
+            this.othersTitleQuery = othersTitleQuery;
+        }
+    }
+    
     private static final Function<Result, ContentIdentifier> TO_CONTENT_IDENTIFIER = new Function<Result, ContentIdentifier>() {
         
         @Override
@@ -727,33 +1245,209 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
         }
     };
     
-    private List<ContentIdentifier> search(Query query, Filter filter, Selection selection) {
+    private PagedSearchResults search(SearcherGeneration generation, SearchQuery q, SharedFilters filters, 
+            PriorityBroadcasts.Boosted boosted, Optional<SearchCursor> after, QueryBudget budget) {
         try {
-            /*
-             * We re-sort the results so that when two items have the same score
-             * the item with the shortest title wins.
-             */
-            TopDocs topDocs = getTopDocs(query, filter, selection);
-            List<Result> results = Lists.newArrayList();
-            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
-                Document doc = contentSearcher.doc(scoreDoc.doc);
-                results.add(new Result(scoreDoc, doc));
+            TieredTopDocs tiered;
+            try {
+                tiered = collect(generation, q, filters, boosted, after, budget);
+            } catch (RewriteTimeoutException e) {
+                timeouts.rewriteTimedOut();
+                return exactOrPrefixAfterRewriteTimeout(generation, q, filters, boosted, after, budget.renewed());
             }
-            Collections.sort(results);
-            return Lists.transform(results, TO_CONTENT_IDENTIFIER);
+            tiers.answered(tiered.tier);
+            List<ContentIdentifier> identifiers = identifiers(generation.searcher(), 
+                    Arrays.asList(tiered.topDocs.scoreDocs));
+            if (budget.wasExceeded()) {
+                timeouts.collectionTimedOut();
+                return new PagedSearchResults(identifiers, Optional.<SearchCursor>absent(), true);
+            }
+            return new PagedSearchResults(identifiers, tiered.nextCursor(generation.generation(), boosted.hour()));
+        } catch (QueryTooComplexException e) {
+            throw e;
+        } catch (BooleanQuery.TooManyClauses e) {
+            degradations.rejected();
+            throw new QueryTooComplexException("Title '" + q.getTerm() + "' matches too many terms to search");
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
     
-    private List<String> debug(Query query, Filter filter, Selection selection) {
+    /**
+     * Answers a search whose title query ran out of time while being rewritten
+     * from its exact and prefix clauses, which rewrite without enumerating
+     * terms, collected within a renewed budget. The results are partial either
+     * way, and empty only for a short prefix search, which has no other clauses
+     * to leave out.
+     */
+    private PagedSearchResults exactOrPrefixAfterRewriteTimeout(SearcherGeneration generation, SearchQuery q, 
+            SharedFilters filters, PriorityBroadcasts.Boosted boosted, Optional<SearchCursor> after, 
+            QueryBudget budget) throws IOException {
+        Optional<Query> exactOrPrefix = titleQueries(generation).buildExactOrPrefix(q.getTerm());
+        if (!exactOrPrefix.isPresent()) {
+            return new PagedSearchResults(ImmutableList.<ContentIdentifier>of(), Optional.<SearchCursor>absent(), true);
+        }
+        BroadcastAndPriorityScore query = getQuery(q, exactOrPrefix.get(), filters, boosted);
+        TopDocs topDocs = getRankedTopDocs(generation.searcher(), segmentsFor(generation, q), q, q.getSelection(), 
+                query, getFilter(q, filters), boosted, after, budget);
+        tiers.answered(SearchTier.EXACT_OR_PREFIX);
+        return new PagedSearchResults(identifiers(generation.searcher(), Arrays.asList(topDocs.scoreDocs)), 
+                Optional.<SearchCursor>absent(), true);
+    }
+    
+    private List<ContentIdentifier> identifiers(IndexSearcher searcher, List<ScoreDoc> scoreDocs) throws IOException {
+        List<Result> results = Lists.newArrayList();
+        for (ScoreDoc scoreDoc : scoreDocs) {
+            results.add(new Result(searcher.doc(scoreDoc.doc, RESULT_FIELDS)));
+        }
+        return ImmutableList.copyOf(Lists.transform(results, TO_CONTENT_IDENTIFIER));
+    }
+    
+    /**
+     * Collects the page of the title query, ranked by its score whichever docs
+     * it's collected from. With shingles, a title of several words has a
+     * clause for them, and the page is first tried from the docs matching its
+     * shingles or its exact and prefix clauses; otherwise, when tiers cascade,
+     * from the docs matching its exact and prefix clauses. Either answers the
+     * search if it fills the page, and its last hit scores above the most a
+     * doc only the fuzzy clauses match could, so the rest of the index needn't
+     * be searched; otherwise every doc the title query matches is.
+     * 
+     * The full query is only run within the index's complexity limits; a query
+     * degraded to its exact and prefix clauses is ranked by them, and its
+     * shingles, alone.
+     */
+    private TieredTopDocs collect(SearcherGeneration generation, SearchQuery q, SharedFilters filters, 
+            PriorityBroadcasts.Boosted boosted, Optional<SearchCursor> after, QueryBudget budget) throws IOException {
+        IndexSearcher searcher = generation.searcher();
+        SegmentSlice segments = segmentsFor(generation, q);
+        Filter filter = getFilter(q, filters);
+        Selection selection = q.getSelection();
+        int startIndex = after.isPresent() ? 0 : selection.getOffset();
+        int pageEnd = (int) Math.min(MAX_RESULTS, (long) startIndex + selection.limitOrDefaultValue(MAX_RESULTS));
+        String term = q.getTerm();
+        Optional<Query> shingled = shingles.isPresent() && shingles.get().marker().marks(generation) 
+                                 ? titleQueryBuilder.buildShingles(term) : Optional.<Query>absent();
+        Optional<Query> exactOrPrefix = titleQueries(generation).buildExactOrPrefix(term);
+        Optional<Integer> maxTokens = tokensWithinLimits(term, generation);
+        if (!maxTokens.isPresent() && exactOrPrefix.isPresent()) {
+            Query titleQuery = withShingles(exactOrPrefix.get(), shingled);
+            BroadcastAndPriorityScore query = getQuery(q, titleQuery, filters, boosted);
+            return new TieredTopDocs(SearchTier.EXACT_OR_PREFIX, titleQuery, query, 
+                    getRankedTopDocs(searcher, segments, q, selection, query, filter, boosted, after, budget), 
+                    startIndex, true);
+        }
+        Query fullTitleQuery = budget.rewrite(titleQuery(term, maxTokens.or(Integer.MAX_VALUE), generation, budget), 
+                generation.reader());
+        Query titleQuery = withShingles(fullTitleQuery, shingled);
+        BroadcastAndPriorityScore query = getQuery(q, (Query) titleQuery.clone(), filters, boosted);
+        Optional<NarrowerTier> narrowerTier = narrowerTier(fullTitleQuery, shingled, exactOrPrefix);
+        if (narrowerTier.isPresent()) {
+            NarrowerTier narrower = narrowerTier.get();
+            Filter matching = new QueryMatchesFilter(narrower.matching, Optional.fromNullable(filter));
+            TopDocs topDocs = getRankedTopDocs(searcher, segments, q, selection, query, matching, boosted, after, 
+                    budget);
+            int returned = topDocs.scoreDocs.length;
+            if (budget.wasExceeded() || (returned > 0 && startIndex + returned == pageEnd 
+                    && topDocs.scoreDocs[returned - 1].score > query.maxScoreMatchingOnly(
+                            getQuery(q, narrower.othersTitleQuery, filters, boosted), searcher, budget))) {
+                return new TieredTopDocs(narrower.tier, titleQuery, query, topDocs, startIndex, false);
+            }
+        }
+        return new TieredTopDocs(SearchTier.FULL, titleQuery, query, 
+                getRankedTopDocs(searcher, segments, q, selection, query, filter, boosted, after, budget), 
+                startIndex, true);
+    }
+    
+    /**
+     * @return the tier narrower than the title query which a page is tried
+     *         from, if there is one
+     */
+    private Optional<NarrowerTier> narrowerTier(Query fullTitleQuery, Optional<Query> shingled, 
+            Optional<Query> exactOrPrefix) {
+        if (!exactOrPrefix.isPresent()) {
+            return Optional.absent();
+        }
+        Optional<Query> fuzzy = TitleQueryBuilder.withoutExactOrPrefix(fullTitleQuery);
+        if (!fuzzy.isPresent()) {
+            return Optional.absent();
+        }
+        if (shingled.isPresent()) {
+            // A title without the words next to each other may still match the
+            // exact and prefix clauses, so their hits are tried too, which
+            // leaves no narrower tier worth trying after this one.
+            BooleanQuery matching = new BooleanQuery(true);
+            matching.add(shingled.get(), Occur.SHOULD);
+            matching.add(exactOrPrefix.get(), Occur.SHOULD);
+            return Optional.of(new NarrowerTier(SearchTier.SHINGLES, matching, fuzzy.get()));
+        }
+        if (cascadingTiers) {
+            return Optional.of(new NarrowerTier(SearchTier.EXACT_OR_PREFIX, exactOrPrefix.get(), fuzzy.get()));
+        }
+        return Optional.absent();
+    }
+    
+    /**
+     * @return the title query with the shingles of a title of several words,
+     *         if it has them, as a clause lifting the hits which have its words
+     *         next to each other and in order
+     */
+    private static Query withShingles(Query titleQuery, Optional<Query> shingled) {
+        if (!shingled.isPresent()) {
+            return titleQuery;
+        }
+        BooleanQuery query = new BooleanQuery(true);
+        query.add(titleQuery, Occur.MUST);
+        query.add(shingled.get(), Occur.SHOULD);
+        return query;
+    }
+    
+    /**
+     * Checks the full title query for a term against the complexity limits,
+     * estimating its cost from the reader's term dictionary.
+     * 
+     * @return how many of the term's tokens the full query may have clauses
+     *         for, or absent if it should be degraded to its exact and prefix
+     *         clauses
+     * @throws QueryTooComplexException if the limits are exceeded and say to
+     *         reject the query
+     */
+    private Optional<Integer> tokensWithinLimits(String term, SearcherGeneration generation) throws IOException {
+        if (complexityLimits.isUnlimited()) {
+            return Optional.of(Integer.MAX_VALUE);
+        }
+        boolean reject = complexityLimits.policy() == QueryComplexityLimits.Policy.REJECT;
+        int tokenCount = titleQueryBuilder.tokenCount(term);
+        if (tokenCount > complexityLimits.maxTokens()) {
+            if (reject) {
+                degradations.rejected();
+                throw new QueryTooComplexException("Title '" + term + "' has more than " 
+                        + complexityLimits.maxTokens() + " words");
+            }
+            degradations.tokensTruncated();
+        }
+        int maxTokens = Math.min(tokenCount, complexityLimits.maxTokens());
+        if (titleQueries(generation).estimateCost(term, maxTokens, generation.reader()) > complexityLimits.maxCost()) {
+            if (reject) {
+                degradations.rejected();
+                throw new QueryTooComplexException("Title '" + term + "' matches too many terms to search");
+            }
+            degradations.fuzzyDropped();
+            return Optional.absent();
+        }
+        return Optional.of(maxTokens);
+    }
+    
+    private static int hitsRequired(Selection selection) {
+        return (int) Math.min(MAX_RESULTS, (long) selection.getOffset() + selection.limitOrDefaultValue(MAX_RESULTS));
+    }
+    
+    private List<String> debug(IndexSearcher searcher, TieredTopDocs tiered) {
         try {
-            TopDocs topDocs = getTopDocs(query, filter, selection);
-            
             List<String> results = Lists.newArrayList();
-            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
-                Document doc = contentSearcher.doc(scoreDoc.doc);
-                results.add(doc.getField(FIELD_CONTENT_URI).stringValue() + " : " + scoreDoc.score + "\n" + contentSearcher.explain(query.weight(contentSearcher), scoreDoc.doc));
+            for (ScoreDoc scoreDoc : tiered.topDocs.scoreDocs) {
+                Document doc = searcher.doc(scoreDoc.doc);
+                results.add(doc.getField(FIELD_CONTENT_URI).stringValue() + " : " + scoreDoc.score + "\n" + searcher.explain(tiered.query.weight(searcher), scoreDoc.doc));
             }
             return results;
         } catch (Exception e) {
@@ -761,15 +1455,78 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
         }
     }
     
-    private TopDocs getTopDocs(Query query, Filter filter, Selection selection) throws IOException {
-        int startIndex = selection.getOffset();
-        int endIndex = selection.limitOrDefaultValue(MAX_RESULTS);
+    /**
+     * With a {@link RankedPartition}, a first page of no more than its max hits
+     * is collected from the docs in the partition first. It answers the search
+     * if it fills the page, with more hits to come, and its last hit scores
+     * above the most a doc outside the partition could; otherwise every doc is
+     * searched.
+     */
+    private TopDocs getRankedTopDocs(IndexSearcher searcher, SegmentSlice segments, SearchQuery q, 
+            Selection selection, BroadcastAndPriorityScore query, Filter filter, 
+            PriorityBroadcasts.Boosted boosted, Optional<SearchCursor> after, QueryBudget budget) throws IOException {
+        int hitsRequired = hitsRequired(selection);
+        if (!rankedPartition.isPresent() || after.isPresent() || hitsRequired == 0 
+                || hitsRequired > rankedPartition.get().maxHits() || q.getBroadcastWeighting() <= 0.0f) {
+            return getTopDocs(searcher, segments, query, filter, selection, after, budget);
+        }
+        BooleanFilter partition = new BooleanFilter();
+        partition.add(new FilterClause(rankedPartition.get().recentBroadcasts(query.currentHour()), Occur.SHOULD));
+        if (q.getPriorityChannelWeighting() > 1.0f) {
+            partition.add(new FilterClause(boosted.filter(), Occur.SHOULD));
+        }
+        if (q.getCatchupWeighting() != 0.0f) {
+            partition.add(new FilterClause(termFilterCache.filterFor(new Term(FIELD_AVAILABLE, TRUE)), Occur.SHOULD));
+        }
+        if (filter != null) {
+            partition.add(new FilterClause(filter, Occur.MUST));
+        }
+        TopDocs ranked = getTopDocs(searcher, segments, query, partition, selection, after, budget);
+        int returned = ranked.scoreDocs.length;
+        if (budget.wasExceeded() || (ranked.totalHits > hitsRequired && returned > 0 
+                && ranked.scoreDocs[returned - 1].score > query.maxScoreOutsidePartition(searcher, budget))) {
+            tiers.answeredFromRankedPartition();
+            return ranked;
+        }
+        tiers.searchedBeyondRankedPartition();
+        return getTopDocs(searcher, segments, query, filter, selection, after, budget);
+    }
+    
+    private TopDocs getTopDocs(IndexSearcher searcher, SegmentSlice segments, Query query, Filter filter, 
+            Selection selection) throws IOException {
+        return getTopDocs(searcher, segments, query, filter, selection, Optional.<SearchCursor>absent(), 
+                QueryBudget.unlimited());
+    }
+    
+    /**
+     * Hits are ordered by score and, when two have the same score, the one with 
+     * the shortest title wins. Only the first {@value #MAX_RESULTS} hits can be 
+     * reached by offset; a cursor can page beyond them.
+     * 
+     * The query is weighted against the whole index, so scores don't depend on 
+     * which segments are searched. If the budget runs out while collecting, the
+     * best hits collected by then are returned.
+     */
+    private TopDocs getTopDocs(IndexSearcher searcher, SegmentSlice segments, Query query, Filter filter, 
+            Selection selection, Optional<SearchCursor> after, QueryBudget budget) throws IOException {
+        int startIndex = after.isPresent() ? 0 : selection.getOffset();
+        int howMany = selection.limitOrDefaultValue(MAX_RESULTS);
+        int numHits = (int) Math.max(0, Math.min(MAX_RESULTS, (long) startIndex + howMany));
         
-        TopScoreDocCollector collector = TopScoreDocCollector.create(MAX_RESULTS, true);
+        Weight weight = budget.rewrite(query, searcher.getIndexReader()).weight(searcher);
+        if (parallelSearcher.isPresent()) {
+            return parallelSearcher.get().search(segments, weight, filter, numHits, after, startIndex, howMany, budget);
+        }
         
-        contentSearcher.search(query.weight(contentSearcher), filter, collector);
+        TitleLengthTopDocsCollector collector = new TitleLengthTopDocsCollector(FIELD_TITLE_LENGTH, numHits, after);
         
-        return collector.topDocs(startIndex, endIndex);
+        try {
+            segments.searcher().search(weight, filter, budget.limit(collector));
+        } catch (TimeExceededException e) {
+            budget.markExceeded();
+        }
+        
+        return collector.topDocs(startIndex, howMany);
     }
 
     private final static Predicate<Described> FILTER_SEARCHABLE_CONTENT = new Predicate<Described>() {
@@ -784,62 +1541,177 @@ public class LuceneContentIndex implements ContentChangeListener, DebuggableCont
         }
     };
     
-    private static class DistanceToBroadcastScore extends CustomScoreQuery {
+    public static final class Builder {
         
-        private static final long serialVersionUID = 1L;
-        private final int currentHour;
-        private float broadcastWeighting = 1;
+        private final File luceneDir;
+        private final KnownTypeContentResolver contentResolver;
+        private final BroadcastBooster broadcastBooster;
+        private final ChannelResolver channelResolver;
+        private final String backupDirectory;
+        private Optional<Duration> nearRealTimeReopenInterval = Optional.absent();
+        private Optional<SearchResultsCache> resultsCache = Optional.absent();
+        private Optional<RewrittenQueryCache> rewrittenQueries = Optional.absent();
+        private Duration cursorRetention = Duration.ZERO;
+        private TermFilterCache termFilterCache = new TermFilterCache();
+        private Optional<ParallelSegmentSearcher> parallelSearcher = Optional.absent();
+        private ShardLayout shardLayout = ShardLayout.unsharded();
+        private Optional<ExecutorService> batchExecutor = Optional.absent();
+        private Optional<Duration> defaultTimeout = Optional.absent();
+        private boolean cascadingTiers = false;
+        private FuzzyPruning fuzzyPruning = FuzzyPruning.none();
+        private QueryComplexityLimits complexityLimits = QueryComplexityLimits.none();
+        private TitleSynonyms synonyms = TitleSynonyms.defaults();
+        private Optional<PrefixFields> prefixFields = Optional.absent();
+        private Optional<TitleShingles> shingles = Optional.absent();
+        private Optional<Integer> rankedPartitionMaxHits = Optional.absent();
         
-        public DistanceToBroadcastScore(Query subQuery) {
-            super(subQuery, new ValueSourceQuery(new IntFieldSource(FIELD_BROADCAST_HOUR_TS)));
-            setStrict(true);
-            this.currentHour = hourOf(clock.timestamp());
+        private Builder(File luceneDir, KnownTypeContentResolver contentResolver, 
+                BroadcastBooster broadcastBooster,
+                ChannelResolver channelResolver, String backupDirectory) {
+            this.luceneDir = luceneDir;
+            this.contentResolver = contentResolver;
+            this.broadcastBooster = broadcastBooster;
+            this.channelResolver = channelResolver;
+            this.backupDirectory = backupDirectory;
         }
         
-        public Query withBroadcastWeight(float broadcastWeighting) {
-            this.broadcastWeighting = broadcastWeighting;
+        /**
+         * Opens the searcher from the {@link IndexWriter} so that changes become
+         * searchable within the given interval, without waiting for 
+         * {@link LuceneContentIndex#afterContentChange()}.
+         */
+        public Builder withNearRealTimeReopen(Duration interval) {
+            this.nearRealTimeReopenInterval = Optional.of(interval);
             return this;
         }
         
-        @Override
-        public float customScore(int doc, float subQueryScore, float broadcastHour) {
-            float hoursBetweenBroadcastAndNow = Math.abs(currentHour - broadcastHour);
-
-            // This is inverted; a higher number means we scale less. We up-weigh
-            // items broadcast or to be broadcast in the last week.
-            int scalingFactor = hoursBetweenBroadcastAndNow < HOURS_IN_A_WEEK ? 50 : 1;
-            
-            float broadcastScore = (float) (1f / ((hoursBetweenBroadcastAndNow / scalingFactor) + 1));
-            return subQueryScore + (broadcastWeighting * broadcastScore * subQueryScore);
+        public Builder withResultsCache(SearchResultsCache resultsCache) {
+            this.resultsCache = Optional.of(resultsCache);
+            return this;
         }
-    }
-    
-    private static class BooleanBoostScore extends CustomScoreQuery {
         
-        private static final long serialVersionUID = 1L;
-        private float weighting;
+        /**
+         * Title queries are rewritten afresh for every search unless a cache of
+         * rewritten queries is given.
+         */
+        public Builder withRewrittenQueryCache(RewrittenQueryCache rewrittenQueries) {
+            this.rewrittenQueries = Optional.of(rewrittenQueries);
+            return this;
+        }
         
-        public BooleanBoostScore(Query subQuery, String field) {
-                super(subQuery, new ValueSourceQuery(new IntFieldSource(field)));
-                setStrict(true);
+        /**
+         * Keeps superseded searcher generations open for up to this long, so that 
+         * a {@link SearchCursor} keeps paging through the snapshot it came from.
+         * A cursor from a generation which is no longer retained is rejected.
+         */
+        public Builder withCursorRetention(Duration retention) {
+            this.cursorRetention = checkNotNull(retention);
+            return this;
         }
         
-        public Query withWeighting(float weighting) {
-                this.weighting = weighting;
-                return this;
+        public Builder withTermFilterCache(TermFilterCache termFilterCache) {
+            this.termFilterCache = checkNotNull(termFilterCache);
+            return this;
         }
         
-        @Override
-        public float customScore(int doc, float subQueryScore, float thisFieldValue) {
-                if(Math.abs(thisFieldValue - 1) < TOLERANCE) {
-                        return weighting * subQueryScore;
-                }
-                else {
-                        return subQueryScore;
-                }
+        /**
+         * Searches segments concurrently on the given executor, with at most 
+         * maxConcurrentTasks segment searches in flight across all queries.
+         */
+        public Builder withParallelSegmentSearch(ExecutorService executor, int maxConcurrentTasks) {
+            this.parallelSearcher = Optional.of(new ParallelSegmentSearcher(executor, maxConcurrentTasks, FIELD_TITLE_LENGTH));
+            return this;
+        }
+        
+        /**
+         * Partitions documents into shards by publisher, each in its own 
+         * subdirectory of the index directory with its own writer.
+         */
+        public Builder withShardLayout(ShardLayout shardLayout) {
+            this.shardLayout = checkNotNull(shardLayout);
+            return this;
+        }
+        
+        /**
+         * Runs the queries of a batch concurrently on the given executor, rather
+         * than one after another on the calling thread.
+         */
+        public Builder withBatchExecutor(ExecutorService executor) {
+            this.batchExecutor = Optional.of(executor);
+            return this;
+        }
+        
+        /**
+         * Limits the time each query may spend rewriting and collecting, unless
+         * overridden by its {@link SearchOptions}.
+         */
+        public Builder withDefaultTimeout(Duration timeout) {
+            this.defaultTimeout = Optional.of(timeout);
+            return this;
+        }
+        
+        /**
+         * Collects a page from the docs the exact and prefix clauses of the
+         * title query match first, and only searches the docs only the fuzzy
+         * clauses match when those can't answer.
+         */
+        public Builder withCascadingTiers() {
+            this.cascadingTiers = true;
+            return this;
+        }
+        
+        public Builder withFuzzyPruning(FuzzyPruning fuzzyPruning) {
+            this.fuzzyPruning = checkNotNull(fuzzyPruning);
+            return this;
         }
         
+        public Builder withComplexityLimits(QueryComplexityLimits complexityLimits) {
+            this.complexityLimits = checkNotNull(complexityLimits);
+            return this;
+        }
+        
+        public Builder withSynonyms(TitleSynonyms synonyms) {
+            this.synonyms = checkNotNull(synonyms);
+            return this;
+        }
+        
+        /**
+         * Indexes prefixes of title tokens of up to maxLength chars, to match
+         * them by term rather than by enumerating terms. An existing index is
+         * only queried through them once all its content has been indexed
+         * again.
+         */
+        public Builder withPrefixFields(int maxLength) {
+            this.prefixFields = Optional.of(new PrefixFields(maxLength));
+            return this;
+        }
+        
+        /**
+         * Indexes runs of adjacent title tokens, which lift the hits of a
+         * search of several words that have its words next to each other, and
+         * collects a page from those hits first, only searching the docs only
+         * the fuzzy clauses match when they can't answer. An existing index is
+         * only queried through them once all its content has been indexed
+         * again.
+         */
+        public Builder withShingles() {
+            this.shingles = Optional.of(new TitleShingles());
+            return this;
+        }
+        
+        /**
+         * Collects first pages of up to maxHits hits from the docs whose
+         * broadcast, priority channel or availability lift their scores most,
+         * and only searches the rest of the index when those can't answer.
+         */
+        public Builder withRankedPartition(int maxHits) {
+            checkArgument(maxHits > 0, "maxHits must be positive");
+            this.rankedPartitionMaxHits = Optional.of(maxHits);
+            return this;
+        }
+        
+        public LuceneContentIndex build() {
+            return new LuceneContentIndex(this);
+        }
     }
-    
-   
 }
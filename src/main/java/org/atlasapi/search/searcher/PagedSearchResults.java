@@ -0,0 +1,38 @@
+package org.atlasapi.search.searcher;
+
+import java.util.List;
+
+import org.atlasapi.media.entity.simple.ContentIdentifier;
+import org.atlasapi.search.model.SearchResults;
+
+import com.google.common.base.Optional;
+
+/**
+ * {@link SearchResults} with the cursor for the following page, rendered as
+ * <code>next</code> when there are more results, and <code>partial</code> when
+ * the query ran out of time and these are only the best found by then.
+ */
+public class PagedSearchResults extends SearchResults {
+
+    private final String next;
+    // null rather than false, so that it's only rendered when set
+    private final Boolean partial;
+
+    public PagedSearchResults(List<ContentIdentifier> results, Optional<SearchCursor> next) {
+        this(results, next, false);
+    }
+
+    public PagedSearchResults(List<ContentIdentifier> results, Optional<SearchCursor> next, boolean partial) {
+        super(results);
+        this.next = next.isPresent() ? next.get().encode() : null;
+        this.partial = partial ? Boolean.TRUE : null;
+    }
+
+    public Optional<String> getNext() {
+        return Optional.fromNullable(next);
+    }
+
+    public boolean isPartial() {
+        return partial != null;
+    }
+}
@@ -0,0 +1,120 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TimeLimitingCollector.TimeExceededException;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.Weight;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
+/**
+ * Searches the segments of an index concurrently and merges their top hits.
+ *
+ * The weight is created once against the whole index, so scores are the same as
+ * a serial search. Each segment beyond the first is handed to the executor only
+ * if a permit can be taken from a budget shared by all queries; otherwise the
+ * calling thread searches it, so under load this degrades to a serial search
+ * rather than queueing behind other queries.
+ */
+final class ParallelSegmentSearcher {
+
+    private final ExecutorService executor;
+    private final Semaphore budget;
+    private final String titleLengthField;
+
+    ParallelSegmentSearcher(ExecutorService executor, int maxConcurrentTasks, String titleLengthField) {
+        checkArgument(maxConcurrentTasks > 0, "maxConcurrentTasks must be positive");
+        this.executor = checkNotNull(executor);
+        this.budget = new Semaphore(maxConcurrentTasks);
+        this.titleLengthField = checkNotNull(titleLengthField);
+    }
+
+    TopDocs search(SegmentSlice segments, Weight weight, Filter filter, int numHits, 
+            Optional<SearchCursor> after, int start, int howMany, QueryBudget queryBudget) throws IOException {
+        List<Future<TopDocs>> forked = Lists.newArrayList();
+        List<Callable<TopDocs>> inline = Lists.newArrayList();
+        for (int i = 0; i < segments.size(); i++) {
+            Callable<TopDocs> task = segmentSearch(segments.segment(i), segments.docStart(i), weight, filter, numHits, after, queryBudget);
+            if (inline.isEmpty() || !budget.tryAcquire()) {
+                // the first segment is always searched on the calling thread
+                inline.add(task);
+                continue;
+            }
+            try {
+                forked.add(executor.submit(releasingBudget(task)));
+            } catch (RejectedExecutionException e) {
+                budget.release();
+                inline.add(task);
+            }
+        }
+
+        List<TopDocs> results = Lists.newArrayList();
+        try {
+            for (Callable<TopDocs> task : inline) {
+                results.add(task.call());
+            }
+            for (Future<TopDocs> future : forked) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        } catch (Exception e) {
+            Throwables.propagateIfPossible(e, IOException.class);
+            throw Throwables.propagate(e);
+        }
+        return TitleLengthTopDocsCollector.merge(results, start, howMany);
+    }
+
+    private Callable<TopDocs> segmentSearch(final IndexReader segment, final int docStart, 
+            final Weight weight, final Filter filter, final int numHits, final Optional<SearchCursor> after, 
+            final QueryBudget queryBudget) {
+        return new Callable<TopDocs>() {
+
+            @Override
+            public TopDocs call() throws IOException {
+                IndexSearcher segmentSearcher = new IndexSearcher(segment, new IndexReader[] { segment }, new int[] { docStart });
+                TitleLengthTopDocsCollector collector = new TitleLengthTopDocsCollector(titleLengthField, numHits, after);
+                try {
+                    segmentSearcher.search(weight, filter, queryBudget.limit(collector));
+                } catch (TimeExceededException e) {
+                    queryBudget.markExceeded();
+                }
+                return collector.topDocs(0, numHits);
+            }
+        };
+    }
+
+    private Callable<TopDocs> releasingBudget(final Callable<TopDocs> task) {
+        return new Callable<TopDocs>() {
+
+            @Override
+            public TopDocs call() throws Exception {
+                try {
+                    return task.call();
+                } finally {
+                    budget.release();
+                }
+            }
+        };
+    }
+}
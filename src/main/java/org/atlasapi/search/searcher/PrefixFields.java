@@ -0,0 +1,61 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.ngram.EdgeNGramTokenFilter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * Fields holding every prefix, up to maxLength chars, of the tokens of a title
+ * field, so that a prefix no longer than that is matched by looking up one term
+ * rather than by enumerating every term it starts.
+ *
+ * Documents indexed with them are marked with a schema which includes
+ * maxLength, so an index built without them, or with another maxLength, is
+ * queried as before until all its content has been indexed again.
+ */
+final class PrefixFields {
+
+    private static final String FIELD_SUFFIX = "-prefixes";
+
+    private final int maxLength;
+    private final SchemaMarker marker;
+
+    PrefixFields(int maxLength) {
+        checkArgument(maxLength > 0, "maxLength must be positive");
+        this.maxLength = maxLength;
+        this.marker = new SchemaMarker("prefixes-" + maxLength);
+    }
+
+    /**
+     * @return the field holding the prefixes of the tokens of the given one
+     */
+    static String of(String field) {
+        return field + FIELD_SUFFIX;
+    }
+
+    SchemaMarker marker() {
+        return marker;
+    }
+
+    TokenStream prefixes(TokenStream tokens) {
+        return new EdgeNGramTokenFilter(tokens, EdgeNGramTokenFilter.Side.FRONT, 1, maxLength);
+    }
+
+    boolean covers(String prefix) {
+        return !prefix.isEmpty() && prefix.length() <= maxLength;
+    }
+
+    /**
+     * @return a query scoring as a constant scoring prefix query on the field
+     *         would, for a prefix it {@link #covers(String)}
+     */
+    Query prefixQuery(String field, String prefix) {
+        return new ConstantScoreQuery(new QueryWrapperFilter(new TermQuery(new Term(of(field), prefix))));
+    }
+}
@@ -0,0 +1,231 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.OpenBitSet;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.metabroadcast.common.time.Clock;
+
+/**
+ * Matches the docs still to be broadcast on priority channels, from the
+ * channel and end hour of each future broadcast indexed in
+ * {@link LuceneContentIndex#FIELD_FUTURE_BROADCASTS}, so that which docs are
+ * boosted follows the clock and the channel group asked for rather than the
+ * time they were indexed. A broadcast counts until the end of the hour in
+ * which it ends.
+ *
+ * Docs indexed with their future broadcasts are marked with a
+ * {@link SchemaMarker}. Docs indexed before, which aren't, fall back to the
+ * priority channel flag in their {@link RankingColumns}, which only counts for
+ * the default channels and was fixed when they were indexed, so it stays set
+ * after their broadcasts end. An index built before future broadcasts were
+ * should be reloaded, indexing all its content again, after which no doc falls
+ * back to the flag.
+ *
+ * Each segment's sets are cached for the current hour, keyed on the segment's
+ * core and the channel group, and the sets of earlier hours are dropped once
+ * the hour moves on.
+ */
+final class PriorityBroadcasts {
+
+    private static final long MILLIS_IN_HOUR = 60 * 60 * 1000;
+    private static final char SEPARATOR = ' ';
+    private static final int MAX_GROUPS_PER_SEGMENT = 16;
+
+    private final BroadcastBooster broadcastBooster;
+    private final RankingColumns rankingColumns;
+    private final Clock clock;
+    private final SchemaMarker marker = new SchemaMarker("future-broadcasts");
+    private volatile HourSets current = new HourSets(Integer.MIN_VALUE);
+
+    PriorityBroadcasts(BroadcastBooster broadcastBooster, RankingColumns rankingColumns, Clock clock) {
+        this.broadcastBooster = checkNotNull(broadcastBooster);
+        this.rankingColumns = checkNotNull(rankingColumns);
+        this.clock = checkNotNull(clock);
+    }
+
+    /**
+     * @return the term indexing a broadcast on the channel ending in the given
+     *         hour, which sorts after the channel's broadcasts ending earlier
+     */
+    static String term(String channelUri, int endHour) {
+        return channelUri + SEPARATOR + NumericUtils.intToPrefixCoded(endHour);
+    }
+
+    /**
+     * @return the marker of docs indexed with their future broadcasts
+     */
+    SchemaMarker marker() {
+        return marker;
+    }
+
+    /**
+     * @param channelGroup the group whose channels are boosted, or absent for
+     *        the default channels
+     * @return the docs boosted in this hour
+     */
+    Boosted boosted(Optional<String> channelGroup) {
+        return boosted(channelGroup, (int) (clock.now().getMillis() / MILLIS_IN_HOUR));
+    }
+
+    /**
+     * @param hour the hour since the epoch; the sets of an hour before the
+     *        latest asked for aren't cached beyond the search asking
+     * @return the docs boosted in the given hour
+     */
+    Boosted boosted(Optional<String> channelGroup, int hour) {
+        HourSets sets = current;
+        if (sets.hour != hour) {
+            sets = new HourSets(hour);
+            if (hour > current.hour) {
+                current = sets;
+            }
+        }
+        return new Boosted(sets, channelGroup);
+    }
+
+    private OpenBitSet load(IndexReader segment, int hour, Optional<String> channelGroup) throws IOException {
+        OpenBitSet bits = new OpenBitSet(segment.maxDoc());
+        Set<String> channels = channelGroup.isPresent() ? broadcastBooster.priorityChannels(channelGroup.get())
+                                                        : broadcastBooster.priorityChannels();
+        String field = LuceneContentIndex.FIELD_FUTURE_BROADCASTS;
+        TermDocs termDocs = segment.termDocs();
+        try {
+            for (String channel : channels) {
+                String prefix = channel + SEPARATOR;
+                TermEnum terms = segment.terms(new Term(field, term(channel, hour)));
+                try {
+                    do {
+                        Term term = terms.term();
+                        if (term == null || !field.equals(term.field()) || !term.text().startsWith(prefix)) {
+                            break;
+                        }
+                        termDocs.seek(terms);
+                        while (termDocs.next()) {
+                            bits.fastSet(termDocs.doc());
+                        }
+                    } while (terms.next());
+                } finally {
+                    terms.close();
+                }
+            }
+        } finally {
+            termDocs.close();
+        }
+        if (!channelGroup.isPresent()) {
+            addUnmarkedOnPriorityChannel(segment, bits);
+        }
+        return bits;
+    }
+
+    private void addUnmarkedOnPriorityChannel(IndexReader segment, OpenBitSet bits) throws IOException {
+        OpenBitSet marked = marker.marked(segment);
+        if (marked.cardinality() == segment.numDocs()) {
+            return;
+        }
+        RankingColumns.SegmentColumns columns = rankingColumns.forSegment(segment);
+        for (int doc = 0; doc < segment.maxDoc(); doc++) {
+            if (!marked.fastGet(doc) && columns.onPriorityChannel(doc) != 0) {
+                bits.fastSet(doc);
+            }
+        }
+    }
+
+    /**
+     * The docs boosted for one channel group in one hour.
+     */
+    static final class Boosted {
+
+        private final HourSets sets;
+        private final Optional<String> channelGroup;
+
+        private Boosted(HourSets sets, Optional<String> channelGroup) {
+            this.sets = sets;
+            this.channelGroup = channelGroup;
+        }
+
+        int hour() {
+            return sets.hour;
+        }
+
+        OpenBitSet docs(IndexReader segment) throws IOException {
+            return sets.docs(segment, channelGroup);
+        }
+
+        Filter filter() {
+            return new BoostedFilter(this);
+        }
+    }
+
+    private static final class BoostedFilter extends Filter {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Boosted boosted;
+
+        private BoostedFilter(Boosted boosted) {
+            this.boosted = boosted;
+        }
+
+        @Override
+        public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+            return boosted.docs(reader);
+        }
+
+        @Override
+        public String toString() {
+            return "PriorityBroadcasts(" + boosted.sets.hour + ", " + boosted.channelGroup.orNull() + ")";
+        }
+    }
+
+    private final class HourSets {
+
+        private final int hour;
+        private final Cache<Object, Cache<Optional<String>, OpenBitSet>> segments = CacheBuilder.newBuilder()
+                .weakKeys()
+                .build();
+
+        private HourSets(int hour) {
+            this.hour = hour;
+        }
+
+        OpenBitSet docs(final IndexReader segment, final Optional<String> channelGroup) throws IOException {
+            try {
+                Cache<Optional<String>, OpenBitSet> groups = segments.get(segment.getFieldCacheKey(),
+                        new Callable<Cache<Optional<String>, OpenBitSet>>() {
+
+                    @Override
+                    public Cache<Optional<String>, OpenBitSet> call() {
+                        return CacheBuilder.newBuilder().maximumSize(MAX_GROUPS_PER_SEGMENT).build();
+                    }
+                });
+                return groups.get(channelGroup, new Callable<OpenBitSet>() {
+
+                    @Override
+                    public OpenBitSet call() throws IOException {
+                        return load(segment, hour, channelGroup);
+                    }
+                });
+            } catch (ExecutionException e) {
+                Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+    }
+}
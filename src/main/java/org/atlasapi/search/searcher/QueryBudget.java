@@ -0,0 +1,162 @@
+package org.atlasapi.search.searcher;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.index.FilterIndexReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TimeLimitingCollector;
+import org.joda.time.Duration;
+
+import com.google.common.base.Optional;
+
+/**
+ * The time a single query may take, enforced while the query is rewritten and
+ * while hits are collected.
+ *
+ * Rewriting a fuzzy or prefix query enumerates terms, and that enumeration is
+ * abandoned with a {@link RewriteTimeoutException} once the deadline passes.
+ * Collection is wrapped in a {@link TimeLimitingCollector}; callers catch its
+ * exception, mark the budget exceeded and keep the hits collected so far.
+ */
+final class QueryBudget {
+
+    private static final QueryBudget UNLIMITED = new QueryBudget(Optional.<Duration>absent(), Optional.<Long>absent());
+
+    private final Optional<Duration> timeout;
+    private final Optional<Long> deadlineMillis;
+    private final AtomicBoolean exceeded = new AtomicBoolean(false);
+
+    private QueryBudget(Optional<Duration> timeout, Optional<Long> deadlineMillis) {
+        this.timeout = timeout;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    static QueryBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    static QueryBudget of(Optional<Duration> timeout) {
+        if (!timeout.isPresent()) {
+            return UNLIMITED;
+        }
+        return new QueryBudget(timeout, Optional.of(System.currentTimeMillis() + timeout.get().getMillis()));
+    }
+
+    /**
+     * @return a budget of the same time as this one, from now, but no shorter
+     *         than the resolution collection is timed at, so that it isn't
+     *         spent before the first hit is collected
+     */
+    QueryBudget renewed() {
+        if (!timeout.isPresent()) {
+            return UNLIMITED;
+        }
+        Duration resolution = Duration.millis(TimeLimitingCollector.getResolution());
+        return of(Optional.of(timeout.get().isShorterThan(resolution) ? resolution : timeout.get()));
+    }
+
+    /**
+     * Rewrites the query to its primitive form, as {@link org.apache.lucene.search.Searcher#rewrite(Query)}
+     * does, giving up if the deadline passes while enumerating terms.
+     */
+    Query rewrite(Query query, IndexReader reader) throws IOException {
+        IndexReader rewriteReader = deadlineMillis.isPresent() ? new DeadlineReader(reader) : reader;
+        Query rewritten = query;
+        for (Query next = rewritten.rewrite(rewriteReader); next != rewritten; next = rewritten.rewrite(rewriteReader)) {
+            rewritten = next;
+        }
+        return rewritten;
+    }
+
+    Collector limit(Collector collector) {
+        if (!deadlineMillis.isPresent()) {
+            return collector;
+        }
+        return new TimeLimitingCollector(collector, Math.max(1, remainingMillis()));
+    }
+
+    void markExceeded() {
+        exceeded.set(true);
+    }
+
+    /**
+     * @return true if collection ran out of time, so that only the hits found
+     *         before then were returned
+     */
+    boolean wasExceeded() {
+        return exceeded.get();
+    }
+
+    private long remainingMillis() {
+        return deadlineMillis.get() - System.currentTimeMillis();
+    }
+
+    /**
+     * Gives up the rewrite if the reader is one being rewritten against and its
+     * deadline has passed, for term enumerations which don't read the reader's
+     * own terms.
+     */
+    static void checkDeadline(IndexReader reader) {
+        if (reader instanceof DeadlineReader) {
+            ((DeadlineReader) reader).budget().checkDeadline();
+        }
+    }
+
+    private void checkDeadline() {
+        if (remainingMillis() <= 0) {
+            markExceeded();
+            throw new RewriteTimeoutException();
+        }
+    }
+
+    static final class RewriteTimeoutException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private RewriteTimeoutException() {
+            super("Query rewrite exceeded its time budget");
+        }
+    }
+
+    /**
+     * Never closed: closing would close the wrapped reader.
+     */
+    private final class DeadlineReader extends FilterIndexReader {
+
+        private DeadlineReader(IndexReader in) {
+            super(in);
+        }
+
+        private QueryBudget budget() {
+            return QueryBudget.this;
+        }
+
+        @Override
+        public TermEnum terms() throws IOException {
+            return new DeadlineTermEnum(in.terms());
+        }
+
+        @Override
+        public TermEnum terms(Term t) throws IOException {
+            return new DeadlineTermEnum(in.terms(t));
+        }
+    }
+
+    private final class DeadlineTermEnum extends FilterIndexReader.FilterTermEnum {
+
+        private DeadlineTermEnum(TermEnum in) {
+            super(in);
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            checkDeadline();
+            return super.next();
+        }
+    }
+}
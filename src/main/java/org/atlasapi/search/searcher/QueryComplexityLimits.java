@@ -0,0 +1,66 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Bounds the title queries a search will run, checked against the reader of
+ * the generation searched before the query is rewritten.
+ *
+ * A query's cost is the number of clauses its title query is estimated to
+ * rewrite to, counting each term a fuzzy clause could expand to. A query with
+ * more than maxTokens tokens, or costing more than maxCost, is rejected or
+ * degraded as the {@link Policy} says.
+ */
+public final class QueryComplexityLimits {
+
+    public enum Policy {
+        /**
+         * Searches with the first maxTokens tokens only, and if that still costs
+         * too much, with the exact and prefix title clauses alone.
+         */
+        DEGRADE,
+        /**
+         * Fails the search with a {@link QueryTooComplexException}.
+         */
+        REJECT
+    }
+
+    private static final QueryComplexityLimits NONE = new QueryComplexityLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Policy.DEGRADE);
+
+    private final int maxTokens;
+    private final int maxCost;
+    private final Policy policy;
+
+    private QueryComplexityLimits(int maxTokens, int maxCost, Policy policy) {
+        this.maxTokens = maxTokens;
+        this.maxCost = maxCost;
+        this.policy = policy;
+    }
+
+    public static QueryComplexityLimits none() {
+        return NONE;
+    }
+
+    public static QueryComplexityLimits of(int maxTokens, int maxCost, Policy policy) {
+        checkArgument(maxTokens > 0, "maxTokens must be positive");
+        checkArgument(maxCost > 0, "maxCost must be positive");
+        return new QueryComplexityLimits(maxTokens, maxCost, checkNotNull(policy));
+    }
+
+    boolean isUnlimited() {
+        return this == NONE;
+    }
+
+    int maxTokens() {
+        return maxTokens;
+    }
+
+    int maxCost() {
+        return maxCost;
+    }
+
+    Policy policy() {
+        return policy;
+    }
+}
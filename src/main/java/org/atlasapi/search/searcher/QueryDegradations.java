@@ -0,0 +1,38 @@
+package org.atlasapi.search.searcher;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the title queries which exceeded the {@link QueryComplexityLimits},
+ * by what was done about it.
+ */
+public final class QueryDegradations {
+
+    private final AtomicLong tokensTruncated = new AtomicLong();
+    private final AtomicLong fuzzyDropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    void tokensTruncated() {
+        tokensTruncated.incrementAndGet();
+    }
+
+    void fuzzyDropped() {
+        fuzzyDropped.incrementAndGet();
+    }
+
+    void rejected() {
+        rejected.incrementAndGet();
+    }
+
+    public long withTokensTruncated() {
+        return tokensTruncated.get();
+    }
+
+    public long withFuzzyDropped() {
+        return fuzzyDropped.get();
+    }
+
+    public long rejectedQueries() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,40 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.metabroadcast.common.health.ProbeResult.ProbeResultType.INFO;
+
+import com.metabroadcast.common.health.HealthProbe;
+import com.metabroadcast.common.health.ProbeResult;
+import com.metabroadcast.common.health.ProbeResult.ProbeResultEntry;
+
+public class QueryDegradationsProbe implements HealthProbe {
+
+    private final QueryDegradations degradations;
+
+    public QueryDegradationsProbe(QueryDegradations degradations) {
+        this.degradations = checkNotNull(degradations);
+    }
+
+    @Override
+    public ProbeResult probe() {
+        ProbeResult result = new ProbeResult(title());
+        result.addEntry(info("tokens truncated", degradations.withTokensTruncated()));
+        result.addEntry(info("fuzzy clauses dropped", degradations.withFuzzyDropped()));
+        result.addEntry(info("rejected", degradations.rejectedQueries()));
+        return result;
+    }
+
+    private ProbeResultEntry info(String key, long value) {
+        return new ProbeResultEntry(INFO, key, String.valueOf(value));
+    }
+
+    @Override
+    public String title() {
+        return "Query degradations";
+    }
+
+    @Override
+    public String slug() {
+        return "query-degradations";
+    }
+}
@@ -0,0 +1,57 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.OpenBitSetDISI;
+
+import com.google.common.base.Optional;
+
+/**
+ * Allows the docs a query matches which the given filter, if there is one,
+ * also allows. Each segment's matches are found without scoring them.
+ */
+final class QueryMatchesFilter extends Filter {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Query query;
+    private final Optional<Filter> filter;
+
+    QueryMatchesFilter(Query query, Optional<Filter> filter) {
+        this.query = checkNotNull(query);
+        this.filter = checkNotNull(filter);
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+        OpenBitSetDISI bits = new OpenBitSetDISI(reader.maxDoc());
+        Scorer matches = query.weight(new IndexSearcher(reader)).scorer(reader, true, false);
+        if (matches == null) {
+            return bits;
+        }
+        bits.inPlaceOr(matches);
+        if (filter.isPresent()) {
+            DocIdSet allowed = filter.get().getDocIdSet(reader);
+            DocIdSetIterator docs = allowed == null ? null : allowed.iterator();
+            if (docs == null) {
+                return new OpenBitSetDISI(reader.maxDoc());
+            }
+            bits.inPlaceAnd(docs);
+        }
+        return bits;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryMatches(" + query + (filter.isPresent() ? ", " + filter.get() : "") + ")";
+    }
+}
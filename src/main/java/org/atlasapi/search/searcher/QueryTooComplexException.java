@@ -0,0 +1,15 @@
+package org.atlasapi.search.searcher;
+
+/**
+ * Thrown instead of searching when a title query exceeds the
+ * {@link QueryComplexityLimits} of the index and they say to reject it, or
+ * when it rewrites to more clauses than Lucene allows.
+ */
+public final class QueryTooComplexException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    QueryTooComplexException(String message) {
+        super(message);
+    }
+}
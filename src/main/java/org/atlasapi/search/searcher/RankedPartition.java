@@ -0,0 +1,208 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DefaultSimilarity;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.Similarity;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.OpenBitSet;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+
+/**
+ * The docs whose ranking signals lift their scores furthest, which a small
+ * first page is collected from before any other doc is scored. The partition
+ * holds the docs broadcast within {@link #WINDOW_HOURS} of the hour scores are
+ * computed for, and, for queries which lift them, those still to be broadcast
+ * on a priority channel or available for catch up.
+ *
+ * Scores of docs outside the partition are only lifted by the little that a
+ * broadcast further away adds, so once the partition fills a page whose last
+ * hit scores above the most any of them could, the rest of the index needn't
+ * be searched. That bound takes the most any doc could score for the query's
+ * clauses, from their weights and the query norm, which holds for the
+ * {@link DefaultSimilarity} and title fields with norms and no index time
+ * boosts, as this index writes them; a query it can't bound is never
+ * answered from the partition alone.
+ *
+ * Each segment's broadcast window is cached for the hour, keyed on the
+ * segment's core, and the sets of earlier hours are dropped once the hour
+ * moves on.
+ */
+final class RankedPartition {
+
+    static final int WINDOW_HOURS = LuceneContentIndex.HOURS_IN_A_WEEK;
+
+    private final RankingColumns rankingColumns;
+    private final int maxHits;
+    private volatile HourSets current = new HourSets(Integer.MIN_VALUE);
+
+    /**
+     * @param maxHits the most hits a page may need for it to be collected from
+     *        the partition first
+     */
+    RankedPartition(RankingColumns rankingColumns, int maxHits) {
+        checkArgument(maxHits > 0, "maxHits must be positive");
+        this.rankingColumns = checkNotNull(rankingColumns);
+        this.maxHits = maxHits;
+    }
+
+    int maxHits() {
+        return maxHits;
+    }
+
+    /**
+     * @return a filter of the docs broadcast within the window of the hour
+     */
+    Filter recentBroadcasts(int hour) {
+        HourSets sets = current;
+        if (sets.hour != hour) {
+            sets = new HourSets(hour);
+            if (hour > current.hour) {
+                current = sets;
+            }
+        }
+        return new RecentFilter(sets);
+    }
+
+    private DocIdSet load(IndexReader segment, int hour) throws IOException {
+        RankingColumns.SegmentColumns columns = rankingColumns.forSegment(segment);
+        OpenBitSet bits = new OpenBitSet(segment.maxDoc());
+        for (int doc = 0; doc < segment.maxDoc(); doc++) {
+            int broadcastHour = columns.broadcastHour(doc);
+            if (broadcastHour != 0 && Math.abs(hour - broadcastHour) < WINDOW_HOURS) {
+                bits.fastSet(doc);
+            }
+        }
+        return bits;
+    }
+
+    private final class HourSets {
+
+        private final int hour;
+        private final Cache<Object, DocIdSet> segments = CacheBuilder.newBuilder()
+                .weakKeys()
+                .build();
+
+        private HourSets(int hour) {
+            this.hour = hour;
+        }
+
+        DocIdSet docIdSet(final IndexReader segment) throws IOException {
+            try {
+                return segments.get(segment.getFieldCacheKey(), new Callable<DocIdSet>() {
+
+                    @Override
+                    public DocIdSet call() throws IOException {
+                        return load(segment, hour);
+                    }
+                });
+            } catch (ExecutionException e) {
+                Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+    }
+
+    private static final class RecentFilter extends Filter {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient HourSets sets;
+
+        private RecentFilter(HourSets sets) {
+            this.sets = sets;
+        }
+
+        @Override
+        public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+            return sets.docIdSet(reader);
+        }
+
+        @Override
+        public String toString() {
+            return "RecentBroadcasts(" + sets.hour + ")";
+        }
+    }
+
+    /**
+     * @param query a rewritten query
+     * @param norm the query norm its weight is normalised with
+     * @return the most any doc could score for the query, or positive infinity
+     *         for a query of a kind it can't bound
+     */
+    static float maxScore(Query query, float norm, Searcher searcher) throws IOException {
+        if (query instanceof TermQuery) {
+            Term term = ((TermQuery) query).getTerm();
+            Similarity similarity = query.getSimilarity(searcher);
+            if (similarity.getClass() != DefaultSimilarity.class || !hasNorms(searcher, term.field())) {
+                return Float.POSITIVE_INFINITY;
+            }
+            // A term's frequency is never more than the field's length, so tf
+            // times its length norm is at most 1.
+            float idf = similarity.idf(searcher.docFreq(term), searcher.maxDoc());
+            return idf * query.getBoost() * norm * idf;
+        }
+        if (query instanceof BooleanQuery) {
+            float max = 0.0f;
+            for (BooleanClause clause : ((BooleanQuery) query).getClauses()) {
+                if (!clause.isProhibited()) {
+                    max += maxScore(clause.getQuery(), norm * query.getBoost(), searcher);
+                }
+            }
+            return max;
+        }
+        if (query instanceof DisjunctionMaxQuery) {
+            float max = 0.0f;
+            float sum = 0.0f;
+            for (Query disjunct : (DisjunctionMaxQuery) query) {
+                float disjunctMax = maxScore(disjunct, norm * query.getBoost(), searcher);
+                max = Math.max(max, disjunctMax);
+                sum += disjunctMax;
+            }
+            return untied((DisjunctionMaxQuery) query) ? max : sum;
+        }
+        if (query instanceof FilteredQuery) {
+            return query.getBoost() * maxScore(((FilteredQuery) query).getQuery(), norm, searcher);
+        }
+        if (query instanceof ConstantScoreQuery) {
+            return query.getBoost() * norm;
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+
+    private static boolean hasNorms(Searcher searcher, String field) throws IOException {
+        return searcher instanceof IndexSearcher && ((IndexSearcher) searcher).getIndexReader().hasNorms(field);
+    }
+
+    /**
+     * The tie breaker isn't exposed, so a query which scores no more than its
+     * best disjunct is told by being equal to one built with a tie breaker of
+     * 0; any other is bounded by the sum of its disjuncts.
+     */
+    private static boolean untied(DisjunctionMaxQuery query) {
+        DisjunctionMaxQuery untied = new DisjunctionMaxQuery(Lists.newArrayList(query), 0.0f);
+        untied.setBoost(query.getBoost());
+        return untied.equals(query);
+    }
+}
@@ -0,0 +1,272 @@
+package org.atlasapi.search.searcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.NumericUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+
+/**
+ * The ranking signals of each segment, the hour of each doc's closest
+ * broadcast and, for docs indexed before their future broadcasts were, whether
+ * it was to be broadcast on a priority channel, held as columns outside the
+ * heap.
+ *
+ * A segment's columns are read from its index fields once, the first time the
+ * segment is opened, and written to a file alongside the segment's own files,
+ * which is then memory mapped. Segments are never changed once written, so the
+ * file serves every later generation, and every later run, which sees the
+ * segment; it records the lengths of the segment's files so that one left from
+ * an earlier index whose segments had the same names isn't used. Files for
+ * segments the current generation no longer has, and any left half written
+ * by a run which stopped while writing one, are deleted by
+ * {@link #retainOnly(SegmentSlice)}. Segments not in a file system directory
+ * have their columns held on the heap.
+ *
+ * Columns are keyed on the segment's core, so they are only loaded for
+ * segments new to a generation, and are dropped once a segment is no longer
+ * referenced.
+ */
+final class RankingColumns {
+
+    static final String EXTENSION = "rank";
+    static final String WRITING_EXTENSION = EXTENSION + ".tmp";
+
+    private static final Logger log = LoggerFactory.getLogger(RankingColumns.class);
+
+    private static final int MAGIC = 0x52414e4b;
+    private static final int VERSION = 1;
+    // magic, version, maxDoc, segment files' length
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8;
+
+    private final Cache<Object, SegmentColumns> segments = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+    // held while a columns file is written, so it isn't deleted half written
+    private final Object files = new Object();
+
+    SegmentColumns forSegment(final IndexReader segment) throws IOException {
+        try {
+            return segments.get(segment.getFieldCacheKey(), new Callable<SegmentColumns>() {
+
+                @Override
+                public SegmentColumns call() throws IOException {
+                    return load(segment);
+                }
+            });
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Loads the columns of any segments which don't have them yet, so the first
+     * searches of a new generation aren't held up.
+     */
+    void warm(SegmentSlice slice) throws IOException {
+        for (int i = 0; i < slice.size(); i++) {
+            forSegment(slice.segment(i));
+        }
+    }
+
+    /**
+     * Deletes the column files of segments which are no longer in the slice
+     * from the directories of those which are, along with any files which
+     * weren't finished being written. Searchers of earlier generations which
+     * still map a deleted file can carry on reading it.
+     */
+    void retainOnly(SegmentSlice slice) {
+        SetMultimap<File, String> current = HashMultimap.create();
+        for (int i = 0; i < slice.size(); i++) {
+            IndexReader segment = slice.segment(i);
+            if (segment instanceof SegmentReader && segment.directory() instanceof FSDirectory) {
+                current.put(((FSDirectory) segment.directory()).getFile(),
+                        columnsFileName(((SegmentReader) segment).getSegmentName()));
+            }
+        }
+        synchronized (files) {
+            for (File directory : current.keySet()) {
+                String[] names = directory.list();
+                if (names == null) {
+                    continue;
+                }
+                for (String name : names) {
+                    if (name.endsWith("." + WRITING_EXTENSION) 
+                            || name.endsWith("." + EXTENSION) && !current.get(directory).contains(name)) {
+                        if (!new File(directory, name).delete()) {
+                            log.warn("Failed to delete unused ranking columns {} in {}", name, directory);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private SegmentColumns load(IndexReader segment) throws IOException {
+        if (!(segment instanceof SegmentReader) || !(segment.directory() instanceof FSDirectory)) {
+            ByteBuffer buffer = ByteBuffer.allocate(bytes(segment.maxDoc()));
+            write(segment, buffer, 0);
+            return new SegmentColumns(buffer, segment.maxDoc());
+        }
+        String segmentName = ((SegmentReader) segment).getSegmentName();
+        File directory = ((FSDirectory) segment.directory()).getFile();
+        File file = new File(directory, columnsFileName(segmentName));
+        long segmentLength = segmentLength(segment.directory(), segmentName);
+
+        Optional<ByteBuffer> mapped = map(file, segment.maxDoc(), segmentLength);
+        if (!mapped.isPresent()) {
+            File written = new File(directory, segmentName + "." + WRITING_EXTENSION);
+            ByteBuffer buffer = ByteBuffer.allocate(bytes(segment.maxDoc()));
+            write(segment, buffer, segmentLength);
+            synchronized (files) {
+                RandomAccessFile out = new RandomAccessFile(written, "rw");
+                try {
+                    // one left by an earlier run may be longer
+                    out.setLength(0);
+                    while (buffer.hasRemaining()) {
+                        out.getChannel().write(buffer);
+                    }
+                } finally {
+                    out.close();
+                }
+                if (!written.renameTo(file)) {
+                    throw new IOException("Failed to rename " + written + " to " + file);
+                }
+            }
+            mapped = map(file, segment.maxDoc(), segmentLength);
+            if (!mapped.isPresent()) {
+                throw new IOException("Ranking columns " + file + " unreadable once written");
+            }
+        }
+        return new SegmentColumns(mapped.get(), segment.maxDoc());
+    }
+
+    /**
+     * @return the file mapped read only, or absent if it doesn't exist or isn't
+     *         for this segment
+     */
+    private static Optional<ByteBuffer> map(File file, int maxDoc, long segmentLength) throws IOException {
+        if (!file.exists() || file.length() != bytes(maxDoc)) {
+            return Optional.absent();
+        }
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != maxDoc
+                    || buffer.getLong(12) != segmentLength) {
+                return Optional.absent();
+            }
+            return Optional.of(buffer);
+        } finally {
+            // the mapping outlives the channel
+            in.close();
+        }
+    }
+
+    private static void write(IndexReader segment, ByteBuffer buffer, long segmentLength) throws IOException {
+        int maxDoc = segment.maxDoc();
+        buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, maxDoc).putLong(12, segmentLength);
+        int[] broadcastHours = ints(segment, LuceneContentIndex.FIELD_BROADCAST_HOUR_TS);
+        int[] priorityChannel = ints(segment, LuceneContentIndex.FIELD_ON_PRIORITY_CHANNEL_IN_FUTURE);
+        for (int doc = 0; doc < maxDoc; doc++) {
+            buffer.putInt(HEADER_BYTES + doc * 4, broadcastHours[doc]);
+            buffer.put(HEADER_BYTES + maxDoc * 4 + doc, (byte) priorityChannel[doc]);
+        }
+    }
+
+    /**
+     * Reads a numeric field's values by doc from its full precision terms, as
+     * the field cache would, without keeping them in it.
+     */
+    private static int[] ints(IndexReader segment, String field) throws IOException {
+        int[] values = new int[segment.maxDoc()];
+        TermEnum terms = segment.terms(new Term(field, ""));
+        TermDocs termDocs = segment.termDocs();
+        try {
+            do {
+                Term term = terms.term();
+                // lower precision terms sort after all the full precision ones
+                if (term == null || !field.equals(term.field())
+                        || term.text().charAt(0) != NumericUtils.SHIFT_START_INT) {
+                    break;
+                }
+                int value = NumericUtils.prefixCodedToInt(term.text());
+                termDocs.seek(terms);
+                while (termDocs.next()) {
+                    values[termDocs.doc()] = value;
+                }
+            } while (terms.next());
+        } finally {
+            terms.close();
+            termDocs.close();
+        }
+        return values;
+    }
+
+    /**
+     * The total length of the segment's own files, which only changes if the
+     * name is reused by a different segment.
+     */
+    private static long segmentLength(Directory directory, String segmentName) throws IOException {
+        long length = 0;
+        String prefix = segmentName + ".";
+        for (String name : directory.listAll()) {
+            if (name.startsWith(prefix) && !name.startsWith(columnsFileName(segmentName))) {
+                length += directory.fileLength(name);
+            }
+        }
+        return length;
+    }
+
+    private static String columnsFileName(String segmentName) {
+        return segmentName + "." + EXTENSION;
+    }
+
+    private static int bytes(int maxDoc) {
+        return HEADER_BYTES + maxDoc * 4 + maxDoc;
+    }
+
+    static final class SegmentColumns {
+
+        private final ByteBuffer buffer;
+        private final int priorityChannelOffset;
+
+        private SegmentColumns(ByteBuffer buffer, int maxDoc) {
+            this.buffer = buffer;
+            this.priorityChannelOffset = HEADER_BYTES + maxDoc * 4;
+        }
+
+        int broadcastHour(int doc) {
+            return buffer.getInt(HEADER_BYTES + doc * 4);
+        }
+
+        /**
+         * @return 1 if the doc was indexed as to be broadcast on a priority
+         *         channel, else 0
+         */
+        int onPriorityChannel(int doc) {
+            return buffer.get(priorityChannelOffset + doc);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.apache.lucene.search.Query;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Bounded cache of title queries rewritten to their primitive form, so that
+ * repeats of a popular term skip the prefix and fuzzy term enumeration until the
+ * index changes.
+ *
+ * A rewritten query depends on the term dictionary, so entries are keyed on the
+ * searcher generation they were rewritten against as well as the normalized
+ * term; entries from earlier generations are never served and age out. Every
+ * title query searches the same fields, so those aren't part of the key.
+ * Cached queries are shared, so callers must clone one before changing it.
+ */
+public class RewrittenQueryCache {
+
+    private final Cache<Key, Query> cache;
+
+    public RewrittenQueryCache(long maximumSize) {
+        checkArgument(maximumSize > 0, "maximumSize must be positive");
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    Optional<Query> get(String term, long generation) {
+        return Optional.fromNullable(cache.getIfPresent(new Key(term, generation)));
+    }
+
+    void put(String term, long generation, Query rewritten) {
+        cache.put(new Key(term, generation), rewritten);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Term case and whitespace are normalized away, as the term is lower-cased
+     * and tokenized when the query is built.
+     */
+    private static final class Key {
+
+        private final String term;
+        private final long generation;
+
+        private Key(String term, long generation) {
+            this.term = CharMatcher.WHITESPACE.trimAndCollapseFrom(term, ' ').toLowerCase();
+            this.generation = generation;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (this == that) {
+                return true;
+            }
+            if (!(that instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) that;
+            return term.equals(other.term) && generation == other.generation;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(term, generation);
+        }
+    }
+}
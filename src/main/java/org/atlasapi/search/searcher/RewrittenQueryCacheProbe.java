@@ -0,0 +1,43 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.metabroadcast.common.health.ProbeResult.ProbeResultType.INFO;
+
+import com.google.common.cache.CacheStats;
+import com.metabroadcast.common.health.HealthProbe;
+import com.metabroadcast.common.health.ProbeResult;
+import com.metabroadcast.common.health.ProbeResult.ProbeResultEntry;
+
+public class RewrittenQueryCacheProbe implements HealthProbe {
+
+    private final RewrittenQueryCache cache;
+
+    public RewrittenQueryCacheProbe(RewrittenQueryCache cache) {
+        this.cache = checkNotNull(cache);
+    }
+
+    @Override
+    public ProbeResult probe() {
+        ProbeResult result = new ProbeResult(title());
+        CacheStats stats = cache.stats();
+        result.addEntry(info("size", cache.size()));
+        result.addEntry(info("hits", stats.hitCount()));
+        result.addEntry(info("misses", stats.missCount()));
+        result.addEntry(info("evictions", stats.evictionCount()));
+        return result;
+    }
+
+    private ProbeResultEntry info(String key, long value) {
+        return new ProbeResultEntry(INFO, key, String.valueOf(value));
+    }
+
+    @Override
+    public String title() {
+        return "Rewritten title query cache";
+    }
+
+    @Override
+    public String slug() {
+        return "rewritten-query-cache";
+    }
+}
@@ -0,0 +1,88 @@
+package org.atlasapi.search.searcher;
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * Marks each document indexed with a set of optional fields with the schema
+ * they were indexed by, so that an index built without them, or by another
+ * schema, is only queried through them once all its content has been indexed
+ * again.
+ *
+ * Once every document a generation sees is marked, so is every document of
+ * each later generation, as all documents indexed since are marked too.
+ */
+final class SchemaMarker {
+
+    static final String FIELD_SCHEMA = "schema";
+
+    private final Term schema;
+    private volatile long fromGeneration = Long.MAX_VALUE;
+
+    SchemaMarker(String schema) {
+        this.schema = new Term(FIELD_SCHEMA, schema);
+    }
+
+    String schema() {
+        return schema.text();
+    }
+
+    Field field() {
+        return new Field(FIELD_SCHEMA, schema.text(), Field.Store.NO, Field.Index.NOT_ANALYZED);
+    }
+
+    /**
+     * @return true if every document of the generation is known to be marked
+     */
+    boolean marks(SearcherGeneration generation) {
+        return generation.generation() >= fromGeneration;
+    }
+
+    /**
+     * Counts the marked documents of the generation, until one is found in
+     * which every document is marked.
+     * 
+     * @return true if the generation is the first found to be
+     */
+    boolean check(SearcherGeneration generation) throws IOException {
+        if (fromGeneration != Long.MAX_VALUE || !marksAll(generation.reader())) {
+            return false;
+        }
+        fromGeneration = generation.generation();
+        return true;
+    }
+
+    /**
+     * @return the documents of the reader which are marked
+     */
+    OpenBitSet marked(IndexReader reader) throws IOException {
+        OpenBitSet marked = new OpenBitSet(reader.maxDoc());
+        TermDocs termDocs = reader.termDocs(schema);
+        try {
+            while (termDocs.next()) {
+                marked.fastSet(termDocs.doc());
+            }
+        } finally {
+            termDocs.close();
+        }
+        return marked;
+    }
+
+    private boolean marksAll(IndexReader reader) throws IOException {
+        int marked = 0;
+        TermDocs termDocs = reader.termDocs(schema);
+        try {
+            while (termDocs.next()) {
+                marked++;
+            }
+        } finally {
+            termDocs.close();
+        }
+        return marked == reader.numDocs();
+    }
+}
@@ -0,0 +1,118 @@
+package org.atlasapi.search.searcher;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Opaque position in a result list: the last (score, title length, doc) returned
+ * and the searcher generation and hour it came from. The next page is collected
+ * from the same generation, while it is still retained, scored as of the same
+ * hour, and holds only hits ranked after this position.
+ *
+ * Cursors encoded before the hour was recorded don't decode, since the pages
+ * after them can't be scored as theirs were.
+ */
+public final class SearchCursor {
+
+    private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+    private static final int ENCODED_BYTES = 8 + 4 + 4 + 4 + 4;
+
+    private final long generation;
+    private final int hour;
+    private final float score;
+    private final int titleLength;
+    private final int doc;
+
+    SearchCursor(long generation, int hour, float score, int titleLength, int doc) {
+        this.generation = generation;
+        this.hour = hour;
+        this.score = score;
+        this.titleLength = titleLength;
+        this.doc = doc;
+    }
+
+    /**
+     * @return the decoded cursor, or absent if the value wasn't produced by
+     *         {@link #encode()}
+     */
+    public static Optional<SearchCursor> decode(String encoded) {
+        byte[] bytes;
+        try {
+            bytes = ENCODING.decode(encoded);
+        } catch (IllegalArgumentException e) {
+            return Optional.absent();
+        }
+        if (bytes.length != ENCODED_BYTES) {
+            return Optional.absent();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long generation = buffer.getLong();
+        int hour = buffer.getInt();
+        float score = buffer.getFloat();
+        int titleLength = buffer.getInt();
+        int doc = buffer.getInt();
+        return Optional.of(new SearchCursor(generation, hour, score, titleLength, doc));
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_BYTES)
+                .putLong(generation)
+                .putInt(hour)
+                .putFloat(score)
+                .putInt(titleLength)
+                .putInt(doc);
+        return ENCODING.encode(buffer.array());
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    /**
+     * @return the hour, since the epoch, which the results were scored as of
+     */
+    int hour() {
+        return hour;
+    }
+
+    float score() {
+        return score;
+    }
+
+    int titleLength() {
+        return titleLength;
+    }
+
+    int doc() {
+        return doc;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (this == that) {
+            return true;
+        }
+        if (!(that instanceof SearchCursor)) {
+            return false;
+        }
+        SearchCursor other = (SearchCursor) that;
+        return generation == other.generation
+            && hour == other.hour
+            && Float.compare(score, other.score) == 0
+            && titleLength == other.titleLength
+            && doc == other.doc;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(generation, hour, score, titleLength, doc);
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -0,0 +1,84 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.joda.time.Duration;
+
+import com.google.common.base.Optional;
+
+/**
+ * Per-request options which aren't part of the {@link org.atlasapi.search.model.SearchQuery}.
+ */
+public final class SearchOptions {
+
+    private static final SearchOptions DEFAULTS = builder().build();
+
+    private final Optional<SearchCursor> cursor;
+    private final Optional<Duration> timeout;
+    private final Optional<String> priorityChannelGroup;
+
+    private SearchOptions(Builder builder) {
+        this.cursor = builder.cursor;
+        this.timeout = builder.timeout;
+        this.priorityChannelGroup = builder.priorityChannelGroup;
+    }
+
+    public static SearchOptions defaults() {
+        return DEFAULTS;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * The position to continue from, ignoring the query's offset.
+     */
+    public Optional<SearchCursor> cursor() {
+        return cursor;
+    }
+
+    /**
+     * Overrides the index's default time budget for the query.
+     */
+    public Optional<Duration> timeout() {
+        return timeout;
+    }
+
+    /**
+     * The channel group whose channels are boosted by the query's priority
+     * channel weighting, in place of the index's default priority channels.
+     */
+    public Optional<String> priorityChannelGroup() {
+        return priorityChannelGroup;
+    }
+
+    public static final class Builder {
+
+        private Optional<SearchCursor> cursor = Optional.absent();
+        private Optional<Duration> timeout = Optional.absent();
+        private Optional<String> priorityChannelGroup = Optional.absent();
+
+        private Builder() {
+        }
+
+        public Builder withCursor(SearchCursor cursor) {
+            this.cursor = Optional.of(cursor);
+            return this;
+        }
+
+        public Builder withTimeout(Duration timeout) {
+            this.timeout = Optional.of(checkNotNull(timeout));
+            return this;
+        }
+
+        public Builder withPriorityChannelGroup(String priorityChannelGroup) {
+            this.priorityChannelGroup = Optional.of(checkNotNull(priorityChannelGroup));
+            return this;
+        }
+
+        public SearchOptions build() {
+            return new SearchOptions(this);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.atlasapi.media.entity.Publisher;
+import org.atlasapi.media.entity.Specialization;
+import org.atlasapi.search.model.SearchQuery;
+import org.atlasapi.search.model.SearchResults;
+import org.joda.time.Duration;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+import com.metabroadcast.common.time.Clock;
+
+/**
+ * Bounded cache of {@link SearchResults}, keyed on a normalized {@link SearchQuery}
+ * and the hour results are ranked as of, so that broadcast proximity, priority
+ * channel boosts and current broadcast filtering follow the clock.
+ *
+ * Each entry remembers the searcher generation it was computed against. By default
+ * an entry is only served while that generation is current; a non-zero
+ * maxStaleness lets entries from earlier generations be served until they reach
+ * that age.
+ */
+public class SearchResultsCache {
+
+    private final Cache<Key, Entry> cache;
+    private final long maxStalenessMillis;
+    private final Clock clock;
+    private final AtomicLong staleMisses = new AtomicLong();
+
+    public SearchResultsCache(long maximumSize, Duration maxStaleness, Clock clock) {
+        checkArgument(maximumSize > 0, "maximumSize must be positive");
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        this.maxStalenessMillis = checkNotNull(maxStaleness).getMillis();
+        this.clock = checkNotNull(clock);
+    }
+
+    /**
+     * @param hour the hour since the epoch the results are to be ranked as of
+     */
+    Optional<SearchResults> get(SearchQuery query, int hour, long currentGeneration) {
+        Entry entry = cache.getIfPresent(new Key(query, hour));
+        if (entry == null) {
+            return Optional.absent();
+        }
+        if (entry.generation != currentGeneration
+                && clock.now().getMillis() - entry.createdMillis > maxStalenessMillis) {
+            staleMisses.incrementAndGet();
+            return Optional.absent();
+        }
+        return Optional.of(entry.results);
+    }
+
+    void put(SearchQuery query, int hour, long generation, SearchResults results) {
+        cache.put(new Key(query, hour), new Entry(results, generation, clock.now().getMillis()));
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Lookups which found an entry, but one too old to be served. These are
+     * included in the hit count of {@link #stats()}.
+     */
+    public long staleMisses() {
+        return staleMisses.get();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private static final class Entry {
+
+        private final SearchResults results;
+        private final long generation;
+        private final long createdMillis;
+
+        private Entry(SearchResults results, long generation, long createdMillis) {
+            this.results = checkNotNull(results);
+            this.generation = generation;
+            this.createdMillis = createdMillis;
+        }
+    }
+
+    /**
+     * Normalizes away differences which can't affect the results: term case and
+     * whitespace (the term is lower-cased and tokenized when the query is built),
+     * ordering of publishers, specializations and types, and unset flags, which
+     * are treated as false.
+     */
+    static final class Key {
+
+        private static final Splitter TYPE_SPLITTER = Splitter.on(",");
+
+        private final String term;
+        private final Set<Publisher> publishers;
+        private final Set<Specialization> specializations;
+        private final Set<String> types;
+        private final boolean topLevelOnly;
+        private final boolean currentBroadcastsOnly;
+        private final float titleWeighting;
+        private final float broadcastWeighting;
+        private final float catchupWeighting;
+        private final float priorityChannelWeighting;
+        private final int offset;
+        private final Integer limit;
+        private final int hour;
+
+        Key(SearchQuery query, int hour) {
+            this.term = CharMatcher.WHITESPACE.trimAndCollapseFrom(query.getTerm(), ' ').toLowerCase();
+            this.publishers = ImmutableSet.copyOf(query.getIncludedPublishers());
+            this.specializations = ImmutableSet.copyOf(query.getIncludedSpecializations());
+            this.types = query.type() == null ? ImmutableSet.<String>of()
+                                              : ImmutableSet.copyOf(TYPE_SPLITTER.split(query.type()));
+            this.topLevelOnly = Boolean.TRUE.equals(query.topLevelOnly());
+            this.currentBroadcastsOnly = Boolean.TRUE.equals(query.currentBroadcastsOnly());
+            this.titleWeighting = query.getTitleWeighting();
+            this.broadcastWeighting = query.getBroadcastWeighting();
+            this.catchupWeighting = query.getCatchupWeighting();
+            this.priorityChannelWeighting = query.getPriorityChannelWeighting();
+            this.offset = query.getSelection().getOffset();
+            this.limit = query.getSelection().getLimit();
+            this.hour = hour;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (this == that) {
+                return true;
+            }
+            if (!(that instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) that;
+            return term.equals(other.term)
+                && publishers.equals(other.publishers)
+                && specializations.equals(other.specializations)
+                && types.equals(other.types)
+                && topLevelOnly == other.topLevelOnly
+                && currentBroadcastsOnly == other.currentBroadcastsOnly
+                && Float.compare(titleWeighting, other.titleWeighting) == 0
+                && Float.compare(broadcastWeighting, other.broadcastWeighting) == 0
+                && Float.compare(catchupWeighting, other.catchupWeighting) == 0
+                && Float.compare(priorityChannelWeighting, other.priorityChannelWeighting) == 0
+                && offset == other.offset
+                && Objects.equal(limit, other.limit)
+                && hour == other.hour;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(term, publishers, specializations, types, topLevelOnly,
+                    currentBroadcastsOnly, titleWeighting, broadcastWeighting, catchupWeighting,
+                    priorityChannelWeighting, offset, limit, hour);
+        }
+    }
+}
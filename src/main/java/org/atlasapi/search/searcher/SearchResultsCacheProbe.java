@@ -0,0 +1,45 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.metabroadcast.common.health.ProbeResult.ProbeResultType.INFO;
+
+import com.google.common.cache.CacheStats;
+import com.metabroadcast.common.health.HealthProbe;
+import com.metabroadcast.common.health.ProbeResult;
+import com.metabroadcast.common.health.ProbeResult.ProbeResultEntry;
+
+public class SearchResultsCacheProbe implements HealthProbe {
+
+    private final SearchResultsCache cache;
+
+    public SearchResultsCacheProbe(SearchResultsCache cache) {
+        this.cache = checkNotNull(cache);
+    }
+
+    @Override
+    public ProbeResult probe() {
+        ProbeResult result = new ProbeResult(title());
+        CacheStats stats = cache.stats();
+        long staleMisses = cache.staleMisses();
+        result.addEntry(info("size", cache.size()));
+        result.addEntry(info("hits", stats.hitCount() - staleMisses));
+        result.addEntry(info("misses", stats.missCount() + staleMisses));
+        result.addEntry(info("stale misses", staleMisses));
+        result.addEntry(info("evictions", stats.evictionCount()));
+        return result;
+    }
+
+    private ProbeResultEntry info(String key, long value) {
+        return new ProbeResultEntry(INFO, key, String.valueOf(value));
+    }
+
+    @Override
+    public String title() {
+        return "Search results cache";
+    }
+
+    @Override
+    public String slug() {
+        return "search-results-cache";
+    }
+}
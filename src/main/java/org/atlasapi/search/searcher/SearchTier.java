@@ -0,0 +1,27 @@
+package org.atlasapi.search.searcher;
+
+/**
+ * The docs a title query was collected from to answer a search. Every tier
+ * ranks its hits by the full query's score, so a tier narrower than the full
+ * query only answers a page it fills with hits no doc outside it could outscore.
+ */
+public enum SearchTier {
+
+    /**
+     * Only the docs the whole-title exact and prefix clauses match, which are
+     * found without the term dictionary enumerated.
+     */
+    EXACT_OR_PREFIX,
+
+    /**
+     * Every doc any clause matches, including the per-token and whole-title
+     * fuzzy ones.
+     */
+    FULL,
+
+    /**
+     * Only the docs matching the shingles of a title of several words, looked
+     * up as terms, or its whole-title exact and prefix clauses.
+     */
+    SHINGLES
+}
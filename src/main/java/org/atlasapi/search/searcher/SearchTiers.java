@@ -0,0 +1,50 @@
+package org.atlasapi.search.searcher;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts searches by the tier of docs their page was collected from, and pages
+ * tried from the {@link RankedPartition} by whether it answered them alone.
+ */
+public final class SearchTiers {
+
+    private final Map<SearchTier, AtomicLong> answered = new EnumMap<SearchTier, AtomicLong>(SearchTier.class);
+    private final AtomicLong answeredByRankedPartition = new AtomicLong();
+    private final AtomicLong rankedPartitionFellShort = new AtomicLong();
+
+    SearchTiers() {
+        for (SearchTier tier : SearchTier.values()) {
+            answered.put(tier, new AtomicLong());
+        }
+    }
+
+    void answered(SearchTier tier) {
+        answered.get(tier).incrementAndGet();
+    }
+
+    void answeredFromRankedPartition() {
+        answeredByRankedPartition.incrementAndGet();
+    }
+
+    void searchedBeyondRankedPartition() {
+        rankedPartitionFellShort.incrementAndGet();
+    }
+
+    public long answeredBy(SearchTier tier) {
+        return answered.get(tier).get();
+    }
+
+    public long answeredByRankedPartition() {
+        return answeredByRankedPartition.get();
+    }
+
+    /**
+     * Pages tried from the ranked partition which then needed every doc
+     * searched.
+     */
+    public long rankedPartitionFellShort() {
+        return rankedPartitionFellShort.get();
+    }
+}
@@ -0,0 +1,41 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.metabroadcast.common.health.ProbeResult.ProbeResultType.INFO;
+
+import com.metabroadcast.common.health.HealthProbe;
+import com.metabroadcast.common.health.ProbeResult;
+import com.metabroadcast.common.health.ProbeResult.ProbeResultEntry;
+
+public class SearchTiersProbe implements HealthProbe {
+
+    private final SearchTiers tiers;
+
+    public SearchTiersProbe(SearchTiers tiers) {
+        this.tiers = checkNotNull(tiers);
+    }
+
+    @Override
+    public ProbeResult probe() {
+        ProbeResult result = new ProbeResult(title());
+        for (SearchTier tier : SearchTier.values()) {
+            result.addEntry(new ProbeResultEntry(INFO, "answered by " + tier.name().toLowerCase().replace('_', ' '),
+                    String.valueOf(tiers.answeredBy(tier))));
+        }
+        result.addEntry(new ProbeResultEntry(INFO, "answered by ranked partition", 
+                String.valueOf(tiers.answeredByRankedPartition())));
+        result.addEntry(new ProbeResultEntry(INFO, "ranked partition fell short", 
+                String.valueOf(tiers.rankedPartitionFellShort())));
+        return result;
+    }
+
+    @Override
+    public String title() {
+        return "Search tiers";
+    }
+
+    @Override
+    public String slug() {
+        return "search-tiers";
+    }
+}
@@ -0,0 +1,28 @@
+package org.atlasapi.search.searcher;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts queries which ran out of time, by the stage at which they did.
+ */
+public final class SearchTimeouts {
+
+    private final AtomicLong duringRewrite = new AtomicLong();
+    private final AtomicLong duringCollection = new AtomicLong();
+
+    void rewriteTimedOut() {
+        duringRewrite.incrementAndGet();
+    }
+
+    void collectionTimedOut() {
+        duringCollection.incrementAndGet();
+    }
+
+    public long duringRewrite() {
+        return duringRewrite.get();
+    }
+
+    public long duringCollection() {
+        return duringCollection.get();
+    }
+}
@@ -0,0 +1,39 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.metabroadcast.common.health.ProbeResult.ProbeResultType.INFO;
+
+import com.metabroadcast.common.health.HealthProbe;
+import com.metabroadcast.common.health.ProbeResult;
+import com.metabroadcast.common.health.ProbeResult.ProbeResultEntry;
+
+public class SearchTimeoutsProbe implements HealthProbe {
+
+    private final SearchTimeouts timeouts;
+
+    public SearchTimeoutsProbe(SearchTimeouts timeouts) {
+        this.timeouts = checkNotNull(timeouts);
+    }
+
+    @Override
+    public ProbeResult probe() {
+        ProbeResult result = new ProbeResult(title());
+        result.addEntry(info("timed out during rewrite", timeouts.duringRewrite()));
+        result.addEntry(info("timed out during collection", timeouts.duringCollection()));
+        return result;
+    }
+
+    private ProbeResultEntry info(String key, long value) {
+        return new ProbeResultEntry(INFO, key, String.valueOf(value));
+    }
+
+    @Override
+    public String title() {
+        return "Search timeouts";
+    }
+
+    @Override
+    public String slug() {
+        return "search-timeouts";
+    }
+}
@@ -0,0 +1,120 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.ReaderUtil;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * A searcher published by a {@link SearcherManager}, reference-counted so that
+ * it is only closed once the manager has moved on and every query using it has
+ * released it.
+ *
+ * A {@link MultiReader} is taken to be one reader per shard, in shard order, so
+ * that searches can be sliced to the segments of particular shards.
+ */
+final class SearcherGeneration {
+
+    private final IndexSearcher searcher;
+    private final long generation;
+    private final List<SegmentSlice> shardSlices;
+    private final SegmentSlice allSegments;
+    // starts at one: the reference held by the manager while this is current
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    SearcherGeneration(IndexReader reader, long generation) {
+        this.searcher = new IndexSearcher(checkNotNull(reader));
+        this.generation = generation;
+        this.shardSlices = shardSlices(reader);
+        this.allSegments = slice(reader, reader, 0);
+    }
+
+    private static List<SegmentSlice> shardSlices(IndexReader reader) {
+        if (!(reader instanceof MultiReader)) {
+            return ImmutableList.of(slice(reader, reader, 0));
+        }
+        ImmutableList.Builder<SegmentSlice> slices = ImmutableList.builder();
+        int docBase = 0;
+        for (IndexReader shard : reader.getSequentialSubReaders()) {
+            slices.add(slice(reader, shard, docBase));
+            docBase += shard.maxDoc();
+        }
+        return slices.build();
+    }
+
+    private static SegmentSlice slice(IndexReader topReader, IndexReader reader, int docBase) {
+        List<IndexReader> segments = Lists.newArrayList();
+        ReaderUtil.gatherSubReaders(segments, reader);
+        List<Integer> docStarts = Lists.newArrayList();
+        int docStart = docBase;
+        for (IndexReader segment : segments) {
+            docStarts.add(docStart);
+            docStart += segment.maxDoc();
+        }
+        return new SegmentSlice(topReader, segments, docStarts);
+    }
+
+    IndexSearcher searcher() {
+        return searcher;
+    }
+
+    IndexReader reader() {
+        return searcher.getIndexReader();
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    SegmentSlice allSegments() {
+        return allSegments;
+    }
+
+    /**
+     * @return the segments of the given shards, or of all of them if the reader
+     *         isn't sharded
+     */
+    SegmentSlice segmentsOf(Set<Integer> shards) {
+        if (shardSlices.size() == 1) {
+            return allSegments;
+        }
+        IndexReader topReader = reader();
+        List<IndexReader> segments = Lists.newArrayList();
+        List<Integer> docStarts = Lists.newArrayList();
+        for (int shard : shards) {
+            SegmentSlice slice = shardSlices.get(shard);
+            for (int i = 0; i < slice.size(); i++) {
+                segments.add(slice.segment(i));
+                docStarts.add(slice.docStart(i));
+            }
+        }
+        return new SegmentSlice(topReader, segments, docStarts);
+    }
+
+    boolean tryIncRef() {
+        int count;
+        do {
+            count = references.get();
+            if (count <= 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    void decRef() throws IOException {
+        if (references.decrementAndGet() == 0) {
+            searcher.getIndexReader().close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.IndexReader;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.metabroadcast.common.time.Clock;
+import com.metabroadcast.common.time.SystemClock;
+
+/**
+ * Hands out the current {@link SearcherGeneration} without any locking on the
+ * query path. A refresh reopens the current reader and publishes the result as
+ * a new generation; the previous one stays open until its last user releases it.
+ *
+ * Superseded generations can also be retained for a while, so that paging
+ * through results with a {@link SearchCursor} sees a consistent snapshot. They
+ * are released once they expire by {@link #releaseExpired()}, which should be
+ * called periodically so that readers aren't held open between refreshes.
+ *
+ * Every acquire must be paired with a {@link #release(SearcherGeneration)}.
+ * Once the manager is {@link #close() closed} nothing more can be acquired.
+ */
+class SearcherManager {
+
+    private static final Logger log = LoggerFactory.getLogger(SearcherManager.class);
+    private static final int MAX_RETAINED_GENERATIONS = 16;
+
+    private final AtomicLong generations = new AtomicLong();
+    private final Duration retention;
+    private final Clock clock;
+    // superseded generations, oldest first, each holding the manager's reference
+    private final Map<Long, Retained> retained = Maps.newLinkedHashMap();
+    private volatile SearcherGeneration current;
+    private volatile boolean closed;
+
+    SearcherManager(IndexReader initialReader) {
+        this(initialReader, Duration.ZERO, new SystemClock());
+    }
+
+    SearcherManager(IndexReader initialReader, Duration retention, Clock clock) {
+        this.retention = checkNotNull(retention);
+        this.clock = checkNotNull(clock);
+        this.current = new SearcherGeneration(initialReader, generations.incrementAndGet());
+    }
+
+    SearcherGeneration acquire() {
+        while (true) {
+            SearcherGeneration generation = current;
+            if (generation.tryIncRef()) {
+                return generation;
+            }
+            checkState(!closed, "Searcher manager is closed");
+            // lost a race with a refresh which closed this generation, try the new one
+        }
+    }
+
+    /**
+     * @return the given generation, if it is current or still retained
+     */
+    Optional<SearcherGeneration> acquire(long generation) {
+        SearcherGeneration latest = current;
+        if (latest.generation() == generation && latest.tryIncRef()) {
+            return Optional.of(latest);
+        }
+        synchronized (this) {
+            releaseExpired();
+            Retained candidate = retained.get(generation);
+            if (candidate != null && candidate.generation.tryIncRef()) {
+                return Optional.of(candidate.generation);
+            }
+        }
+        return Optional.absent();
+    }
+
+    void release(SearcherGeneration generation) {
+        try {
+            generation.decRef();
+        } catch (IOException e) {
+            log.warn("Failed to close searcher generation " + generation.generation(), e);
+        }
+    }
+
+    long currentGeneration() {
+        return current.generation();
+    }
+
+    /**
+     * @return true if a new generation was published
+     */
+    synchronized boolean maybeRefresh() throws IOException {
+        checkState(!closed, "Searcher manager is closed");
+        IndexReader currentReader = current.reader();
+        // a near-real-time reader reopens afresh even if the index is unchanged
+        if (currentReader.isCurrent()) {
+            return false;
+        }
+        IndexReader reopenedReader = currentReader.reopen();
+        if (reopenedReader == currentReader) {
+            return false;
+        }
+        SearcherGeneration previous = current;
+        current = new SearcherGeneration(reopenedReader, generations.incrementAndGet());
+        if (retention.getMillis() > 0) {
+            retained.put(previous.generation(), new Retained(previous, clock.now().getMillis()));
+        } else {
+            release(previous);
+        }
+        releaseExpired();
+        return true;
+    }
+
+    /**
+     * Releases the retained generations which have been superseded for longer
+     * than the retention, and the oldest beyond the most that are retained.
+     */
+    synchronized void releaseExpired() {
+        long oldestRetainable = clock.now().getMillis() - retention.getMillis();
+        Iterator<Retained> iterator = retained.values().iterator();
+        while (iterator.hasNext()) {
+            Retained next = iterator.next();
+            if (retained.size() <= MAX_RETAINED_GENERATIONS && next.supersededMillis >= oldestRetainable) {
+                return;
+            }
+            iterator.remove();
+            release(next.generation);
+        }
+    }
+
+    /**
+     * Releases the current generation and every retained one, each of which
+     * closes once the queries still using it have released it.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Retained next : retained.values()) {
+            release(next.generation);
+        }
+        retained.clear();
+        release(current);
+    }
+
+    private static final class Retained {
+
+        private final SearcherGeneration generation;
+        private final long supersededMillis;
+
+        private Retained(SearcherGeneration generation, long supersededMillis) {
+            this.generation = generation;
+            this.supersededMillis = supersededMillis;
+        }
+    }
+}
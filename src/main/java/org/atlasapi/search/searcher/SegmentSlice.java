@@ -0,0 +1,46 @@
+package org.atlasapi.search.searcher;
+
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+
+/**
+ * Some of the segments of a searcher's reader, with their doc bases in that
+ * reader, so that a query can be collected from just those segments while being
+ * weighted against the whole index.
+ */
+final class SegmentSlice {
+
+    private final IndexReader topReader;
+    private final List<IndexReader> segments;
+    private final int[] docStarts;
+
+    SegmentSlice(IndexReader topReader, List<IndexReader> segments, List<Integer> docStarts) {
+        this.topReader = topReader;
+        this.segments = ImmutableList.copyOf(segments);
+        this.docStarts = Ints.toArray(docStarts);
+    }
+
+    int size() {
+        return segments.size();
+    }
+
+    IndexReader segment(int index) {
+        return segments.get(index);
+    }
+
+    int docStart(int index) {
+        return docStarts[index];
+    }
+
+    /**
+     * A searcher over only these segments, yielding doc ids of the top reader.
+     */
+    IndexSearcher searcher() {
+        return new IndexSearcher(topReader, segments.toArray(new IndexReader[segments.size()]), docStarts.clone());
+    }
+}
@@ -0,0 +1,327 @@
+package org.atlasapi.search.searcher;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.util.OpenBitSet;
+import org.atlasapi.media.entity.Publisher;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * The flattened titles and container titles of one segment, held in sorted order
+ * so that the titles starting with a prefix are a contiguous range. For prefixes
+ * of up to {@link #RANKED_PREFIX_LENGTH} characters, whose ranges are the largest,
+ * each range is also held in rank order so that its best completions are found
+ * without scanning it.
+ *
+ * Every doc is given a static rank for each hour completions are asked for in:
+ * the nearer its closest broadcast is to that hour, the higher, with a week's
+ * worth of hours added for a broadcast still to come on a default priority
+ * channel. Titles are only loaded once per segment, while ranks, and the rank
+ * order of the short prefixes, are computed again when the hour moves on. Docs
+ * deleted since loading are skipped when suggesting.
+ */
+final class SegmentSuggestions {
+
+    static final int RANKED_PREFIX_LENGTH = 2;
+
+    private static final int RANK_WINDOW_HOURS = 24 * 365;
+    private static final int PRIORITY_CHANNEL_RANK = 24 * 7;
+    private static final List<String> TITLE_FIELDS = ImmutableList.of(
+            LuceneContentIndex.FIELD_TITLE_FLATTENED, LuceneContentIndex.FIELD_CONTAINER_TITLE_FLATTENED);
+    private static final Map<String, Publisher> PUBLISHERS;
+    static {
+        ImmutableMap.Builder<String, Publisher> publishers = ImmutableMap.builder();
+        for (Publisher publisher : Publisher.values()) {
+            publishers.put(publisher.toString(), publisher);
+        }
+        PUBLISHERS = publishers.build();
+    }
+
+    // parallel, sorted by title
+    private final String[] titles;
+    private final int[] docs;
+    // by doc
+    private final short[] publishers;
+    private volatile Ranking ranking;
+
+    private SegmentSuggestions(String[] titles, int[] docs, short[] publishers) {
+        this.titles = titles;
+        this.docs = docs;
+        this.publishers = publishers;
+    }
+
+    static SegmentSuggestions load(IndexReader segment) throws IOException {
+        List<Suggestion> entries = Lists.newArrayList();
+        for (String field : TITLE_FIELDS) {
+            TermEnum terms = segment.terms(new Term(field, ""));
+            TermDocs termDocs = segment.termDocs();
+            try {
+                do {
+                    Term term = terms.term();
+                    if (term == null || !field.equals(term.field())) {
+                        break;
+                    }
+                    termDocs.seek(terms);
+                    while (termDocs.next()) {
+                        entries.add(new Suggestion(term.text(), termDocs.doc()));
+                    }
+                } while (terms.next());
+            } finally {
+                terms.close();
+                termDocs.close();
+            }
+        }
+        // the same title from both fields is one entry
+        Set<Suggestion> distinct = Sets.newTreeSet(BY_TITLE);
+        distinct.addAll(entries);
+
+        String[] titles = new String[distinct.size()];
+        int[] docs = new int[distinct.size()];
+        int i = 0;
+        for (Suggestion entry : distinct) {
+            titles[i] = entry.title;
+            docs[i] = entry.doc;
+            i++;
+        }
+        return new SegmentSuggestions(titles, docs, publishers(segment));
+    }
+
+    boolean isRankedFor(int hour) {
+        Ranking current = ranking;
+        return current != null && current.hour == hour;
+    }
+
+    /**
+     * Ranks the docs for the given hour, for completions asked for from then on.
+     *
+     * @param onPriorityChannel the docs with a broadcast still to come in the
+     *        hour on a default priority channel
+     */
+    void rank(int hour, RankingColumns.SegmentColumns columns, OpenBitSet onPriorityChannel) {
+        int[] ranks = ranks(publishers.length, columns, onPriorityChannel, hour);
+        ranking = new Ranking(hour, ranks, rankedByPrefix(ranks));
+    }
+
+    private static int[] ranks(int maxDoc, RankingColumns.SegmentColumns columns, OpenBitSet onPriorityChannel, 
+            int nowHour) {
+        int[] ranks = new int[maxDoc];
+        for (int doc = 0; doc < ranks.length; doc++) {
+            int broadcastHour = columns.broadcastHour(doc);
+            if (broadcastHour != 0) {
+                ranks[doc] = Math.max(0, RANK_WINDOW_HOURS - Math.abs(nowHour - broadcastHour));
+            }
+            if (onPriorityChannel.fastGet(doc)) {
+                ranks[doc] += PRIORITY_CHANNEL_RANK;
+            }
+        }
+        return ranks;
+    }
+
+    /**
+     * @return the ordinal of each doc's publisher, or -1
+     */
+    private static short[] publishers(IndexReader segment) throws IOException {
+        short[] publishers = new short[segment.maxDoc()];
+        Arrays.fill(publishers, (short) -1);
+        String field = LuceneContentIndex.FIELD_CONTENT_PUBLISHER;
+        TermEnum terms = segment.terms(new Term(field, ""));
+        TermDocs termDocs = segment.termDocs();
+        try {
+            do {
+                Term term = terms.term();
+                if (term == null || !field.equals(term.field())) {
+                    break;
+                }
+                Publisher publisher = PUBLISHERS.get(term.text());
+                if (publisher == null) {
+                    continue;
+                }
+                termDocs.seek(terms);
+                while (termDocs.next()) {
+                    publishers[termDocs.doc()] = (short) publisher.ordinal();
+                }
+            } while (terms.next());
+        } finally {
+            terms.close();
+            termDocs.close();
+        }
+        return publishers;
+    }
+
+    private Map<String, int[]> rankedByPrefix(int[] ranks) {
+        Map<String, int[]> ranked = Maps.newHashMap();
+        for (int length = 1; length <= RANKED_PREFIX_LENGTH; length++) {
+            int start = 0;
+            while (start < titles.length) {
+                if (titles[start].length() < length) {
+                    start++;
+                    continue;
+                }
+                String prefix = titles[start].substring(0, length);
+                int end = end(prefix, start);
+                ranked.put(prefix, inRankOrder(start, end, ranks));
+                start = end;
+            }
+        }
+        return ranked;
+    }
+
+    private int[] inRankOrder(int start, int end, final int[] ranks) {
+        Integer[] positions = new Integer[end - start];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = start + i;
+        }
+        Arrays.sort(positions, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer left, Integer right) {
+                return outranks(left, right, ranks) ? -1 : outranks(right, left, ranks) ? 1 : 0;
+            }
+        });
+        int[] ranked = new int[positions.length];
+        for (int i = 0; i < ranked.length; i++) {
+            ranked[i] = positions[i];
+        }
+        return ranked;
+    }
+
+    private boolean outranks(int position, int other, int[] ranks) {
+        return SuggestionQueue.outranks(ranks[docs[position]], titles[position].length(), docs[position],
+                ranks[docs[other]], titles[other].length(), docs[other]);
+    }
+
+    /**
+     * Offers the best completions of the flattened prefix to the queue, as many
+     * as it holds, counting each doc once, ranked as of the hour the segment
+     * was last {@link #rank(int, RankingColumns.SegmentColumns, OpenBitSet) ranked} for.
+     *
+     * @param allowedPublishers by publisher ordinal
+     * @param allowedDocs the docs the search's other filters allow, if it has
+     *        any
+     * @param segment the segment as currently open, for its deletions
+     */
+    void suggest(String prefix, boolean[] allowedPublishers, Optional<OpenBitSet> allowedDocs, IndexReader segment, 
+            int docBase, SuggestionQueue queue) {
+        Ranking ranking = this.ranking;
+        int[] ranks = ranking.ranks;
+        Set<Integer> offered = Sets.newHashSet();
+        int[] ranked = ranking.rankedByPrefix.get(prefix);
+        if (ranked != null) {
+            int accepted = 0;
+            for (int i = 0; i < ranked.length && accepted < queue.capacity(); i++) {
+                int position = ranked[i];
+                if (!matches(position, allowedPublishers, allowedDocs, segment) || !offered.add(docs[position])) {
+                    continue;
+                }
+                if (!queue.offer(docBase + docs[position], ranks[docs[position]], titles[position].length())) {
+                    // the rest of the range ranks lower still
+                    return;
+                }
+                accepted++;
+            }
+            return;
+        }
+        if (prefix.length() <= RANKED_PREFIX_LENGTH) {
+            // no title starts with it
+            return;
+        }
+        int start = start(prefix);
+        int end = end(prefix, start);
+        for (int position = start; position < end; position++) {
+            if (matches(position, allowedPublishers, allowedDocs, segment) && offered.add(docs[position])) {
+                queue.offer(docBase + docs[position], ranks[docs[position]], titles[position].length());
+            }
+        }
+    }
+
+    private boolean matches(int position, boolean[] allowedPublishers, Optional<OpenBitSet> allowedDocs, 
+            IndexReader segment) {
+        int doc = docs[position];
+        int publisher = publishers[doc];
+        return publisher >= 0 && allowedPublishers[publisher] 
+            && (!allowedDocs.isPresent() || allowedDocs.get().fastGet(doc))
+            && !(segment.hasDeletions() && segment.isDeleted(doc));
+    }
+
+    private int start(String prefix) {
+        int low = 0;
+        int high = titles.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (titles[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int end(String prefix, int start) {
+        int low = start;
+        int high = titles.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (titles[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    int size() {
+        return titles.length;
+    }
+
+    private static final Comparator<Suggestion> BY_TITLE = new Comparator<Suggestion>() {
+
+        @Override
+        public int compare(Suggestion left, Suggestion right) {
+            int byTitle = left.title.compareTo(right.title);
+            return byTitle != 0 ? byTitle : left.doc - right.doc;
+        }
+    };
+
+    private static final class Ranking {
+
+        private final int hour;
+        // by doc
+        private final int[] ranks;
+        // positions in titles, best first, for each short prefix
+        private final Map<String, int[]> rankedByPrefix;
+
+        private Ranking(int hour, int[] ranks, Map<String, int[]> rankedByPrefix) {
+            this.hour = hour;
+            this.ranks = ranks;
+            this.rankedByPrefix = rankedByPrefix;
+        }
+    }
+
+    private static final class Suggestion {
+
+        private final String title;
+        private final int doc;
+
+        private Suggestion(String title, int doc) {
+            this.title = title;
+            this.doc = doc;
+        }
+    }
+}
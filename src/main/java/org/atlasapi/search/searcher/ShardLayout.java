@@ -0,0 +1,90 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.atlasapi.media.entity.Publisher;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
+
+/**
+ * Assigns publishers to index shards. Publishers not assigned to a named shard
+ * go to the default shard. The unsharded layout has only the default shard,
+ * which lives directly in the index directory as it always has.
+ */
+public final class ShardLayout {
+
+    static final String DEFAULT_SHARD = "default";
+
+    private static final Splitter SHARD_SPLITTER = Splitter.on(';').trimResults().omitEmptyStrings();
+    private static final Splitter NAME_SPLITTER = Splitter.on(':').trimResults();
+    private static final Splitter PUBLISHER_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private final List<String> shards;
+    private final Map<Publisher, Integer> shardIndexes;
+
+    private ShardLayout(List<String> shards, Map<Publisher, Integer> shardIndexes) {
+        this.shards = shards;
+        this.shardIndexes = shardIndexes;
+    }
+
+    public static ShardLayout unsharded() {
+        return new ShardLayout(ImmutableList.of(DEFAULT_SHARD), ImmutableMap.<Publisher, Integer>of());
+    }
+
+    /**
+     * Parses a layout of the form <code>bbc:BBC,BBC_MUSIC;c4:C4</code>, giving
+     * shards named "bbc" and "c4" as well as the default shard. An empty spec
+     * gives the unsharded layout.
+     */
+    public static ShardLayout fromSpec(String spec) {
+        if (Strings.isNullOrEmpty(spec)) {
+            return unsharded();
+        }
+        ImmutableList.Builder<String> shards = ImmutableList.builder();
+        Map<Publisher, Integer> shardIndexes = Maps.newEnumMap(Publisher.class);
+        int index = 0;
+        for (String shardSpec : SHARD_SPLITTER.split(spec)) {
+            List<String> parts = ImmutableList.copyOf(NAME_SPLITTER.split(shardSpec));
+            checkArgument(parts.size() == 2 && !parts.get(0).isEmpty(), "Invalid shard spec '%s'", shardSpec);
+            checkArgument(!DEFAULT_SHARD.equals(parts.get(0)), "Shard name '%s' is reserved", DEFAULT_SHARD);
+            for (String publisher : PUBLISHER_SPLITTER.split(parts.get(1))) {
+                Integer previous = shardIndexes.put(Publisher.valueOf(publisher), index);
+                checkArgument(previous == null, "Publisher %s assigned to more than one shard", publisher);
+            }
+            shards.add(parts.get(0));
+            index++;
+        }
+        shards.add(DEFAULT_SHARD);
+        return new ShardLayout(shards.build(), ImmutableMap.copyOf(shardIndexes));
+    }
+
+    List<String> shards() {
+        return shards;
+    }
+
+    boolean isSharded() {
+        return shards.size() > 1;
+    }
+
+    int shardFor(Publisher publisher) {
+        Integer index = publisher == null ? null : shardIndexes.get(publisher);
+        return index == null ? shards.size() - 1 : index;
+    }
+
+    Set<Integer> shardsFor(Iterable<Publisher> publishers) {
+        ImmutableSortedSet.Builder<Integer> indexes = ImmutableSortedSet.naturalOrder();
+        for (Publisher publisher : publishers) {
+            indexes.add(shardFor(publisher));
+        }
+        return indexes.build();
+    }
+}
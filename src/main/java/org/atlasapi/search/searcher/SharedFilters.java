@@ -0,0 +1,59 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Builds filters matching any of several terms for the queries of a batch, so
+ * that queries naming the same publishers or specializations share one filter
+ * and each segment's union of those terms is only computed once per batch.
+ *
+ * Single terms are already cached per segment by the {@link TermFilterCache}.
+ */
+final class SharedFilters {
+
+    private final TermFilterCache termFilterCache;
+    private final Optional<ConcurrentMap<List<Term>, Filter>> shared;
+
+    private SharedFilters(TermFilterCache termFilterCache, Optional<ConcurrentMap<List<Term>, Filter>> shared) {
+        this.termFilterCache = checkNotNull(termFilterCache);
+        this.shared = shared;
+    }
+
+    /**
+     * For a single query, building each filter afresh.
+     */
+    static SharedFilters unshared(TermFilterCache termFilterCache) {
+        return new SharedFilters(termFilterCache, Optional.<ConcurrentMap<List<Term>, Filter>>absent());
+    }
+
+    static SharedFilters forBatch(TermFilterCache termFilterCache) {
+        return new SharedFilters(termFilterCache, Optional.of(Maps.<List<Term>, Filter>newConcurrentMap()));
+    }
+
+    Filter filterFor(List<Term> terms) {
+        if (!shared.isPresent() || terms.size() < 2) {
+            return termFilterCache.filterFor(terms);
+        }
+        List<Term> key = ImmutableList.copyOf(terms);
+        Filter filter = shared.get().get(key);
+        if (filter == null) {
+            filter = new CachingWrapperFilter(termFilterCache.filterFor(key));
+            Filter existing = shared.get().putIfAbsent(key, filter);
+            if (existing != null) {
+                filter = existing;
+            }
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,92 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.apache.lucene.util.PriorityQueue;
+
+/**
+ * Keeps the best completions offered from any number of segments, ordered by
+ * rank, then the shortest title, then the lowest doc id.
+ */
+final class SuggestionQueue {
+
+    private final int capacity;
+    private final CompletionQueue queue;
+
+    SuggestionQueue(int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        this.capacity = capacity;
+        this.queue = new CompletionQueue(capacity);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return false if the queue is full of completions which all outrank this one
+     */
+    boolean offer(int doc, int rank, int titleLength) {
+        if (queue.size() < capacity) {
+            queue.add(new Completion(doc, rank, titleLength));
+            return true;
+        }
+        Completion bottom = queue.top();
+        if (!outranks(rank, titleLength, doc, bottom.rank, bottom.titleLength, bottom.doc)) {
+            return false;
+        }
+        bottom.doc = doc;
+        bottom.rank = rank;
+        bottom.titleLength = titleLength;
+        queue.updateTop();
+        return true;
+    }
+
+    /**
+     * Empties the queue.
+     *
+     * @return the doc ids of the completions, best first
+     */
+    int[] docs() {
+        int[] docs = new int[queue.size()];
+        for (int i = docs.length - 1; i >= 0; i--) {
+            docs[i] = queue.pop().doc;
+        }
+        return docs;
+    }
+
+    static boolean outranks(int rank, int titleLength, int doc, int otherRank, int otherTitleLength, int otherDoc) {
+        if (rank != otherRank) {
+            return rank > otherRank;
+        }
+        if (titleLength != otherTitleLength) {
+            return titleLength < otherTitleLength;
+        }
+        return doc < otherDoc;
+    }
+
+    private static final class Completion {
+
+        private int doc;
+        private int rank;
+        private int titleLength;
+
+        private Completion(int doc, int rank, int titleLength) {
+            this.doc = doc;
+            this.rank = rank;
+            this.titleLength = titleLength;
+        }
+    }
+
+    private static final class CompletionQueue extends PriorityQueue<Completion> {
+
+        private CompletionQueue(int size) {
+            initialize(size);
+        }
+
+        @Override
+        protected boolean lessThan(Completion a, Completion b) {
+            return outranks(b.rank, b.titleLength, b.doc, a.rank, a.titleLength, a.doc);
+        }
+    }
+}
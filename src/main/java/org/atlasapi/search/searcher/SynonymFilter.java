@@ -0,0 +1,54 @@
+package org.atlasapi.search.searcher;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+
+/**
+ * Follows each token which has {@link TitleSynonyms} with its alternatives,
+ * at the same position.
+ */
+final class SynonymFilter extends TokenFilter {
+
+    private final TitleSynonyms synonyms;
+    private final TermAttribute term;
+    private final PositionIncrementAttribute positionIncrement;
+    private Iterator<String> pending;
+    private State current;
+
+    SynonymFilter(TokenStream input, TitleSynonyms synonyms) {
+        super(input);
+        this.synonyms = synonyms;
+        this.term = addAttribute(TermAttribute.class);
+        this.positionIncrement = addAttribute(PositionIncrementAttribute.class);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (pending != null && pending.hasNext()) {
+            restoreState(current);
+            term.setTermBuffer(pending.next());
+            positionIncrement.setPositionIncrement(0);
+            return true;
+        }
+        if (!input.incrementToken()) {
+            return false;
+        }
+        pending = synonyms.alternativesOf(term.term()).iterator();
+        if (pending.hasNext()) {
+            current = captureState();
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        pending = null;
+        current = null;
+    }
+}
@@ -0,0 +1,157 @@
+package org.atlasapi.search.searcher;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.OpenBitSetDISI;
+import org.apache.lucene.util.SortedVIntList;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Holds the set of docs matching each filter term, per segment, so the publisher,
+ * specialization, type and flag filters don't walk postings on every query.
+ *
+ * Sets are keyed on the segment's core, so they survive reopens for segments
+ * which haven't changed and are dropped once a segment is no longer referenced.
+ * They include docs deleted after they were built, which is harmless since
+ * filters only ever narrow the docs a query scorer matches. Each set is kept as
+ * a bitset or a vint list, whichever is smaller.
+ */
+public class TermFilterCache {
+
+    private final Cache<Object, ConcurrentMap<Term, DocIdSet>> segments = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    /**
+     * @return a filter matching docs which have any of the given terms
+     */
+    Filter filterFor(Iterable<Term> terms) {
+        return new CachedTermsFilter(this, ImmutableList.copyOf(terms));
+    }
+
+    Filter filterFor(Term term) {
+        return filterFor(ImmutableList.of(term));
+    }
+
+    DocIdSet docIdSet(IndexReader segment, Term term) throws IOException {
+        ConcurrentMap<Term, DocIdSet> segmentSets = setsFor(segment);
+        DocIdSet docIdSet = segmentSets.get(term);
+        if (docIdSet == null) {
+            docIdSet = load(segment, term);
+            DocIdSet existing = segmentSets.putIfAbsent(term, docIdSet);
+            if (existing != null) {
+                docIdSet = existing;
+            }
+        }
+        return docIdSet;
+    }
+
+    private ConcurrentMap<Term, DocIdSet> setsFor(IndexReader segment) throws IOException {
+        try {
+            return segments.get(segment.getFieldCacheKey(), new Callable<ConcurrentMap<Term, DocIdSet>>() {
+
+                @Override
+                public ConcurrentMap<Term, DocIdSet> call() {
+                    return Maps.newConcurrentMap();
+                }
+            });
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private DocIdSet load(IndexReader segment, Term term) throws IOException {
+        OpenBitSet bits = new OpenBitSet(segment.maxDoc());
+        TermDocs termDocs = segment.termDocs(term);
+        try {
+            while (termDocs.next()) {
+                bits.fastSet(termDocs.doc());
+            }
+        } finally {
+            termDocs.close();
+        }
+        if (bits.isEmpty()) {
+            return DocIdSet.EMPTY_DOCIDSET;
+        }
+        SortedVIntList sparse = new SortedVIntList(bits);
+        return sparse.getByteSize() < bitsetBytes(bits) ? sparse : bits;
+    }
+
+    public long segmentCount() {
+        return segments.size();
+    }
+
+    public long setCount() {
+        long count = 0;
+        for (ConcurrentMap<Term, DocIdSet> segmentSets : segments.asMap().values()) {
+            count += segmentSets.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return an estimate of the memory held by the cached sets
+     */
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (ConcurrentMap<Term, DocIdSet> segmentSets : segments.asMap().values()) {
+            for (DocIdSet docIdSet : segmentSets.values()) {
+                if (docIdSet instanceof OpenBitSet) {
+                    bytes += bitsetBytes((OpenBitSet) docIdSet);
+                } else if (docIdSet instanceof SortedVIntList) {
+                    bytes += ((SortedVIntList) docIdSet).getByteSize();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static long bitsetBytes(OpenBitSet bits) {
+        return bits.getBits().length * 8L;
+    }
+
+    private static final class CachedTermsFilter extends Filter {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient TermFilterCache cache;
+        private final List<Term> terms;
+
+        private CachedTermsFilter(TermFilterCache cache, List<Term> terms) {
+            this.cache = cache;
+            this.terms = terms;
+        }
+
+        @Override
+        public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+            if (terms.size() == 1) {
+                return cache.docIdSet(reader, terms.get(0));
+            }
+            OpenBitSetDISI union = new OpenBitSetDISI(reader.maxDoc());
+            for (Term term : terms) {
+                union.inPlaceOr(cache.docIdSet(reader, term).iterator());
+            }
+            return union;
+        }
+
+        @Override
+        public String toString() {
+            return "CachedTermsFilter" + terms;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.metabroadcast.common.health.ProbeResult.ProbeResultType.INFO;
+
+import com.metabroadcast.common.health.HealthProbe;
+import com.metabroadcast.common.health.ProbeResult;
+import com.metabroadcast.common.health.ProbeResult.ProbeResultEntry;
+
+public class TermFilterCacheProbe implements HealthProbe {
+
+    private final TermFilterCache cache;
+
+    public TermFilterCacheProbe(TermFilterCache cache) {
+        this.cache = checkNotNull(cache);
+    }
+
+    @Override
+    public ProbeResult probe() {
+        ProbeResult result = new ProbeResult(title());
+        result.addEntry(info("segments", cache.segmentCount()));
+        result.addEntry(info("sets", cache.setCount()));
+        result.addEntry(info("bytes", cache.sizeInBytes()));
+        return result;
+    }
+
+    private ProbeResultEntry info(String key, long value) {
+        return new ProbeResultEntry(INFO, key, String.valueOf(value));
+    }
+
+    @Override
+    public String title() {
+        return "Term filter cache";
+    }
+
+    @Override
+    public String slug() {
+        return "term-filter-cache";
+    }
+}
@@ -0,0 +1,205 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.PriorityQueue;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+
+/**
+ * Collects the top hits ordered by score, breaking ties in favour of the
+ * shortest title and then the lowest doc id. Title lengths are read from a
+ * per-segment {@link FieldCache} array of the given numeric field, so the order
+ * is settled during collection without loading any stored fields. A doc
+ * without the field, such as one indexed before it was, reads as 0 from the
+ * array, and is taken to have the longest title so that it doesn't win ties.
+ *
+ * Only as many hits as the requested page needs are kept. Given a cursor, only
+ * hits ranked after it are collected, so a page deep into the results costs the
+ * same as the first.
+ */
+final class TitleLengthTopDocsCollector extends Collector {
+
+    private static final int UNKNOWN_TITLE_LENGTH = Integer.MAX_VALUE;
+
+    private final String titleLengthField;
+    private final HitQueue queue;
+    private final int numHits;
+    private final Optional<SearchCursor> after;
+
+    private Scorer scorer;
+    private int[] titleLengths;
+    private int docBase;
+    private int totalHits;
+    private float maxScore = Float.NEGATIVE_INFINITY;
+
+    TitleLengthTopDocsCollector(String titleLengthField, int numHits) {
+        this(titleLengthField, numHits, Optional.<SearchCursor>absent());
+    }
+
+    TitleLengthTopDocsCollector(String titleLengthField, int numHits, Optional<SearchCursor> after) {
+        checkArgument(numHits >= 0, "numHits must not be negative");
+        this.titleLengthField = titleLengthField;
+        this.numHits = numHits;
+        this.after = after;
+        this.queue = new HitQueue(numHits);
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        this.scorer = scorer;
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        this.titleLengths = FieldCache.DEFAULT.getInts(reader, titleLengthField, FieldCache.NUMERIC_UTILS_INT_PARSER);
+        this.docBase = docBase;
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        float score = scorer.score();
+        int titleLength = titleLengths[doc] != 0 ? titleLengths[doc] : UNKNOWN_TITLE_LENGTH;
+        int globalDoc = docBase + doc;
+        if (after.isPresent() && !isAfter(after.get(), score, titleLength, globalDoc)) {
+            return;
+        }
+        totalHits++;
+        maxScore = Math.max(maxScore, score);
+        if (numHits == 0) {
+            return;
+        }
+        if (queue.size() < numHits) {
+            queue.add(new Hit(globalDoc, score, titleLength));
+            return;
+        }
+        Hit bottom = queue.top();
+        if (!outranks(score, titleLength, globalDoc, bottom)) {
+            return;
+        }
+        bottom.doc = globalDoc;
+        bottom.score = score;
+        bottom.titleLength = titleLength;
+        queue.updateTop();
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        // the ordering is total, so arrival order makes no difference
+        return true;
+    }
+
+    /**
+     * Empties the collector, returning at most howMany hits starting at start.
+     * Total hits counts only those ranked after the cursor, if there is one, and
+     * each returned {@link ScoreDoc} is a {@link Hit}.
+     */
+    TopDocs topDocs(int start, int howMany) {
+        int size = queue.size();
+        if (start >= size || howMany <= 0) {
+            queue.clear();
+            return new TopDocs(totalHits, new ScoreDoc[0], maxScore);
+        }
+        int end = Math.min(size, start + howMany);
+        // discard the hits ranked below the page
+        for (int i = size; i > end; i--) {
+            queue.pop();
+        }
+        ScoreDoc[] page = new ScoreDoc[end - start];
+        for (int i = page.length - 1; i >= 0; i--) {
+            page[i] = queue.pop();
+        }
+        queue.clear();
+        return new TopDocs(totalHits, page, maxScore);
+    }
+
+    /**
+     * Merges the top docs of collectors which each saw a disjoint set of docs,
+     * such as separate segments, returning at most howMany hits starting at start.
+     */
+    static TopDocs merge(List<TopDocs> topDocs, int start, int howMany) {
+        int totalHits = 0;
+        float maxScore = Float.NEGATIVE_INFINITY;
+        List<Hit> hits = Lists.newArrayList();
+        for (TopDocs docs : topDocs) {
+            totalHits += docs.totalHits;
+            maxScore = Math.max(maxScore, docs.getMaxScore());
+            for (ScoreDoc scoreDoc : docs.scoreDocs) {
+                hits.add((Hit) scoreDoc);
+            }
+        }
+        Collections.sort(hits, RANKING);
+        int end = Math.min(hits.size(), start + Math.max(0, howMany));
+        ScoreDoc[] page = start < end ? hits.subList(start, end).toArray(new ScoreDoc[end - start]) : new ScoreDoc[0];
+        return new TopDocs(totalHits, page, maxScore);
+    }
+
+    private static final Comparator<Hit> RANKING = new Comparator<Hit>() {
+
+        @Override
+        public int compare(Hit left, Hit right) {
+            if (left == right) {
+                return 0;
+            }
+            return outranks(left.score, left.titleLength, left.doc, right) ? -1 : 1;
+        }
+    };
+
+    private static boolean isAfter(SearchCursor cursor, float score, int titleLength, int doc) {
+        return outranks(cursor.score(), cursor.titleLength(), cursor.doc(), score, titleLength, doc);
+    }
+
+    private static boolean outranks(float score, int titleLength, int doc, Hit other) {
+        return outranks(score, titleLength, doc, other.score, other.titleLength, other.doc);
+    }
+
+    private static boolean outranks(float score, int titleLength, int doc, 
+            float otherScore, int otherTitleLength, int otherDoc) {
+        if (score != otherScore) {
+            return score > otherScore;
+        }
+        if (titleLength != otherTitleLength) {
+            return titleLength < otherTitleLength;
+        }
+        return doc < otherDoc;
+    }
+
+    static final class Hit extends ScoreDoc {
+
+        private static final long serialVersionUID = 1L;
+        private int titleLength;
+
+        private Hit(int doc, float score, int titleLength) {
+            super(doc, score);
+            this.titleLength = titleLength;
+        }
+
+        int titleLength() {
+            return titleLength;
+        }
+    }
+
+    private static final class HitQueue extends PriorityQueue<Hit> {
+
+        private HitQueue(int size) {
+            initialize(size);
+        }
+
+        @Override
+        protected boolean lessThan(Hit a, Hit b) {
+            return outranks(b.score, b.titleLength, b.doc, a);
+        }
+    }
+}
@@ -14,15 +14,20 @@ permissions and limitations under the License. */
 
 package org.atlasapi.search.searcher;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.DisjunctionMaxQuery;
 import org.apache.lucene.search.FuzzyQuery;
@@ -33,26 +38,90 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.util.Version;
 
-import com.google.common.base.Function;
-import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 public class TitleQueryBuilder {
 
-	private static final Joiner JOINER = Joiner.on("");
+	// streams are reused per thread
+	private static final StandardAnalyzer ANALYZER = new StandardAnalyzer(Version.LUCENE_30);
+	private static final ThreadLocal<StringBuilder> FLATTENED = new StringBuilderThreadLocal();
+	private static final ThreadLocal<StringBuilder> EXPANDED = new StringBuilderThreadLocal();
 
     private static final int USE_PREFIX_SEARCH_UP_TO = 2;
+    private static final int MAX_FLATTENED_VARIANTS = 8;
+    // the per-token and whole-title fuzzy clauses of a field's query come
+    // first, then its whole-title prefix and exact match clauses
+    private static final int FUZZY_CLAUSES = 2;
+    private static final int EXACT_OR_PREFIX_CLAUSES = 2;
 
-	private final Map<String, String> EXPANSIONS = ImmutableMap.<String, String>builder()
+	// for titles indexed before synonyms were, which don't match them
+	private static final Map<String, String> EXPANSIONS = ImmutableMap.<String, String>builder()
 	    .put("dr", "doctor")
 	    .put("rd", "road")
 	.build();
+
+	private final FuzzyCandidates fuzzyCandidates;
+	private final FuzzyPruning fuzzyPruning;
+	private final FuzzyExpansions fuzzyExpansions;
+	private final Optional<PrefixFields> prefixFields;
+	private final boolean expandsAtQueryTime;
+
+	public TitleQueryBuilder() {
+	    this(FuzzyPruning.none());
+	}
+
+	public TitleQueryBuilder(FuzzyPruning fuzzyPruning) {
+	    this(new FuzzyCandidates(), checkNotNull(fuzzyPruning), new FuzzyExpansions(), Optional.<PrefixFields>absent(), 
+	            false);
+	}
+
+	private TitleQueryBuilder(FuzzyCandidates fuzzyCandidates, FuzzyPruning fuzzyPruning, 
+	        FuzzyExpansions fuzzyExpansions, Optional<PrefixFields> prefixFields, boolean expandsAtQueryTime) {
+	    this.fuzzyCandidates = fuzzyCandidates;
+	    this.fuzzyPruning = fuzzyPruning;
+	    this.fuzzyExpansions = fuzzyExpansions;
+	    this.prefixFields = prefixFields;
+	    this.expandsAtQueryTime = expandsAtQueryTime;
+	}
+
+	/**
+	 * @return a builder whose queries match the prefixes the fields cover with
+	 *         them, sharing this one's fuzzy candidates and counts
+	 */
+	TitleQueryBuilder withPrefixFields(PrefixFields prefixFields) {
+	    return new TitleQueryBuilder(fuzzyCandidates, fuzzyPruning, fuzzyExpansions, Optional.of(prefixFields), 
+	            expandsAtQueryTime);
+	}
+
+	/**
+	 * @return a builder whose prefix and exact match clauses also match "dr"
+	 *         as "doctor" and "rd" as "road", for titles indexed before their
+	 *         synonyms were, sharing this one's fuzzy candidates and counts
+	 */
+	TitleQueryBuilder withQueryTimeExpansions() {
+	    return new TitleQueryBuilder(fuzzyCandidates, fuzzyPruning, fuzzyExpansions, prefixFields, true);
+	}
+
+	FuzzyExpansions fuzzyExpansions() {
+	    return fuzzyExpansions;
+	}
 	
-	Query build(String queryString) {	
+	Query build(String queryString) {
+	    return build(queryString, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Builds the query as {@link #build(String)} does, except that the clauses
+	 * for each token are only added for the first maxTokens tokens.
+	 */
+	Query build(String queryString, int maxTokens) {
 		
-		List<String> tokens = tokens(queryString);
+		AnalysedQuery analysed = analyse(queryString).truncatedTo(maxTokens);
+		List<String> tokens = analysed.tokens;
 		
 		if (shouldUsePrefixSearch(tokens)) {
 		    String token = Iterables.getOnlyElement(tokens);
@@ -62,109 +131,372 @@ public class TitleQueryBuilder {
 		    return query;
 		} else {
 		    DisjunctionMaxQuery query = new DisjunctionMaxQuery(0);
-		    query.add(fuzzyTermSearch(flatten(queryString), tokens, LuceneContentIndex.FIELD_CONTENT_TITLE, LuceneContentIndex.FIELD_TITLE_FLATTENED, 1.0f));
-		    query.add(fuzzyTermSearch(flatten(queryString), tokens, LuceneContentIndex.FIELD_CONTAINER_CONTENT_TITLE, LuceneContentIndex.FIELD_CONTAINER_TITLE_FLATTENED, 2.0f));
+		    query.add(fuzzyTermSearch(analysed, LuceneContentIndex.FIELD_CONTENT_TITLE, LuceneContentIndex.FIELD_TITLE_FLATTENED, 1.0f));
+		    query.add(fuzzyTermSearch(analysed, LuceneContentIndex.FIELD_CONTAINER_CONTENT_TITLE, LuceneContentIndex.FIELD_CONTAINER_TITLE_FLATTENED, 2.0f));
 			return query;
 		}
 	}
 
+	/**
+	 * Builds only the whole-title exact and prefix clauses of the query
+	 * {@link #build(String)} gives, with the same boosts.
+	 *
+	 * @return absent if the query is a short prefix search, which has no fuzzy
+	 *         clauses to leave out
+	 */
+	Optional<Query> buildExactOrPrefix(String queryString) {
+		AnalysedQuery analysed = analyse(queryString);
+		if (shouldUsePrefixSearch(analysed.tokens)) {
+		    return Optional.absent();
+		}
+		DisjunctionMaxQuery query = new DisjunctionMaxQuery(0);
+		query.add(exactOrPrefixSearch(analysed, LuceneContentIndex.FIELD_CONTENT_TITLE, LuceneContentIndex.FIELD_TITLE_FLATTENED, 1.0f));
+		query.add(exactOrPrefixSearch(analysed, LuceneContentIndex.FIELD_CONTAINER_CONTENT_TITLE, LuceneContentIndex.FIELD_CONTAINER_TITLE_FLATTENED, 2.0f));
+		return Optional.<Query>of(query);
+	}
+
+	/**
+	 * Takes the whole-title exact and prefix clauses out of a query
+	 * {@link #build(String, int)} gave, rewritten or not, since rewriting
+	 * keeps the order of its disjuncts and clauses.
+	 *
+	 * @return the query's other clauses, with the same boosts, or absent if
+	 *         it's a short prefix search, which has no others
+	 */
+	static Optional<Query> withoutExactOrPrefix(Query titleQuery) {
+		if (!(titleQuery instanceof DisjunctionMaxQuery)) {
+		    return Optional.absent();
+		}
+		DisjunctionMaxQuery query = new DisjunctionMaxQuery(0);
+		query.setBoost(titleQuery.getBoost());
+		for (Query disjunct : (DisjunctionMaxQuery) titleQuery) {
+		    if (!(disjunct instanceof BooleanQuery)) {
+		        return Optional.absent();
+		    }
+		    BooleanClause[] clauses = ((BooleanQuery) disjunct).getClauses();
+		    if (clauses.length != FUZZY_CLAUSES + EXACT_OR_PREFIX_CLAUSES) {
+		        return Optional.absent();
+		    }
+		    BooleanQuery either = new BooleanQuery(((BooleanQuery) disjunct).isCoordDisabled());
+		    either.setMinimumNumberShouldMatch(1);
+		    either.setBoost(disjunct.getBoost());
+		    for (int i = 0; i < FUZZY_CLAUSES; i++) {
+		        either.add(clauses[i]);
+		    }
+		    query.add(either);
+		}
+		return Optional.<Query>of(query);
+	}
+
+	/**
+	 * Builds a query matching the runs of adjacent tokens of the title and
+	 * container title fields, boosted as the per-token prefix clauses of
+	 * {@link #build(String)} are, so that as a clause of the title query it
+	 * lifts the hits with the words next to each other and in order.
+	 *
+	 * @return absent if the query has fewer than two tokens
+	 * @see TitleShingles
+	 */
+	Optional<Query> buildShingles(String queryString) {
+		List<String> tokens = analyse(queryString).tokens;
+		if (tokens.size() < 2) {
+		    return Optional.absent();
+		}
+		DisjunctionMaxQuery query = new DisjunctionMaxQuery(0);
+		query.add(shingleSearch(tokens, LuceneContentIndex.FIELD_CONTENT_TITLE, 1.0f));
+		query.add(shingleSearch(tokens, LuceneContentIndex.FIELD_CONTAINER_CONTENT_TITLE, 2.0f));
+		return Optional.<Query>of(query);
+	}
+
+	private Query shingleSearch(List<String> tokens, String fullTitleIndexField, float boostMultiplier) {
+	    Query shingles = TitleShingles.query(tokens, fullTitleIndexField);
+	    shingles.setBoost(20 * boostMultiplier);
+	    return shingles;
+	}
+
+	int tokenCount(String queryString) {
+	    return analyse(queryString).tokens.size();
+	}
+
+	/**
+	 * Estimates how many primitive clauses the query {@link #build(String, int)}
+	 * gives would rewrite to against the reader. Each fuzzy clause counts the
+	 * terms it could expand to, from the term dictionary, and every other
+	 * clause counts as one.
+	 */
+	int estimateCost(String queryString, int maxTokens, IndexReader reader) throws IOException {
+	    AnalysedQuery analysed = analyse(queryString).truncatedTo(maxTokens);
+	    if (shouldUsePrefixSearch(analysed.tokens)) {
+	        return 2;
+	    }
+	    return fuzzyTermSearchCost(analysed, LuceneContentIndex.FIELD_CONTENT_TITLE, LuceneContentIndex.FIELD_TITLE_FLATTENED, reader)
+	         + fuzzyTermSearchCost(analysed, LuceneContentIndex.FIELD_CONTAINER_CONTENT_TITLE, LuceneContentIndex.FIELD_CONTAINER_TITLE_FLATTENED, reader);
+	}
+
+	// mirrors fuzzyTermSearch: a prefix and a fuzzy clause per token, the fuzzy
+	// clause without spaces, then the prefix and exact match clauses, two of
+	// each when expanded
+	private int fuzzyTermSearchCost(AnalysedQuery analysed, String fullTitleIndexField, 
+	        String flattenedTitleIndexField, IndexReader reader) throws IOException {
+	    int cost = 0;
+	    for (String token : analysed.tokens) {
+	        cost += 1 + fuzzyQuery(new Term(fullTitleIndexField, token), 0.65f).estimatedExpansions(reader);
+	    }
+	    cost += fuzzyWithoutSpaces(analysed.flattened, flattenedTitleIndexField).estimatedExpansions(reader);
+	    return cost + (expandsAtQueryTime ? 4 : 2);
+	}
+
 	private boolean shouldUsePrefixSearch(List<String> tokens) {
 		return tokens.size() == 1 && Iterables.getOnlyElement(tokens).length() <= USE_PREFIX_SEARCH_UP_TO;
 	}
 
 	private Query prefixSearch(String token, String indexField) {
+	    String expanded = expandsAtQueryTime ? EXPANSIONS.get(token) : null;
+	    if (expanded == null) {
+	        return prefixQuery(token, indexField);
+	    }
 	    BooleanQuery withExpansions = new BooleanQuery(true);
 	    withExpansions.setMinimumNumberShouldMatch(1);
-		withExpansions.add(prefixQuery(token, indexField), Occur.SHOULD);
-
-		String expanded = EXPANSIONS.get(token);
-		if (expanded != null) {
-		    withExpansions.add(prefixQuery(expanded, indexField), Occur.SHOULD);
-		}
+	    withExpansions.add(prefixQuery(token, indexField), Occur.SHOULD);
+	    withExpansions.add(prefixQuery(expanded, indexField), Occur.SHOULD);
 	    return withExpansions;
 	}
 
-    private PrefixQuery prefixQuery(String token, String indexField) {
+    private Query prefixQuery(String token, String indexField) {
+        if (prefixFields.isPresent() && prefixFields.get().covers(token)) {
+            return prefixFields.get().prefixQuery(indexField, token);
+        }
         PrefixQuery query = new PrefixQuery(new Term(indexField, token));
         query.setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_FILTER_REWRITE);
         return query;
     }
 
-	private BooleanQuery fuzzyTermSearch(String flattenedQuery, List<String> tokens, String fullTitleIndexField, 
+	private BooleanQuery fuzzyTermSearch(AnalysedQuery analysed, String fullTitleIndexField, 
 	        String flattenedTitleIndexField, float boostMultiplier) {
 		BooleanQuery queryForTerms = new BooleanQuery();
 
-		for(String token : tokens) {
+		for(String token : analysed.tokens) {
 			BooleanQuery queryForThisTerm = new BooleanQuery();
 			queryForThisTerm.setMinimumNumberShouldMatch(1);
 			Term term = new Term(fullTitleIndexField, token);
 			
-			PrefixQuery prefix = new PrefixQuery(term);
+			Query prefix = prefixFields.isPresent() && prefixFields.get().covers(token) 
+			             ? prefixFields.get().prefixQuery(fullTitleIndexField, token) 
+			             : new PrefixQuery(term);
 			prefix.setBoost(20 * boostMultiplier);
 			queryForThisTerm.add(prefix, Occur.SHOULD);
 			
-			queryForThisTerm.add(new FuzzyQuery(term, 0.65f, USE_PREFIX_SEARCH_UP_TO),Occur.SHOULD);
+			queryForThisTerm.add(fuzzyQuery(term, 0.65f),Occur.SHOULD);
 			queryForTerms.add(queryForThisTerm, Occur.MUST);
 		}
 	
 		BooleanQuery either = new BooleanQuery();
 		either.setMinimumNumberShouldMatch(1);
 		either.add(queryForTerms, Occur.SHOULD);
-		either.add(fuzzyWithoutSpaces(flattenedQuery, flattenedTitleIndexField), Occur.SHOULD);
-		
-		Query prefix = prefixSearch(flattenedQuery, flattenedTitleIndexField);
+		either.add(fuzzyWithoutSpaces(analysed.flattened, flattenedTitleIndexField), Occur.SHOULD);
+		addExactOrPrefix(either, analysed, fullTitleIndexField, flattenedTitleIndexField, boostMultiplier);
+		return either;
+	}
+
+	private BooleanQuery exactOrPrefixSearch(AnalysedQuery analysed, String fullTitleIndexField, 
+	        String flattenedTitleIndexField, float boostMultiplier) {
+		BooleanQuery either = new BooleanQuery();
+		either.setMinimumNumberShouldMatch(1);
+		addExactOrPrefix(either, analysed, fullTitleIndexField, flattenedTitleIndexField, boostMultiplier);
+		return either;
+	}
+
+	private void addExactOrPrefix(BooleanQuery either, AnalysedQuery analysed, String fullTitleIndexField, 
+	        String flattenedTitleIndexField, float boostMultiplier) {
+		Query prefix = prefixSearch(analysed.flattened, flattenedTitleIndexField);
 		prefix.setBoost(50 * boostMultiplier);
 		either.add(prefix, Occur.SHOULD);
 		
-		either.add(exactMatch(flattenedQuery, tokens, fullTitleIndexField, boostMultiplier), Occur.SHOULD);
-		
-		return either;
+		either.add(exactMatch(analysed, fullTitleIndexField, boostMultiplier), Occur.SHOULD);
 	}
 
-    private Query exactMatch(String flattenedQuery, Iterable<String> tokens, String fullTitleIndexField, float boostMultiplier) {
-        BooleanQuery exactMatch = new BooleanQuery(true);
-		exactMatch.setMinimumNumberShouldMatch(1);
-		exactMatch.add(new TermQuery(new Term(fullTitleIndexField, flattenedQuery)), Occur.SHOULD);
-		
-		Iterable<String> transformed = Iterables.transform(tokens, new Function<String, String>() {
-            @Override
-            public String apply(String token) {
-                String expanded = EXPANSIONS.get(token);
-                if (expanded != null) {
-                    return expanded;
-                }
-                return token;
-            }
-		});
-		
-		String flattenedAndExpanded = JOINER.join(transformed);
-		
-        if (!flattenedAndExpanded.equals(flattenedQuery)) {
-            exactMatch.add(new TermQuery(new Term(fullTitleIndexField, flattenedAndExpanded)), Occur.SHOULD);
-        }
-		exactMatch.setBoost(100 * boostMultiplier);
-        return exactMatch;
-    }
+	private Query exactMatch(AnalysedQuery analysed, String fullTitleIndexField, float boostMultiplier) {
+	    Query exactMatch = new TermQuery(new Term(fullTitleIndexField, analysed.flattened));
+	    if (expandsAtQueryTime && !analysed.flattenedAndExpanded.equals(analysed.flattened)) {
+	        BooleanQuery withExpansions = new BooleanQuery(true);
+	        withExpansions.setMinimumNumberShouldMatch(1);
+	        withExpansions.add(exactMatch, Occur.SHOULD);
+	        withExpansions.add(new TermQuery(new Term(fullTitleIndexField, analysed.flattenedAndExpanded)), Occur.SHOULD);
+	        exactMatch = withExpansions;
+	    }
+	    exactMatch.setBoost(100 * boostMultiplier);
+	    return exactMatch;
+	}
+
+	private CandidateFuzzyQuery fuzzyWithoutSpaces(String flattened, String fullTitleIndexField) {
+		return fuzzyQuery(new Term(fullTitleIndexField, flattened), 0.8f);
+	}
+
+	private CandidateFuzzyQuery fuzzyQuery(Term term, float minimumSimilarity) {
+	    return new CandidateFuzzyQuery(fuzzyCandidates, fuzzyPruning, fuzzyExpansions, term, minimumSimilarity);
+	}
 
-	private FuzzyQuery fuzzyWithoutSpaces(String flattened, String fullTitleIndexField) {
-		return new FuzzyQuery(new Term(fullTitleIndexField, flattened), 0.8f, USE_PREFIX_SEARCH_UP_TO);
+	/**
+	 * @return the number of primitive clauses in a rewritten query, counting
+	 *         each term of an expanded fuzzy clause
+	 */
+	static int clauseCount(Query rewritten) {
+	    if (rewritten instanceof BooleanQuery) {
+	        int count = 0;
+	        for (BooleanClause clause : ((BooleanQuery) rewritten).getClauses()) {
+	            count += clauseCount(clause.getQuery());
+	        }
+	        return count;
+	    }
+	    if (rewritten instanceof DisjunctionMaxQuery) {
+	        int count = 0;
+	        for (Query disjunct : (DisjunctionMaxQuery) rewritten) {
+	            count += clauseCount(disjunct);
+	        }
+	        return count;
+	    }
+	    return 1;
 	}
 	
-	private static List<String> tokens(String queryString) {
-        TokenStream tokens = new StandardAnalyzer(Version.LUCENE_30).tokenStream("", new StringReader(queryString));
-        List<String> tokensAsStrings = Lists.newArrayList();
-        try {
-            while(tokens.incrementToken()) {
-                TermAttribute token = tokens.getAttribute(TermAttribute.class);
-                tokensAsStrings.add(token.term());
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        return tokensAsStrings;
-    }
+	/**
+	 * Tokenizes the query once, deriving its tokens, its flattened form and,
+	 * if it expands at query time, its flattened form with each token expanded.
+	 */
+	private AnalysedQuery analyse(String queryString) {
+	    StringBuilder flattened = FLATTENED.get();
+	    StringBuilder expanded = EXPANDED.get();
+	    flattened.setLength(0);
+	    expanded.setLength(0);
+	    List<String> tokens = Lists.newArrayListWithCapacity(4);
+	    try {
+	        TokenStream stream = ANALYZER.reusableTokenStream("", new StringReader(queryString));
+	        TermAttribute term = stream.getAttribute(TermAttribute.class);
+	        while (stream.incrementToken()) {
+	            String token = term.term();
+	            tokens.add(token);
+	            appendFlattened(flattened, term);
+	            if (expandsAtQueryTime) {
+	                String expansion = EXPANSIONS.get(token);
+	                expanded.append(expansion != null ? expansion : token);
+	            }
+	        }
+	    } catch (IOException e) {
+	        throw new RuntimeException(e);
+	    }
+	    String flattenedQuery = flattened.toString();
+	    return new AnalysedQuery(tokens, flattenedQuery, expandsAtQueryTime ? expanded.toString() : flattenedQuery);
+	}
+
+	/**
+	 * @return the title's tokens as the index analyses them, each followed by
+	 *         its synonyms at the same position
+	 */
+	TokenStream titleTokens(String title, TitleSynonyms synonyms) {
+	    return new SynonymFilter(ANALYZER.tokenStream("", new StringReader(title)), synonyms);
+	}
+
+	/**
+	 * @return the tokens the index analyses the text into
+	 */
+	TokenStream indexedTokens(String text) {
+	    return ANALYZER.tokenStream("", new StringReader(text));
+	}
+
+	/**
+	 * @return the flattened forms of the title with one or more of its tokens
+	 *         replaced by synonyms, at most {@link #MAX_FLATTENED_VARIANTS} of
+	 *         them, without the title's own flattened form
+	 */
+	Set<String> flattenedVariants(String title, TitleSynonyms synonyms) {
+	    List<String> variants = Lists.newArrayList("");
+	    boolean hasSynonyms = false;
+	    try {
+	        TokenStream stream = ANALYZER.reusableTokenStream("", new StringReader(title));
+	        TermAttribute term = stream.getAttribute(TermAttribute.class);
+	        while (stream.incrementToken()) {
+	            StringBuilder flattened = new StringBuilder(term.termLength());
+	            appendFlattened(flattened, term);
+	            List<String> alternatives = synonyms.alternativesOf(term.term());
+	            hasSynonyms |= !alternatives.isEmpty();
+	            List<String> extended = Lists.newArrayListWithCapacity(variants.size() * (1 + alternatives.size()));
+	            for (String variant : variants) {
+	                extended.add(variant + flattened);
+	            }
+	            for (String alternative : alternatives) {
+	                for (String variant : variants) {
+	                    if (extended.size() < MAX_FLATTENED_VARIANTS) {
+	                        extended.add(variant + alternative);
+	                    }
+	                }
+	            }
+	            variants = extended;
+	        }
+	    } catch (IOException e) {
+	        throw new RuntimeException(e);
+	    }
+	    if (!hasSynonyms) {
+	        return ImmutableSet.of();
+	    }
+	    // the first variant keeps every token
+	    return ImmutableSet.copyOf(variants.subList(1, variants.size()));
+	}
 
 	public String flatten(String title) {
-		return Joiner.on("").join(tokens(title)).replaceAll("[^a-zA-Z0-9]", "").toLowerCase();
+	    StringBuilder flattened = FLATTENED.get();
+	    flattened.setLength(0);
+	    try {
+	        TokenStream stream = ANALYZER.reusableTokenStream("", new StringReader(title));
+	        TermAttribute term = stream.getAttribute(TermAttribute.class);
+	        while (stream.incrementToken()) {
+	            appendFlattened(flattened, term);
+	        }
+	    } catch (IOException e) {
+	        throw new RuntimeException(e);
+	    }
+	    return flattened.toString();
+	}
+
+	/**
+	 * Appends the token's ASCII letters, lower cased, and digits.
+	 */
+	private static void appendFlattened(StringBuilder flattened, TermAttribute term) {
+	    char[] buffer = term.termBuffer();
+	    for (int i = 0; i < term.termLength(); i++) {
+	        char c = buffer[i];
+	        if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+	            flattened.append(c);
+	        } else if (c >= 'A' && c <= 'Z') {
+	            flattened.append((char) (c + ('a' - 'A')));
+	        }
+	    }
+	}
+
+	private static final class AnalysedQuery {
+
+	    private final List<String> tokens;
+	    private final String flattened;
+	    private final String flattenedAndExpanded;
+
+	    private AnalysedQuery(List<String> tokens, String flattened, String flattenedAndExpanded) {
+	        this.tokens = tokens;
+	        this.flattened = flattened;
+	        this.flattenedAndExpanded = flattenedAndExpanded;
+	    }
+
+	    // the flattened forms are of the whole query whichever tokens are kept
+	    private AnalysedQuery truncatedTo(int maxTokens) {
+	        if (tokens.size() <= maxTokens) {
+	            return this;
+	        }
+	        return new AnalysedQuery(tokens.subList(0, maxTokens), flattened, flattenedAndExpanded);
+	    }
+	}
+
+	private static final class StringBuilderThreadLocal extends ThreadLocal<StringBuilder> {
+
+	    @Override
+	    protected StringBuilder initialValue() {
+	        return new StringBuilder(64);
+	    }
 	}
 }
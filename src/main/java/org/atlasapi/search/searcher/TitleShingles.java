@@ -0,0 +1,69 @@
+package org.atlasapi.search.searcher;
+
+import java.util.List;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.shingle.ShingleFilter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import com.google.common.base.Joiner;
+
+/**
+ * Fields holding every run of two and of three adjacent tokens of a title
+ * field, so that the titles with the words of a query of several words next to
+ * each other and in order are found by looking up the runs of its own tokens
+ * rather than by a conjunction of per-token prefix and fuzzy clauses. Every
+ * pair of the query's adjacent tokens must match, and each matching triple
+ * scores the hit higher.
+ *
+ * Titles are shingled as written, without synonyms. Documents indexed with the
+ * fields are marked, so an index built without them is queried as before until
+ * all its content has been indexed again.
+ */
+final class TitleShingles {
+
+    private static final int MAX_SHINGLE_SIZE = 3;
+    private static final String FIELD_SUFFIX = "-shingles";
+    private static final Joiner SEPARATOR = Joiner.on(ShingleFilter.TOKEN_SEPARATOR);
+
+    private final SchemaMarker marker = new SchemaMarker("shingles-" + MAX_SHINGLE_SIZE);
+
+    /**
+     * @return the field holding the shingles of the tokens of the given one
+     */
+    static String of(String field) {
+        return field + FIELD_SUFFIX;
+    }
+
+    SchemaMarker marker() {
+        return marker;
+    }
+
+    TokenStream shingles(TokenStream tokens) {
+        ShingleFilter shingles = new ShingleFilter(tokens, MAX_SHINGLE_SIZE);
+        shingles.setOutputUnigrams(false);
+        return shingles;
+    }
+
+    /**
+     * @param tokens at least two, analysed as titles are
+     */
+    static Query query(List<String> tokens, String field) {
+        BooleanQuery query = new BooleanQuery();
+        for (int i = 0; i + 2 <= tokens.size(); i++) {
+            query.add(shingle(tokens, i, 2, field), Occur.MUST);
+        }
+        for (int i = 0; i + MAX_SHINGLE_SIZE <= tokens.size(); i++) {
+            query.add(shingle(tokens, i, MAX_SHINGLE_SIZE, field), Occur.SHOULD);
+        }
+        return query;
+    }
+
+    private static Query shingle(List<String> tokens, int start, int size, String field) {
+        return new TermQuery(new Term(of(field), SEPARATOR.join(tokens.subList(start, start + size))));
+    }
+}
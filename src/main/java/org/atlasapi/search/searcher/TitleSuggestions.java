@@ -0,0 +1,118 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+import org.atlasapi.media.entity.Publisher;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Completes title prefixes from {@link SegmentSuggestions} held for each segment.
+ * They are keyed on the segment's core, so they are only loaded for segments
+ * new to a generation, and are dropped once a segment is no longer referenced.
+ * Each segment's suggestions are ranked again the first time they're asked for
+ * in a new hour.
+ */
+final class TitleSuggestions {
+
+    private final Cache<Object, SegmentSuggestions> segments = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+    private final RankingColumns columns;
+    private final PriorityBroadcasts priorityBroadcasts;
+
+    TitleSuggestions(RankingColumns columns, PriorityBroadcasts priorityBroadcasts) {
+        this.columns = checkNotNull(columns);
+        this.priorityBroadcasts = checkNotNull(priorityBroadcasts);
+    }
+
+    /**
+     * Loads and ranks the suggestions of any segments which don't have them
+     * yet, so the first completions from a new generation aren't held up. Does
+     * nothing until completions have first been asked for.
+     */
+    void warm(SegmentSlice slice, int hour) throws IOException {
+        if (segments.size() == 0) {
+            return;
+        }
+        for (int i = 0; i < slice.size(); i++) {
+            suggestionsFor(slice.segment(i), hour);
+        }
+    }
+
+    /**
+     * @param flattenedPrefix a prefix flattened as titles are when indexed
+     * @param filter the docs the search's other filters allow, if it has any
+     * @param hour the hour since the epoch to rank completions as of
+     * @return the doc ids of the best completions, best first
+     */
+    int[] suggest(SegmentSlice slice, String flattenedPrefix, Set<Publisher> publishers,
+            Optional<? extends Filter> filter, int hour, int limit) throws IOException {
+        boolean[] allowedPublishers = new boolean[Publisher.values().length];
+        for (Publisher publisher : publishers) {
+            allowedPublishers[publisher.ordinal()] = true;
+        }
+        SuggestionQueue queue = new SuggestionQueue(limit);
+        for (int i = 0; i < slice.size(); i++) {
+            IndexReader segment = slice.segment(i);
+            Optional<OpenBitSet> allowedDocs = filter.isPresent()
+                    ? Optional.of(bits(filter.get().getDocIdSet(segment), segment.maxDoc()))
+                    : Optional.<OpenBitSet>absent();
+            suggestionsFor(segment, hour).suggest(flattenedPrefix, allowedPublishers, allowedDocs, segment,
+                    slice.docStart(i), queue);
+        }
+        return queue.docs();
+    }
+
+    private static OpenBitSet bits(DocIdSet docIdSet, int maxDoc) throws IOException {
+        if (docIdSet instanceof OpenBitSet) {
+            return (OpenBitSet) docIdSet;
+        }
+        OpenBitSet bits = new OpenBitSet(maxDoc);
+        DocIdSetIterator docs = docIdSet == null ? null : docIdSet.iterator();
+        if (docs != null) {
+            for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+                bits.fastSet(doc);
+            }
+        }
+        return bits;
+    }
+
+    private SegmentSuggestions suggestionsFor(final IndexReader segment, int hour) throws IOException {
+        SegmentSuggestions suggestions;
+        try {
+            suggestions = segments.get(segment.getFieldCacheKey(), new Callable<SegmentSuggestions>() {
+
+                @Override
+                public SegmentSuggestions call() throws IOException {
+                    return SegmentSuggestions.load(segment);
+                }
+            });
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+        if (!suggestions.isRankedFor(hour)) {
+            synchronized (suggestions) {
+                if (!suggestions.isRankedFor(hour)) {
+                    suggestions.rank(hour, columns.forSegment(segment),
+                            priorityBroadcasts.boosted(Optional.<String>absent(), hour).docs(segment));
+                }
+            }
+        }
+        return suggestions;
+    }
+}
@@ -0,0 +1,97 @@
+package org.atlasapi.search.searcher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+/**
+ * Groups of words which a title may use interchangeably, such as an
+ * abbreviation and the word it stands for. Titles are indexed with each word
+ * of a group also standing for the others, so a search for any of them finds
+ * the title.
+ *
+ * A dictionary is written one group per line, its words separated by commas.
+ * Words are single tokens, matched lower cased; blank lines and lines starting
+ * with '#' are ignored.
+ */
+public final class TitleSynonyms {
+
+    private static final Splitter WORDS = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final TitleSynonyms DEFAULTS = parse(ImmutableList.of("dr, doctor", "rd, road"));
+
+    // every word of each group, to the other words of its group
+    private final Map<String, List<String>> alternatives;
+
+    private TitleSynonyms(Map<String, List<String>> alternatives) {
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * @return the abbreviations titles have always been searchable by
+     */
+    public static TitleSynonyms defaults() {
+        return DEFAULTS;
+    }
+
+    public static TitleSynonyms fromFile(File dictionary) throws IOException {
+        return parse(Files.readLines(dictionary, Charsets.UTF_8));
+    }
+
+    static TitleSynonyms parse(Iterable<String> lines) {
+        Map<String, List<String>> alternatives = Maps.newLinkedHashMap();
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            Set<String> group = Sets.newLinkedHashSet();
+            for (String word : WORDS.split(trimmed.toLowerCase())) {
+                group.add(word);
+            }
+            checkArgument(group.size() > 1, "Synonym group '%s' needs at least two words", trimmed);
+            for (String word : group) {
+                checkArgument(!alternatives.containsKey(word), "'%s' is in more than one synonym group", word);
+                alternatives.put(word, ImmutableList.copyOf(Sets.difference(group, ImmutableSet.of(word))));
+            }
+        }
+        return new TitleSynonyms(ImmutableMap.copyOf(alternatives));
+    }
+
+    /**
+     * @param word a lower cased token
+     * @return the other words of its group, or none
+     */
+    List<String> alternativesOf(String word) {
+        List<String> others = alternatives.get(word);
+        return others != null ? others : ImmutableList.<String>of();
+    }
+
+    /**
+     * @return the words whose alternatives differ between the dictionaries, so
+     *         the titles which must be indexed again when one replaces the other
+     *         are those with any of them
+     */
+    Set<String> changedWords(TitleSynonyms other) {
+        Set<String> changed = Sets.newHashSet();
+        for (String word : Sets.union(alternatives.keySet(), other.alternatives.keySet())) {
+            if (!Objects.equal(alternativesOf(word), other.alternativesOf(word))) {
+                changed.add(word);
+            }
+        }
+        return changed;
+    }
+}
@@ -1,6 +1,7 @@
 package org.atlasapi.search.view;
 
 import java.io.IOException;
+import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -10,6 +11,7 @@ import org.atlasapi.search.model.SearchResultsError;
 
 import com.google.common.base.Charsets;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.metabroadcast.common.http.HttpStatusCode;
 import com.metabroadcast.common.media.MimeType;
@@ -26,6 +28,21 @@ public class JsonSearchResultsView implements SearchResultsView {
 		response.getOutputStream().write(gson.toJson(results).getBytes(Charsets.UTF_8));
 	}
 
+	/**
+	 * Renders an array of each results object, in order.
+	 */
+	@Override
+	public void render(List<SearchResults> results, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		JsonArray array = new JsonArray();
+		for (SearchResults result : results) {
+			array.add(gson.toJsonTree(result));
+		}
+		response.setStatus(HttpStatusCode.OK.code());
+		response.setContentType(MimeType.APPLICATION_JSON.toString());
+		response.setCharacterEncoding(Charsets.UTF_8.toString());
+		response.getOutputStream().write(gson.toJson(array).getBytes(Charsets.UTF_8));
+	}
+
 	@Override
 	public void renderError(HttpServletRequest request, HttpServletResponse response, SearchResultsError error) throws IOException {
 		response.setStatus(error.getCode().code());
@@ -1,6 +1,7 @@
 package org.atlasapi.search.view;
 
 import java.io.IOException;
+import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -12,6 +13,8 @@ public interface SearchResultsView {
 
 	void render(SearchResults results, HttpServletRequest request, HttpServletResponse response) throws IOException;
 
+	void render(List<SearchResults> results, HttpServletRequest request, HttpServletResponse response) throws IOException;
+
 	void renderError(HttpServletRequest request, HttpServletResponse response, SearchResultsError error) throws IOException;
 
 }
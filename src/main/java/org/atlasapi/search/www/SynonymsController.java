@@ -0,0 +1,80 @@
+package org.atlasapi.search.www;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.metabroadcast.common.http.HttpStatusCode;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.atlasapi.media.entity.Described;
+import org.atlasapi.media.entity.Item;
+import org.atlasapi.persistence.content.ContentResolver;
+import org.atlasapi.search.Utils;
+import org.atlasapi.search.searcher.LuceneContentIndex;
+import org.atlasapi.search.searcher.TitleSynonyms;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reloads the synonym dictionary from its file and indexes again the content
+ * whose titles have words with different synonyms. Items in a container are
+ * indexed again with it, as that's how they're given its title.
+ */
+public class SynonymsController extends HttpServlet {
+
+    private static final Log log = LogFactory.getLog(SynonymsController.class);
+
+    private static final long serialVersionUID = 1L;
+
+    private final File dictionary;
+    private final ContentResolver contentResolver;
+    private final LuceneContentIndex index;
+
+    public SynonymsController(File dictionary, ContentResolver contentResolver, LuceneContentIndex index) {
+        this.dictionary = checkNotNull(dictionary);
+        this.contentResolver = checkNotNull(contentResolver);
+        this.index = checkNotNull(index);
+    }
+
+    @Override
+    public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        log.info(Utils.fullRequestURL(request));
+        TitleSynonyms synonyms;
+        try {
+            synonyms = TitleSynonyms.fromFile(dictionary);
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpStatusCode.BAD_REQUEST.code());
+            response.getWriter().write(e.getMessage());
+            return;
+        }
+        Set<String> affected = index.replaceSynonyms(synonyms);
+        log.info("Reloaded synonyms from " + dictionary + ", indexing " + affected.size() + " documents again");
+
+        ImmutableSet.Builder<String> toIndex = ImmutableSet.builder();
+        for (Described content : resolve(affected)) {
+            if (content instanceof Item && ((Item) content).getContainer() != null) {
+                toIndex.add(((Item) content).getContainer().getUri());
+            } else {
+                toIndex.add(content.getCanonicalUri());
+            }
+        }
+        index.beforeContentChange();
+        index.contentChange(resolve(toIndex.build()));
+        index.afterContentChange();
+        response.setStatus(HttpStatusCode.OK.code());
+        response.getWriter().write("Indexed " + affected.size() + " documents again");
+    }
+
+    private Iterable<Described> resolve(Set<String> uris) {
+        if (uris.isEmpty()) {
+            return ImmutableSet.of();
+        }
+        return Iterables.filter(contentResolver.findByCanonicalUris(uris).getAllResolvedResults(), Described.class);
+    }
+}
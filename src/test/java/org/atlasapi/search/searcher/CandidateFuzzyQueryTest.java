@@ -0,0 +1,129 @@
+package org.atlasapi.search.searcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class CandidateFuzzyQueryTest {
+
+    private static final String FIELD = "title";
+    private static final List<String> WORDS = ImmutableList.of("eastenders", "spooks", "spooky", "doctor", "dragons",
+            "english", "cats", "newsnight", "panorama", "holby", "casualty", "question", "time", "caf\u00e9s", "gardeners");
+
+    private final FuzzyCandidates candidates = new FuzzyCandidates();
+    private final FuzzyExpansions expansions = new FuzzyExpansions();
+
+    @Test
+    public void testRewritesToTheSameTermsAsFuzzyQuery() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(), MaxFieldLength.UNLIMITED);
+        Random random = new Random(42);
+        List<String> misspellings = Lists.newArrayList();
+        for (int i = 0; i < 2000; i++) {
+            String misspelt = misspell(WORDS.get(random.nextInt(WORDS.size())), random);
+            misspellings.add(misspelt);
+            addDocument(writer, misspelt);
+            if (i % 700 == 0) {
+                writer.commit();
+            }
+        }
+        writer.close();
+
+        IndexReader reader = IndexReader.open(directory, true);
+        List<String> queries = Lists.newArrayList(WORDS);
+        queries.addAll(misspellings.subList(0, 100));
+        queries.add("eastendersspooks");
+        for (String text : queries) {
+            for (float minimumSimilarity : new float[] { 0.65f, 0.8f }) {
+                Term term = new Term(FIELD, text);
+                Query expected = new FuzzyQuery(term, minimumSimilarity, FuzzyCandidates.PREFIX_LENGTH).rewrite(reader);
+                Query actual = new CandidateFuzzyQuery(candidates, FuzzyPruning.none(), expansions, term, minimumSimilarity).rewrite(reader);
+                assertThat(text, actual, is(expected));
+            }
+        }
+        assertThat(new CandidateFuzzyQuery(candidates, FuzzyPruning.none(), expansions, new Term(FIELD, "spooks"), 0.65f).rewrite(reader), is(instanceOf(BooleanQuery.class)));
+    }
+
+    @Test
+    public void testPruningNarrowsWellAttestedTokensAndCapsShortOnes() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(), MaxFieldLength.UNLIMITED);
+        for (String title : ImmutableList.of("spooks", "spooks", "spooky", "spoke", "spoks", "spook", "spot")) {
+            addDocument(writer, title);
+        }
+        writer.close();
+        IndexReader reader = IndexReader.open(directory, true);
+        FuzzyPruning pruning = FuzzyPruning.of(2, 4, 2);
+
+        Query wellAttested = new CandidateFuzzyQuery(candidates, pruning, expansions, new Term(FIELD, "spooks"), 0.65f).rewrite(reader);
+        assertThat(terms(wellAttested), is((Set<String>) ImmutableSet.of("spooks")));
+        assertThat(expansions.narrowedClauses(), is(1L));
+
+        Query shortToken = new CandidateFuzzyQuery(candidates, pruning, expansions, new Term(FIELD, "spok"), 0.65f).rewrite(reader);
+        assertThat(terms(new CandidateFuzzyQuery(candidates, FuzzyPruning.none(), expansions, new Term(FIELD, "spok"), 0.65f).rewrite(reader)), 
+                is((Set<String>) ImmutableSet.of("spoke", "spoks", "spook", "spot")));
+        assertThat(terms(shortToken), is((Set<String>) ImmutableSet.of("spoke", "spoks")));
+        assertThat(expansions.cappedClauses(), is(1L));
+        assertThat(TitleQueryBuilder.clauseCount(shortToken), is(2));
+    }
+
+    private Set<String> terms(Query rewritten) {
+        Set<String> terms = Sets.newHashSet();
+        for (BooleanClause clause : ((BooleanQuery) rewritten).getClauses()) {
+            terms.add(((TermQuery) clause.getQuery()).getTerm().text());
+        }
+        return terms;
+    }
+
+    private String misspell(String word, Random random) {
+        StringBuilder misspelt = new StringBuilder(word);
+        int edits = random.nextInt(4);
+        for (int i = 0; i < edits; i++) {
+            int position = 1 + random.nextInt(misspelt.length() - 1);
+            char c = (char) ('a' + random.nextInt(26));
+            switch (random.nextInt(3)) {
+            case 0:
+                misspelt.insert(position, c);
+                break;
+            case 1:
+                misspelt.setCharAt(position, c);
+                break;
+            default:
+                if (misspelt.length() > 3) {
+                    misspelt.deleteCharAt(position);
+                }
+            }
+        }
+        return misspelt.toString();
+    }
+
+    private void addDocument(IndexWriter writer, String title) throws Exception {
+        Document document = new Document();
+        document.add(new Field(FIELD, title, Field.Store.NO, Field.Index.NOT_ANALYZED));
+        writer.addDocument(document);
+    }
+}
@@ -3,10 +3,11 @@ package org.atlasapi.search.searcher;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
-import static org.junit.Assert.assertTrue;
-import static org.junit.Assert.assertFalse;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 
 import java.math.BigInteger;
+import java.util.Set;
 
 import org.atlasapi.media.channel.ChannelGroup;
 import org.atlasapi.media.channel.ChannelGroupResolver;
@@ -14,8 +15,6 @@ import org.atlasapi.media.channel.ChannelResolver;
 import org.atlasapi.media.channel.Region;
 import org.atlasapi.media.channel.Channel;
 import org.atlasapi.media.channel.ChannelNumbering;
-import org.atlasapi.media.entity.Broadcast;
-import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -23,6 +22,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
 import com.metabroadcast.common.base.Maybe;
 import com.metabroadcast.common.ids.SubstitutionTableNumberCodec;
 
@@ -30,9 +30,12 @@ import com.metabroadcast.common.ids.SubstitutionTableNumberCodec;
 public class ChannelGroupBroadcastChannelBoosterTest {
 
     private static final String BOOST_CHANNEL_URI = "http://channel.example.com";
+    private static final String OTHER_CHANNEL_URI = "http://anotherchannel.example.com/";
 
     private static final long CHANNEL_GROUP_ID = 12;
     private static final long CHANNEL_ID = 19;
+    private static final long OTHER_CHANNEL_GROUP_ID = 13;
+    private static final long OTHER_CHANNEL_ID = 20;
     
     @Mock
     private final ChannelGroupResolver channelGroupResolver = mock(ChannelGroupResolver.class);
@@ -66,17 +69,24 @@ public class ChannelGroupBroadcastChannelBoosterTest {
     }
     
     @Test
-    public void testBoostsBroadcastsOnPriorityChannel() {
-        Broadcast boostingBroadcast = new Broadcast(BOOST_CHANNEL_URI, new DateTime().plusMinutes(30), new DateTime().plusHours(1));
-        assertTrue(booster.shouldBoost(boostingBroadcast));
-        
-        Broadcast nonBoostingBroadcast = new Broadcast("http://anotherchannel.example.com/", new DateTime().plusMinutes(30), new DateTime().plusHours(1));
-        assertFalse(booster.shouldBoost(nonBoostingBroadcast));
+    public void testBoostsChannelsInPriorityChannelGroup() {
+        assertThat(booster.priorityChannels(), is((Set<String>) ImmutableSet.of(BOOST_CHANNEL_URI)));
     }
     
     @Test
-    public void testDoesntBoostOldBroadcastsOnPriorityChannel() {
-        Broadcast boostingBroadcast = new Broadcast(BOOST_CHANNEL_URI, new DateTime().minusDays(30), new DateTime().minusDays(29));
-        assertFalse(booster.shouldBoost(boostingBroadcast));
+    public void testBoostsChannelsInOtherChannelGroupsWhenAsked() {
+        ChannelGroup otherGroup = new Region();
+        otherGroup.addChannelNumbering(ChannelNumbering.builder()
+                .withChannel(OTHER_CHANNEL_ID)
+                .withChannelNumber("102")
+                .withChannelGroup(OTHER_CHANNEL_GROUP_ID)
+                .build());
+        Channel otherChannel = Channel.builder().withUri(OTHER_CHANNEL_URI).build();
+        when(channelGroupResolver.channelGroupFor(OTHER_CHANNEL_GROUP_ID)).thenReturn(Optional.of(otherGroup));
+        when(channelResolver.fromId(OTHER_CHANNEL_ID)).thenReturn(Maybe.just(otherChannel));
+        
+        String otherGroupId = codec.encode(BigInteger.valueOf(OTHER_CHANNEL_GROUP_ID));
+        assertThat(booster.priorityChannels(otherGroupId), is((Set<String>) ImmutableSet.of(OTHER_CHANNEL_URI)));
+        assertThat(booster.priorityChannels(), is((Set<String>) ImmutableSet.of(BOOST_CHANNEL_URI)));
     }
 }
@@ -0,0 +1,61 @@
+package org.atlasapi.search.searcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.junit.Test;
+
+import com.metabroadcast.common.time.TimeMachine;
+
+public class CurrentBroadcastsTest {
+
+    private static final Term ITEMS = new Term("isContainer", "F");
+    private static final long MILLIS_IN_HOUR = 60 * 60 * 1000;
+
+    private final DateTime now = new DateTime(2014, 6, 1, 12, 30, 0, 0, DateTimeZone.UTC);
+    private final int nowHour = (int) (now.getMillis() / MILLIS_IN_HOUR);
+    private final TimeMachine clock = new TimeMachine(now);
+    private final CurrentBroadcasts currentBroadcasts = new CurrentBroadcasts(new RankingColumns(), new TermFilterCache(), ITEMS, clock);
+
+    @Test
+    public void testItemsAreCurrentByTheHourTheyAreSearchedIn() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new StandardAnalyzer(Version.LUCENE_30), MaxFieldLength.UNLIMITED);
+        addDocument(writer, "F", nowHour - CurrentBroadcasts.WINDOW_HOURS + 1);
+        addDocument(writer, "F", nowHour + 24);
+        addDocument(writer, "T", nowHour);
+        addDocument(writer, "F", 0);
+        writer.close();
+        IndexSearcher searcher = new IndexSearcher(IndexReader.open(directory, true));
+
+        assertThat(searcher.search(new MatchAllDocsQuery(), currentBroadcasts.filter(), 10).totalHits, is(2));
+
+        clock.jumpForward(Duration.standardHours(1));
+        assertThat(searcher.search(new MatchAllDocsQuery(), currentBroadcasts.filter(), 10).totalHits, is(1));
+
+        clock.jumpForward(Duration.standardDays(30));
+        assertThat(searcher.search(new MatchAllDocsQuery(), currentBroadcasts.filter(), 10).totalHits, is(0));
+    }
+
+    private void addDocument(IndexWriter writer, String isContainer, int broadcastHour) throws Exception {
+        Document doc = new Document();
+        doc.add(new Field(ITEMS.field(), isContainer, Field.Store.NO, Field.Index.NOT_ANALYZED));
+        doc.add(new NumericField(LuceneContentIndex.FIELD_BROADCAST_HOUR_TS, Field.Store.YES, true).setIntValue(broadcastHour));
+        writer.addDocument(doc);
+    }
+}
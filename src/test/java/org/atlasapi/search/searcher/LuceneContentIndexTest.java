@@ -20,6 +20,8 @@ import static org.atlasapi.media.entity.testing.VersionTestDataBuilder.version;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
@@ -29,7 +31,6 @@ import java.util.Set;
 import org.atlasapi.media.channel.Channel;
 import org.atlasapi.media.channel.ChannelResolver;
 import org.atlasapi.media.entity.Brand;
-import org.atlasapi.media.entity.Broadcast;
 import org.atlasapi.media.entity.Described;
 import org.atlasapi.media.entity.Identified;
 import org.atlasapi.media.entity.Item;
@@ -41,6 +42,7 @@ import org.atlasapi.persistence.content.DummyKnownTypeContentResolver;
 import org.atlasapi.search.model.SearchQuery;
 import org.atlasapi.search.model.SearchResults;
 import org.joda.time.Duration;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -66,6 +68,8 @@ public class LuceneContentIndexTest {
 
     private static final ImmutableSet<Publisher> ALL_PUBLISHERS = ImmutableSet.copyOf(Publisher.values());
     private static final String ADULT_CHANNEL_URI = "http://an.adult.channel.xxx/";
+    private static final String PRIORITY_CHANNEL_URI = "http://www.bbc.co.uk/bbcfour";
+    private static final String OTHER_CHANNEL_GROUP = "other";
 
     private @Mock ChannelResolver channelResolver;
     
@@ -75,6 +79,9 @@ public class LuceneContentIndexTest {
     private final Channel bbcOne = new Channel(Publisher.METABROADCAST, "BBC One", "bbcone", 
             false, MediaType.VIDEO, "http://www.bbc.co.uk/bbcone");
     
+    private final Channel bbcFour = new Channel(Publisher.METABROADCAST, "BBC Four", "bbcfour", 
+            false, MediaType.VIDEO, PRIORITY_CHANNEL_URI);
+    
     private final Brand dragonsDen = brand("/den", "Dragon's den");
     private final Item dragonsDenItem = complexItem().withBrand(dragonsDen).withVersions(broadcast().buildInVersion()).build();
     private final Brand doctorWho = brand("/doctorwho", "Doctor Who");
@@ -128,7 +135,8 @@ public class LuceneContentIndexTest {
             .withVersions(version().withBroadcasts(broadcast().withStartTime(new SystemClock().now().minus(Duration.standardDays(9))).build()).build()).build();
     
     private final Item blackMirrorLastWeek = complexItem().withTitle("Black Mirror").withUri("/item/blackmirror-last-week")
-            .withVersions(version().withBroadcasts(broadcast().withStartTime(new SystemClock().now().minus(Duration.standardDays(6))).build()).build()).build();
+            .withVersions(version().withBroadcasts(broadcast().withStartTime(new SystemClock().now().minus(Duration.standardDays(6))).build(),
+                    broadcast().withChannel(PRIORITY_CHANNEL_URI).withStartTime(new SystemClock().now().plus(Duration.standardDays(21))).build()).build()).build();
     
     private final Item blackMirrorNextWeek = complexItem().withTitle("Black Mirror").withUri("/item/blackmirror-next-week")
             .withVersions(version().withBroadcasts(broadcast().withStartTime(new SystemClock().now().plus(Duration.standardDays(2))).build()).build()).build();
@@ -154,26 +162,31 @@ public class LuceneContentIndexTest {
            brasseyeItem, scienceItem, theApprenticeItem, theWireItem, wiringLights, blackMirrorVeryOld, blackMirrorLastWeek, blackMirrorNextWeek, sentencingEpisode, adultEpisode);
     private final List<Item> itemsUpdated = Arrays.asList(u2);
 
+    private final List<LuceneContentIndex> indexes = Lists.newArrayList();
+    private final List<File> luceneDirs = Lists.newArrayList();
     private LuceneContentIndex searcher;
     private DummyKnownTypeContentResolver contentResolver;
 
     @Before
     public void setUp() throws Exception {
         Iterable<Described> allContent = Iterables.<Described>concat(brands, items, itemsUpdated);
-        File luceneDir = Files.createTempDir();
-        luceneDir.deleteOnExit();
         adultChannel.setAdult(true);
         
         contentResolver = new DummyKnownTypeContentResolver().respondTo(allContent);
         when(channelResolver.fromUri(ADULT_CHANNEL_URI)).thenReturn(Maybe.just(adultChannel));
-        when(channelResolver.fromUri("bbcone")).thenReturn(Maybe.just(bbcOne));            
-        searcher = new LuceneContentIndex(luceneDir, 
-                                contentResolver, 
-                                new DummyBroadcastBooster(ImmutableSet.of(Iterables.getOnlyElement(Item.FLATTEN_BROADCASTS.apply(blackMirrorLastWeek)))),
-                                channelResolver,
-                                "/tmp");
-        searcher.contentChange(Iterables.<Described>concat(brands, Iterables.filter(items, IS_TOP_LEVEL_ITEM)));
-        searcher.afterContentChange();
+        when(channelResolver.fromUri("bbcone")).thenReturn(Maybe.just(bbcOne));
+        when(channelResolver.fromUri(PRIORITY_CHANNEL_URI)).thenReturn(Maybe.just(bbcFour));            
+        searcher = indexWith(indexBuilder());
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        for (LuceneContentIndex index : indexes) {
+            index.close();
+        }
+        for (File luceneDir : luceneDirs) {
+            delete(luceneDir);
+        }
     }
 
     @Test
@@ -273,6 +286,26 @@ public class LuceneContentIndexTest {
         check(searcher.search(SearchQuery.builder("east").withPublishers(ImmutableSet.of(Publisher.ARCHIVE_ORG, Publisher.YOUTUBE)).withTitleWeighting(1.0f).build()), east);
     }
 
+    @Test
+    public void testShardedIndexMatchesUnshardedIndex() throws Exception {
+        LuceneContentIndex sharded = indexWith(indexBuilder()
+                .withShardLayout(ShardLayout.fromSpec("archive:ARCHIVE_ORG;youtube:YOUTUBE")));
+        Brand east = new Brand("/east", "curie", Publisher.ARCHIVE_ORG);
+        east.setTitle("east");
+        Item eastItem = complexItem().withVersions(broadcast().buildInVersion()).withBrand(east).build();
+        contentResolver.respondTo(ImmutableList.of(east, eastItem));
+        for (LuceneContentIndex index : ImmutableList.of(searcher, sharded)) {
+            index.contentChange(ImmutableList.of(east));
+            index.afterContentChange();
+        }
+        
+        SearchQuery archive = SearchQuery.builder("east").withPublishers(ImmutableSet.of(Publisher.ARCHIVE_ORG)).withTitleWeighting(1.0f).build();
+        check(sharded.search(archive), east);
+        for (SearchQuery query : ImmutableList.of(title("east"), currentWeighted("apprent"), title("Sentencing"))) {
+            assertThat(sharded.search(query).toUris(), is(searcher.search(query).toUris()));
+        }
+    }
+    
     @Test
     public void testUsesPrefixSearchForShortSearches() throws Exception {
         check(searcher.search(title("Dr")), doctorWho, dragonsDen);
@@ -343,6 +376,332 @@ public class LuceneContentIndexTest {
                 .withBroadcastWeighting(10.0f).withTitleWeighting(1.0f).withCurrentBroadcastsOnly(true).build()), blackMirrorNextWeek, blackMirrorLastWeek);
     }
     
+    @Test
+    public void testPriorityChannelGroupOfRequestReplacesTheDefault() {
+        SearchQuery query = SearchQuery.builder("Black Mirror").withPublishers(ALL_PUBLISHERS)
+                .withBroadcastWeighting(10.0f).withTitleWeighting(1.0f).withPriorityChannelWeighting(5.0f).withCurrentBroadcastsOnly(true).build();
+        check(searcher.search(query, SearchOptions.builder().withPriorityChannelGroup(OTHER_CHANNEL_GROUP).build()), 
+                blackMirrorNextWeek, blackMirrorLastWeek);
+        check(searcher.search(query, SearchOptions.defaults()), blackMirrorLastWeek, blackMirrorNextWeek);
+    }
+    
+    @Test
+    public void testNearRealTimeReopenMakesChangesSearchableWithoutReload() throws Exception {
+        LuceneContentIndex nrtIndex = indexWith(indexBuilder().withNearRealTimeReopen(Duration.standardHours(1)));
+        Brand sherlock = brand("/sherlock", "Sherlock");
+        Item sherlockItem = complexItem().withVersions(broadcast().buildInVersion()).withBrand(sherlock).build();
+        contentResolver.respondTo(ImmutableList.of(sherlock, sherlockItem));
+        
+        nrtIndex.contentChange(ImmutableList.of(sherlock));
+        check(nrtIndex.search(title("sherlock")));
+        
+        nrtIndex.reopenIfChanged();
+        check(nrtIndex.search(title("sherlock")), sherlock);
+    }
+    
+    @Test
+    public void testCursorPagesThroughResults() {
+        SearchQuery firstPage = SearchQuery.builder("eas").withSelection(Selection.limitedTo(2))
+                .withPublishers(ALL_PUBLISHERS).withTitleWeighting(1.0f).isTopLevelOnly(true).build();
+        
+        PagedSearchResults first = (PagedSearchResults) searcher.search(firstPage);
+        check(first, eastenders, eastendersWeddings);
+        
+        PagedSearchResults second = (PagedSearchResults) searcher.search(firstPage, 
+                SearchOptions.builder().withCursor(SearchCursor.decode(first.getNext().get()).get()).build());
+        check(second, politicsEast);
+        assertFalse(second.getNext().isPresent());
+    }
+    
+    @Test
+    public void testCursorFromGenerationNoLongerRetainedIsRejected() {
+        SearchQuery firstPage = SearchQuery.builder("eas").withSelection(Selection.limitedTo(2))
+                .withPublishers(ALL_PUBLISHERS).withTitleWeighting(1.0f).isTopLevelOnly(true).build();
+        PagedSearchResults first = (PagedSearchResults) searcher.search(firstPage);
+        
+        Brand eastEnds = new Brand("/eastends", "curie", Publisher.BBC);
+        eastEnds.setTitle("East Ends");
+        contentResolver.respondTo(ImmutableList.of(eastEnds, complexItem().withVersions(broadcast().buildInVersion())
+                .withBrand(eastEnds).build()));
+        searcher.contentChange(ImmutableList.of(eastEnds));
+        searcher.afterContentChange();
+        
+        try {
+            searcher.search(firstPage, 
+                    SearchOptions.builder().withCursor(SearchCursor.decode(first.getNext().get()).get()).build());
+            fail("Expected the cursor to have expired");
+        } catch (CursorExpiredException e) {
+        }
+    }
+    
+    @Test
+    public void testExhaustedTimeBudgetGivesPartialResults() {
+        PagedSearchResults results = (PagedSearchResults) searcher.search(title("eas"), 
+                SearchOptions.builder().withTimeout(Duration.ZERO).build());
+        
+        assertTrue(results.isPartial());
+        assertFalse(results.getNext().isPresent());
+        assertThat(searcher.timeouts().duringRewrite(), is(1L));
+        check(results, eastenders, eastendersWeddings);
+        assertFalse(((PagedSearchResults) searcher.search(title("eas"))).isPartial());
+    }
+    
+    @Test
+    public void testBatchReturnsResultsOfEachQueryInOrder() {
+        SearchQuery multiplePublishers = SearchQuery.builder("eas").withPublishers(ALL_PUBLISHERS)
+                .withTitleWeighting(1.0f).isTopLevelOnly(true).build();
+        List<SearchQuery> queries = ImmutableList.of(title("dragon"), multiplePublishers, title("adult"), multiplePublishers);
+        
+        List<SearchResults> results = searcher.search(queries, SearchOptions.defaults());
+        
+        assertThat(results.size(), is(queries.size()));
+        for (int i = 0; i < queries.size(); i++) {
+            assertThat(results.get(i).toUris(), is(searcher.search(queries.get(i)).toUris()));
+        }
+    }
+    
+    @Test
+    public void testSuggestCompletesPrefixesBestRankedFirst() {
+        check(searcher.suggest(suggestion("sp", ALL_PUBLISHERS, 10).build()), spookyTheCat, spooks);
+        check(searcher.suggest(suggestion("Spook", ALL_PUBLISHERS, 1).build()), spookyTheCat);
+        check(searcher.suggest(suggestion("English", ALL_PUBLISHERS, 10).build()), englishForCats);
+        check(searcher.suggest(suggestion("sp", ImmutableSet.of(Publisher.C4), 10).build()));
+    }
+    
+    @Test
+    public void testSuggestAppliesTheSearchFilters() {
+        check(searcher.suggest(suggestion("ea", ALL_PUBLISHERS, 10).isTopLevelOnly(true).build()), 
+                eastenders, eastendersWeddings);
+        check(searcher.suggest(suggestion("ea", ALL_PUBLISHERS, 10).withType("container").build()), 
+                eastenders, eastendersWeddings);
+        check(searcher.suggest(suggestion("ea", ALL_PUBLISHERS, 10).withType("item").isTopLevelOnly(true).build()));
+        check(searcher.suggest(suggestion("sp", ALL_PUBLISHERS, 10).withType("container").build()));
+        check(searcher.suggest(suggestion("sp", ALL_PUBLISHERS, 10)
+                .withSpecializations(ImmutableList.of(Specialization.RADIO)).build()));
+    }
+    
+    private SearchQuery.Builder suggestion(String prefix, Set<Publisher> publishers, int limit) {
+        return SearchQuery.builder(prefix).withPublishers(publishers).withSelection(Selection.limitedTo(limit));
+    }
+    
+    @Test
+    public void testRewrittenQueryCacheMatchesUncachedSearchAcrossGenerations() throws Exception {
+        RewrittenQueryCache rewrittenQueries = new RewrittenQueryCache(100);
+        LuceneContentIndex cached = indexWith(indexBuilder().withRewrittenQueryCache(rewrittenQueries));
+        
+        List<SearchQuery> queries = ImmutableList.of(title("eastedners"), title("East  Enders"), currentWeighted("apprent"), 
+                title("drag den"), title("de"));
+        for (int i = 0; i < 2; i++) {
+            for (SearchQuery query : queries) {
+                assertThat(cached.search(query).toUris(), is(searcher.search(query).toUris()));
+            }
+        }
+        assertThat(rewrittenQueries.stats().hitCount(), is((long) queries.size()));
+        
+        Brand eastEnds = new Brand("/eastends", "curie", Publisher.BBC);
+        eastEnds.setTitle("East Ends");
+        Item eastEndsItem = complexItem().withVersions(broadcast().buildInVersion()).withBrand(eastEnds).build();
+        contentResolver.respondTo(ImmutableList.of(eastEnds, eastEndsItem));
+        for (LuceneContentIndex index : ImmutableList.of(searcher, cached)) {
+            index.contentChange(ImmutableList.of(eastEnds));
+            index.afterContentChange();
+        }
+        assertThat(cached.search(title("eastedners")).toUris(), is(searcher.search(title("eastedners")).toUris()));
+        assertTrue(cached.search(title("east ends")).toUris().contains(eastEnds.getCanonicalUri()));
+    }
+    
+    @Test
+    public void testCascadingTiersRankAsTheFullQueryDoes() throws Exception {
+        LuceneContentIndex cascading = indexWith(indexBuilder().withCascadingTiers());
+        
+        // exact matches which no fuzzy match could outscore
+        assertSamePages(cascading, firstHit("The Apprentice"));
+        assertSamePages(cascading, firstHit("east"));
+        assertThat(cascading.tiers().answeredBy(SearchTier.EXACT_OR_PREFIX), is(2L));
+        assertTrue(cascading.debug(firstHit("east")).startsWith("tier: EXACT_OR_PREFIX"));
+        
+        SearchQuery blackMirror = SearchQuery.builder("Black Mirror").withSelection(Selection.limitedTo(2))
+                .withPublishers(ALL_PUBLISHERS).withTitleWeighting(1.0f).withBroadcastWeighting(1.0f).isTopLevelOnly(false).build();
+        SearchQuery drag = SearchQuery.builder("drag").withSelection(Selection.limitedTo(1))
+                .withPublishers(ALL_PUBLISHERS).withTitleWeighting(1.0f).isTopLevelOnly(true).build();
+        SearchQuery secondDrag = SearchQuery.builder("drag").withSelection(new Selection(1, 1))
+                .withPublishers(ALL_PUBLISHERS).withTitleWeighting(1.0f).isTopLevelOnly(true).build();
+        for (SearchQuery query : ImmutableList.of(blackMirror, title("eastedners"), drag, secondDrag)) {
+            assertSamePages(cascading, query);
+        }
+        assertThat(cascading.tiers().answeredBy(SearchTier.EXACT_OR_PREFIX), is(2L));
+        assertThat(cascading.tiers().answeredBy(SearchTier.FULL), is(8L));
+    }
+    
+    @Test
+    public void testComplexityLimitsDegradeOrRejectLongTitles() throws Exception {
+        String longTitle = "The Story of Science: Power, Proof and Passion";
+        LuceneContentIndex truncating = indexWith(indexBuilder().withComplexityLimits(QueryComplexityLimits.of(2, 1000, QueryComplexityLimits.Policy.DEGRADE)));
+        check(truncating.search(title(longTitle)), science);
+        assertThat(truncating.degradations().withTokensTruncated(), is(1L));
+        assertThat(truncating.degradations().withFuzzyDropped(), is(0L));
+        
+        LuceneContentIndex exactOrPrefixOnly = indexWith(indexBuilder().withComplexityLimits(QueryComplexityLimits.of(2, 5, QueryComplexityLimits.Policy.DEGRADE)));
+        check(exactOrPrefixOnly.search(title("Eastenders")), eastenders, eastendersWeddings);
+        assertTrue(exactOrPrefixOnly.search(title("eastedners")).toUris().isEmpty());
+        assertThat(exactOrPrefixOnly.degradations().withFuzzyDropped(), is(2L));
+        assertThat(exactOrPrefixOnly.tiers().answeredBy(SearchTier.EXACT_OR_PREFIX), is(2L));
+        
+        LuceneContentIndex rejecting = indexWith(indexBuilder().withComplexityLimits(QueryComplexityLimits.of(2, 1000, QueryComplexityLimits.Policy.REJECT)));
+        check(rejecting.search(title("eastedners")), eastenders, eastendersWeddings);
+        try {
+            rejecting.search(title(longTitle));
+            fail("Expected " + longTitle + " to be rejected");
+        } catch (QueryTooComplexException e) {
+            assertThat(rejecting.degradations().rejectedQueries(), is(1L));
+        }
+    }
+    
+    @Test
+    public void testTitlesAreIndexedWithSynonymsAndReindexedWhenTheyChange() {
+        check(searcher.search(title("dr who")), doctorWho);
+        assertTrue(searcher.search(title("dr")).toUris().contains(doctorWho.getCanonicalUri()));
+        assertTrue(searcher.search(title("dragons lair")).toUris().isEmpty());
+        
+        Set<String> affected = searcher.replaceSynonyms(TitleSynonyms.parse(ImmutableList.of("dr, doctor", "den, lair")));
+        assertTrue(affected.contains(dragonsDen.getCanonicalUri()));
+        assertTrue(affected.contains(dragonsDenItem.getCanonicalUri()));
+        assertFalse(affected.contains(doctorWho.getCanonicalUri()));
+        
+        searcher.contentChange(ImmutableList.of(dragonsDen));
+        searcher.afterContentChange();
+        check(searcher.search(title("dragons lair")), dragonsDen);
+        check(searcher.search(title("dr who")), doctorWho);
+    }
+    
+    @Test
+    public void testPrefixFieldsMatchAsPrefixQueriesDo() throws Exception {
+        // short enough that longer prefixes still fall back to prefix queries
+        LuceneContentIndex prefixed = indexWith(indexBuilder().withPrefixFields(5));
+
+        for (String term : ImmutableList.of("de", "drag", "drag den", "east", "apprent", "dr who", "the apprentice")) {
+            assertThat(term, prefixed.search(title(term)).toUris(), is(searcher.search(title(term)).toUris()));
+            assertThat(term, prefixed.search(currentWeighted(term)).toUris(), is(searcher.search(currentWeighted(term)).toUris()));
+        }
+    }
+
+    @Test
+    public void testShinglesRankHitsOfAdjacentWordsHigher() throws Exception {
+        LuceneContentIndex shingled = indexWith(indexBuilder().withShingles());
+        Brand jackAndDee = brand("/jack-and-dee", "Jack and Dee");
+        Brand peepBehindTheShow = brand("/peep-behind", "Peep Behind the Show");
+        Item jackAndDeeItem = complexItem().withVersions(broadcast().buildInVersion()).withBrand(jackAndDee).build();
+        Item peepBehindTheShowItem = complexItem().withVersions(broadcast().buildInVersion()).withBrand(peepBehindTheShow).build();
+        contentResolver.respondTo(ImmutableList.of(jackAndDee, jackAndDeeItem, peepBehindTheShow, peepBehindTheShowItem));
+        for (LuceneContentIndex index : ImmutableList.of(searcher, shingled)) {
+            index.contentChange(ImmutableList.of(jackAndDee, peepBehindTheShow));
+            index.afterContentChange();
+        }
+
+        // the shorter title scores higher on the other clauses, the one with
+        // the words next to each other on its shingles
+        check(searcher.search(title("jack dee")), jackAndDee, theJackDeeShow);
+        check(shingled.search(title("jack dee")), theJackDeeShow, jackAndDee);
+        assertThat(shingled.tiers().answeredBy(SearchTier.FULL), is(1L));
+
+        // a first page which no title without the words next to each other
+        // could outscore is answered from the shingles, as the list ranks it
+        for (String term : ImmutableList.of("jack dee", "the jack dee show", "dragon's den", "peep show")) {
+            assertThat(term, shingled.search(firstHit(term)).toUris(), 
+                    is(shingled.search(title(term)).toUris().subList(0, 1)));
+        }
+        assertThat(shingled.tiers().answeredBy(SearchTier.SHINGLES), is(4L));
+
+        // words out of order, or not whole, are left to the full query
+        check(shingled.search(firstHit("drag den")), dragonsDen);
+        check(shingled.search(firstHit("show peep")), peepShow);
+        assertThat(shingled.tiers().answeredBy(SearchTier.FULL), is(7L));
+
+        // words apart rank after, by cursor or by offset
+        PagedSearchResults shingledMatch = (PagedSearchResults) shingled.search(firstHit("peep show"));
+        check(shingledMatch, peepShow);
+        check(shingled.search(firstHit("peep show"), SearchOptions.builder()
+                .withCursor(SearchCursor.decode(shingledMatch.getNext().get()).get()).build()), peepBehindTheShow);
+        check(shingled.search(SearchQuery.builder("peep show").withSelection(new Selection(1, 1))
+                .withPublishers(ALL_PUBLISHERS).withTitleWeighting(1.0f).isTopLevelOnly(true).build()), peepBehindTheShow);
+    }
+
+    @Test
+    public void testRankedPartitionAnswersSmallPagesAsTheWholeIndexDoes() throws Exception {
+        LuceneContentIndex ranked = indexWith(indexBuilder().withRankedPartition(10));
+
+        SearchQuery wide = SearchQuery.builder("e").withSelection(Selection.limitedTo(2))
+                .withPublishers(ALL_PUBLISHERS).withTitleWeighting(1.0f).withBroadcastWeighting(10.0f).build();
+        assertThat(ranked.search(wide).toUris(), is(searcher.search(wide).toUris()));
+        assertThat(ranked.tiers().answeredByRankedPartition(), is(1L));
+
+        // the oldest is outside the partition, so the page can't be filled from it
+        SearchQuery blackMirror = SearchQuery.builder("Black Mirror").withSelection(Selection.limitedTo(3))
+                .withPublishers(ALL_PUBLISHERS).withTitleWeighting(1.0f).withBroadcastWeighting(10.0f).build();
+        check(ranked.search(blackMirror), blackMirrorNextWeek, blackMirrorLastWeek, blackMirrorVeryOld);
+        assertThat(ranked.tiers().rankedPartitionFellShort(), is(1L));
+
+        // pages beyond the max hits search every doc
+        assertThat(ranked.search(title("e")).toUris(), is(searcher.search(title("e")).toUris()));
+        assertThat(ranked.tiers().answeredByRankedPartition() + ranked.tiers().rankedPartitionFellShort(), is(2L));
+    }
+
+    /**
+     * Asserts that the index gives the query the same page as the index
+     * without cascading tiers, and the same page after it by cursor.
+     */
+    private void assertSamePages(LuceneContentIndex index, SearchQuery query) {
+        PagedSearchResults expected = (PagedSearchResults) searcher.search(query);
+        PagedSearchResults actual = (PagedSearchResults) index.search(query);
+        assertThat(query.getTerm(), actual.toUris(), is(expected.toUris()));
+        assertThat(query.getTerm(), nextPage(index, query, actual), is(nextPage(searcher, query, expected)));
+    }
+
+    private static List<String> nextPage(LuceneContentIndex index, SearchQuery query, PagedSearchResults page) {
+        if (!page.getNext().isPresent()) {
+            return ImmutableList.of();
+        }
+        return index.search(query, SearchOptions.builder()
+                .withCursor(SearchCursor.decode(page.getNext().get()).get()).build()).toUris();
+    }
+
+    private static SearchQuery firstHit(String term) {
+        return SearchQuery.builder(term).withSelection(Selection.limitedTo(1))
+                .withPublishers(ALL_PUBLISHERS).withTitleWeighting(1.0f).isTopLevelOnly(true).build();
+    }
+
+    private LuceneContentIndex.Builder indexBuilder() {
+        File luceneDir = Files.createTempDir();
+        luceneDirs.add(luceneDir);
+        return LuceneContentIndex.builder(luceneDir, 
+                contentResolver, 
+                new DummyBroadcastBooster(),
+                channelResolver,
+                "/tmp");
+    }
+
+    /**
+     * @return the index built, holding the brands and top level items, which
+     *         is closed once the test is done
+     */
+    private LuceneContentIndex indexWith(LuceneContentIndex.Builder builder) {
+        LuceneContentIndex index = builder.build();
+        indexes.add(index);
+        index.contentChange(Iterables.<Described>concat(brands, Iterables.filter(items, IS_TOP_LEVEL_ITEM)));
+        index.afterContentChange();
+        return index;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+    
     @Test
     public void testAdultChannelNotIndexed() {
         check(searcher.search(title("adult")));
@@ -415,14 +774,14 @@ public class LuceneContentIndexTest {
     // TODO: Add tests for this
     private static class DummyBroadcastBooster implements BroadcastBooster {
 
-        private final Set<Broadcast> boost;
-        public DummyBroadcastBooster(Set<Broadcast> boost) {
-            this.boost = boost;
+        @Override
+        public Set<String> priorityChannels() {
+            return ImmutableSet.of(PRIORITY_CHANNEL_URI);
         }
         
         @Override
-        public boolean shouldBoost(Broadcast broadcast) {
-            return boost.contains(broadcast);
+        public Set<String> priorityChannels(String channelGroup) {
+            return ImmutableSet.of();
         }
         
     }
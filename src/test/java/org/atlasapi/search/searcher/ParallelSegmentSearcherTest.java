@@ -0,0 +1,81 @@
+package org.atlasapi.search.searcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+
+public class ParallelSegmentSearcherTest {
+
+    private static final String LENGTH = "length";
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testMatchesSerialSearchAcrossSegments() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new StandardAnalyzer(Version.LUCENE_30), MaxFieldLength.UNLIMITED);
+        for (int segment = 0; segment < 4; segment++) {
+            for (int i = 0; i < 5; i++) {
+                addDocument(writer, i % 2 == 0 ? "east enders" : "east", (segment * 7 + i) % 5);
+            }
+            writer.commit();
+        }
+        writer.close();
+        IndexSearcher searcher = new IndexSearcher(directory, true);
+        Query query = new TermQuery(new Term("title", "east"));
+
+        TitleLengthTopDocsCollector serial = new TitleLengthTopDocsCollector(LENGTH, 7);
+        searcher.search(query.weight(searcher), null, serial);
+        TopDocs expected = serial.topDocs(2, 5);
+
+        ParallelSegmentSearcher parallel = new ParallelSegmentSearcher(executor, 1, LENGTH);
+        SegmentSlice segments = new SearcherGeneration(searcher.getIndexReader(), 1).allSegments();
+        TopDocs actual = parallel.search(segments, query.weight(searcher), null, 7, Optional.<SearchCursor>absent(), 2, 5, QueryBudget.unlimited());
+
+        assertThat(actual.totalHits, is(expected.totalHits));
+        assertThat(docs(actual), is(docs(expected)));
+    }
+
+    private List<Integer> docs(TopDocs topDocs) {
+        List<Integer> docs = Lists.newArrayList();
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            docs.add(scoreDoc.doc);
+        }
+        return docs;
+    }
+
+    private void addDocument(IndexWriter writer, String title, int length) throws Exception {
+        Document document = new Document();
+        document.add(new Field("title", title, Field.Store.NO, Field.Index.ANALYZED));
+        document.add(new NumericField(LENGTH, Field.Store.NO, true).setIntValue(length));
+        writer.addDocument(document);
+    }
+}
@@ -0,0 +1,108 @@
+package org.atlasapi.search.searcher;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Compares matching a title prefix by enumerating the terms it starts, as a
+ * {@link PrefixQuery} does, with looking it up in a prefix field. Titles are
+ * made distinct terms by a numeric suffix, so short prefixes start many terms.
+ *
+ * Run from the IDE or with the test classpath, e.g.
+ * {@code mvn test-compile exec:java -Dexec.mainClass=org.atlasapi.search.searcher.PrefixFieldsBenchmark -Dexec.classpathScope=test}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrefixFieldsBenchmark {
+
+    private static final String FIELD = LuceneContentIndex.FIELD_CONTENT_TITLE;
+    private static final List<String> TITLES = ImmutableList.of("eastenders", "eastenders weddings", "the apprentice",
+            "dragons den", "euromillions draw", "black mirror", "doctor who", "the jack dee show", "question time");
+
+    @Param({ "e", "ea", "east", "dr" })
+    public String prefix;
+
+    @Param({ "100000" })
+    public int docs;
+
+    private final StandardAnalyzer analyzer = new StandardAnalyzer(Version.LUCENE_30);
+    private final PrefixFields prefixFields = new PrefixFields(5);
+    private RAMDirectory directory;
+    private IndexSearcher searcher;
+
+    @Setup
+    public void index() throws IOException {
+        directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, analyzer, MaxFieldLength.UNLIMITED);
+        for (int i = 0; i < docs; i++) {
+            String title = TITLES.get(i % TITLES.size()) + i;
+            Document doc = new Document();
+            doc.add(new Field(FIELD, title, Field.Store.NO, Field.Index.ANALYZED));
+            doc.add(new Field(PrefixFields.of(FIELD), prefixFields.prefixes(analyzer.tokenStream(FIELD, new StringReader(title)))));
+            writer.addDocument(doc);
+        }
+        writer.optimize();
+        writer.close();
+        searcher = new IndexSearcher(directory, true);
+    }
+
+    @TearDown
+    public void close() throws IOException {
+        searcher.close();
+        directory.close();
+    }
+
+    @Benchmark
+    public TopDocs prefixQuery() throws IOException {
+        PrefixQuery query = new PrefixQuery(new Term(FIELD, prefix));
+        query.setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_FILTER_REWRITE);
+        return searcher.search(query, 10);
+    }
+
+    @Benchmark
+    public TopDocs prefixField() throws IOException {
+        return searcher.search(prefixFields.prefixQuery(FIELD, prefix), 10);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PrefixFieldsBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,108 @@
+package org.atlasapi.search.searcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Set;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.Version;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.metabroadcast.common.time.TimeMachine;
+
+public class PriorityBroadcastsTest {
+
+    private static final String PRIORITY_CHANNEL = "http://priority.example.com";
+    private static final String OTHER_CHANNEL = "http://other.example.com";
+    private static final String OTHER_GROUP = "other";
+    private static final long MILLIS_IN_HOUR = 60 * 60 * 1000;
+
+    private final DateTime now = new DateTime(2014, 6, 1, 12, 30, 0, 0, DateTimeZone.UTC);
+    private final int nowHour = (int) (now.getMillis() / MILLIS_IN_HOUR);
+    private final TimeMachine clock = new TimeMachine(now);
+    private final PriorityBroadcasts priorityBroadcasts = new PriorityBroadcasts(new BroadcastBooster() {
+
+        @Override
+        public Set<String> priorityChannels() {
+            return ImmutableSet.of(PRIORITY_CHANNEL);
+        }
+
+        @Override
+        public Set<String> priorityChannels(String channelGroup) {
+            return OTHER_GROUP.equals(channelGroup) ? ImmutableSet.of(OTHER_CHANNEL) : ImmutableSet.<String>of();
+        }
+    }, new RankingColumns(), clock);
+
+    @Test
+    public void testDocsAreBoostedUntilTheHourTheirBroadcastEndsIn() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new StandardAnalyzer(Version.LUCENE_30), MaxFieldLength.UNLIMITED);
+        addDocument(writer, false, PriorityBroadcasts.term(PRIORITY_CHANNEL, nowHour));
+        addDocument(writer, false, PriorityBroadcasts.term(PRIORITY_CHANNEL, nowHour + 2),
+                PriorityBroadcasts.term(OTHER_CHANNEL, nowHour + 1));
+        addDocument(writer, false, PriorityBroadcasts.term(OTHER_CHANNEL, nowHour + 24));
+        // indexed before future broadcasts were
+        addDocument(writer, true);
+        // flagged, but indexed with its future broadcasts, which have ended
+        Document marked = document(true);
+        marked.add(priorityBroadcasts.marker().field());
+        writer.addDocument(marked);
+        writer.close();
+        IndexReader segment = IndexReader.open(directory, true).getSequentialSubReaders()[0];
+
+        assertThat(boosted(segment, Optional.<String>absent()), is(bits(0, 1, 3)));
+        assertThat(boosted(segment, Optional.of(OTHER_GROUP)), is(bits(1, 2)));
+        assertThat(boosted(segment, Optional.of("unknown")), is(bits()));
+
+        clock.jumpForward(Duration.standardHours(2));
+        assertThat(boosted(segment, Optional.<String>absent()), is(bits(1, 3)));
+        assertThat(boosted(segment, Optional.of(OTHER_GROUP)), is(bits(2)));
+
+        clock.jumpForward(Duration.standardDays(2));
+        assertThat(boosted(segment, Optional.<String>absent()), is(bits(3)));
+        assertThat(boosted(segment, Optional.of(OTHER_GROUP)), is(bits()));
+    }
+
+    private OpenBitSet boosted(IndexReader segment, Optional<String> channelGroup) throws Exception {
+        return priorityBroadcasts.boosted(channelGroup).docs(segment);
+    }
+
+    private OpenBitSet bits(int... docs) {
+        OpenBitSet bits = new OpenBitSet(5);
+        for (int doc : docs) {
+            bits.fastSet(doc);
+        }
+        return bits;
+    }
+
+    private void addDocument(IndexWriter writer, boolean onPriorityChannel, String... futureBroadcasts) throws Exception {
+        writer.addDocument(document(onPriorityChannel, futureBroadcasts));
+    }
+
+    private Document document(boolean onPriorityChannel, String... futureBroadcasts) {
+        Document doc = new Document();
+        for (String futureBroadcast : futureBroadcasts) {
+            doc.add(new Field(LuceneContentIndex.FIELD_FUTURE_BROADCASTS, futureBroadcast,
+                    Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+        }
+        if (onPriorityChannel) {
+            doc.add(new NumericField(LuceneContentIndex.FIELD_ON_PRIORITY_CHANNEL_IN_FUTURE, Field.Store.YES, true)
+                    .setIntValue(1));
+        }
+        return doc;
+    }
+}
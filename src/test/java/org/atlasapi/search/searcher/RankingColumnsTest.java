@@ -0,0 +1,75 @@
+package org.atlasapi.search.searcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+public class RankingColumnsTest {
+
+    @Test
+    public void testColumnsAreWrittenOnceAndDeletedWhenTheirSegmentIsOrHalfWritten() throws Exception {
+        File dir = Files.createTempDir();
+        dir.deleteOnExit();
+        IndexWriter writer = new IndexWriter(FSDirectory.open(dir), new StandardAnalyzer(Version.LUCENE_30), MaxFieldLength.UNLIMITED);
+        addDocument(writer, 371000, false);
+        addDocument(writer, 0, true);
+        writer.commit();
+
+        IndexReader reader = IndexReader.open(writer.getDirectory(), true);
+        IndexReader segment = reader.getSequentialSubReaders()[0];
+        RankingColumns.SegmentColumns columns = new RankingColumns().forSegment(segment);
+        assertThat(columns.broadcastHour(0), is(371000));
+        assertThat(columns.onPriorityChannel(0), is(0));
+        assertThat(columns.broadcastHour(1), is(0));
+        assertThat(columns.onPriorityChannel(1), is(1));
+
+        File file = new File(dir, ((SegmentReader) segment).getSegmentName() + "." + RankingColumns.EXTENSION);
+        assertTrue(file.exists());
+        long written = file.lastModified();
+        // another run maps the file already written
+        assertThat(new RankingColumns().forSegment(segment).broadcastHour(0), is(371000));
+        assertThat(file.lastModified(), is(written));
+
+        addDocument(writer, 371024, false);
+        writer.optimize();
+        writer.commit();
+        IndexReader optimized = reader.reopen();
+        File halfWritten = new File(dir, ((SegmentReader) segment).getSegmentName() + "." + RankingColumns.WRITING_EXTENSION);
+        assertTrue(halfWritten.createNewFile());
+        RankingColumns rankingColumns = new RankingColumns();
+        SegmentSlice slice = new SegmentSlice(optimized, ImmutableList.of(optimized.getSequentialSubReaders()[0]), ImmutableList.of(0));
+        rankingColumns.warm(slice);
+        rankingColumns.retainOnly(slice);
+        assertFalse(file.exists());
+        assertFalse(halfWritten.exists());
+        assertThat(rankingColumns.forSegment(optimized.getSequentialSubReaders()[0]).broadcastHour(2), is(371024));
+        writer.close();
+    }
+
+    private void addDocument(IndexWriter writer, int broadcastHour, boolean onPriorityChannel) throws Exception {
+        Document doc = new Document();
+        doc.add(new Field("uri", "uri", Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new NumericField(LuceneContentIndex.FIELD_BROADCAST_HOUR_TS, Field.Store.YES, true).setIntValue(broadcastHour));
+        doc.add(new NumericField(LuceneContentIndex.FIELD_ON_PRIORITY_CHANNEL_IN_FUTURE, Field.Store.YES, true)
+                .setIntValue(onPriorityChannel ? 1 : 0));
+        writer.addDocument(doc);
+    }
+}
@@ -3,12 +3,12 @@ package org.atlasapi.search.searcher;
 import java.io.File;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.atlasapi.media.channel.Channel;
 import org.atlasapi.media.channel.ChannelResolver;
 import org.atlasapi.media.entity.Brand;
-import org.atlasapi.media.entity.Broadcast;
 import org.atlasapi.media.entity.Container;
 import org.atlasapi.media.entity.Item;
 import org.atlasapi.media.entity.testing.ComplexBroadcastTestDataBuilder;
@@ -21,6 +21,7 @@ import com.metabroadcast.common.base.Maybe;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Files;
 import org.jmock.lib.concurrent.DeterministicScheduler;
 import org.joda.time.DateTime;
@@ -122,8 +123,13 @@ public class ReloadingContentBootstrapperTest {
     private static class DummyBroadcastBooster implements BroadcastBooster {
 
         @Override
-        public boolean shouldBoost(Broadcast broadcast) {
-            return false;
+        public Set<String> priorityChannels() {
+            return ImmutableSet.of();
+        }
+
+        @Override
+        public Set<String> priorityChannels(String channelGroup) {
+            return ImmutableSet.of();
         }
         
     }
@@ -0,0 +1,65 @@
+package org.atlasapi.search.searcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+
+import org.atlasapi.media.entity.Publisher;
+import org.atlasapi.media.entity.simple.ContentIdentifier;
+import org.atlasapi.search.model.SearchQuery;
+import org.atlasapi.search.model.SearchResults;
+import org.joda.time.Duration;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.metabroadcast.common.time.TimeMachine;
+
+public class SearchResultsCacheTest {
+
+    private static final int HOUR = 400000;
+
+    private final TimeMachine clock = new TimeMachine();
+    private final SearchResults results = new SearchResults(ImmutableList.<ContentIdentifier>of());
+
+    @Test
+    public void testEquivalentQueriesShareAnEntry() {
+        SearchResultsCache cache = new SearchResultsCache(10, Duration.ZERO, clock);
+
+        cache.put(SearchQuery.builder("The  Wire ")
+                .withPublishers(ImmutableSet.of(Publisher.BBC, Publisher.C4))
+                .build(), HOUR, 1, results);
+
+        SearchQuery equivalent = SearchQuery.builder("the wire")
+                .withPublishers(ImmutableSet.of(Publisher.C4, Publisher.BBC))
+                .isTopLevelOnly(false)
+                .build();
+        assertThat(cache.get(equivalent, HOUR, 1).get(), is(sameInstance(results)));
+        assertFalse(cache.get(SearchQuery.builder("the wire").build(), HOUR, 1).isPresent());
+    }
+
+    @Test
+    public void testEntriesFromEarlierGenerationsServedOnlyWithinStaleness() {
+        SearchResultsCache cache = new SearchResultsCache(10, Duration.standardSeconds(5), clock);
+        SearchQuery query = SearchQuery.builder("eastenders").build();
+
+        cache.put(query, HOUR, 1, results);
+        assertThat(cache.get(query, HOUR, 2).get(), is(sameInstance(results)));
+
+        clock.jumpForward(Duration.standardSeconds(6));
+        assertThat(cache.get(query, HOUR, 1).get(), is(sameInstance(results)));
+        assertFalse(cache.get(query, HOUR, 2).isPresent());
+        assertThat(cache.staleMisses(), is(1L));
+    }
+
+    @Test
+    public void testEntriesAreOnlyServedInTheHourTheyWereRankedFor() {
+        SearchResultsCache cache = new SearchResultsCache(10, Duration.ZERO, clock);
+        SearchQuery query = SearchQuery.builder("eastenders").build();
+
+        cache.put(query, HOUR, 1, results);
+        assertThat(cache.get(query, HOUR, 1).get(), is(sameInstance(results)));
+        assertFalse(cache.get(query, HOUR + 1, 1).isPresent());
+    }
+}
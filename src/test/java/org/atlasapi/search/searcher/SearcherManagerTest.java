@@ -0,0 +1,124 @@
+package org.atlasapi.search.searcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.metabroadcast.common.time.TimeMachine;
+
+public class SearcherManagerTest {
+
+    private IndexWriter writer;
+    private SearcherManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        writer = new IndexWriter(directory, new StandardAnalyzer(Version.LUCENE_30), MaxFieldLength.UNLIMITED);
+        addDocument("first");
+        manager = new SearcherManager(writer.getReader());
+    }
+
+    @Test
+    public void testRefreshPublishesNewGenerationOnlyWhenIndexChanged() throws Exception {
+        long initial = manager.currentGeneration();
+
+        assertFalse(manager.maybeRefresh());
+        assertThat(manager.currentGeneration(), is(initial));
+
+        addDocument("second");
+        assertTrue(manager.maybeRefresh());
+        assertThat(manager.currentGeneration(), is(initial + 1));
+
+        SearcherGeneration generation = manager.acquire();
+        assertThat(generation.reader().numDocs(), is(2));
+        manager.release(generation);
+    }
+
+    @Test
+    public void testPreviousGenerationClosedOnlyAfterLastRelease() throws Exception {
+        SearcherGeneration inFlight = manager.acquire();
+        IndexReader previousReader = inFlight.reader();
+
+        addDocument("second");
+        manager.maybeRefresh();
+
+        assertThat(previousReader.getRefCount(), is(1));
+        assertThat(inFlight.searcher().maxDoc(), is(1));
+
+        manager.release(inFlight);
+        assertThat(previousReader.getRefCount(), is(0));
+        assertFalse(inFlight.tryIncRef());
+    }
+
+    @Test
+    public void testSupersededGenerationRetainedForCursors() throws Exception {
+        TimeMachine clock = new TimeMachine();
+        manager = new SearcherManager(writer.getReader(), Duration.standardMinutes(1), clock);
+        long initial = manager.currentGeneration();
+
+        addDocument("second");
+        manager.maybeRefresh();
+
+        SearcherGeneration retained = manager.acquire(initial).get();
+        assertThat(retained.reader().numDocs(), is(1));
+        manager.release(retained);
+
+        clock.jumpForward(Duration.standardMinutes(2));
+        assertFalse(manager.acquire(initial).isPresent());
+        assertThat(retained.reader().getRefCount(), is(0));
+    }
+
+    @Test
+    public void testExpiredGenerationReleasedWithoutFurtherRequests() throws Exception {
+        TimeMachine clock = new TimeMachine();
+        manager = new SearcherManager(writer.getReader(), Duration.standardMinutes(1), clock);
+        SearcherGeneration superseded = manager.acquire();
+        manager.release(superseded);
+
+        addDocument("second");
+        manager.maybeRefresh();
+        manager.releaseExpired();
+        assertThat(superseded.reader().getRefCount(), is(1));
+
+        clock.jumpForward(Duration.standardMinutes(2));
+        manager.releaseExpired();
+        assertThat(superseded.reader().getRefCount(), is(0));
+    }
+
+    @Test
+    public void testCloseReleasesCurrentAndRetainedGenerations() throws Exception {
+        manager = new SearcherManager(writer.getReader(), Duration.standardMinutes(1), new TimeMachine());
+        SearcherGeneration superseded = manager.acquire();
+        manager.release(superseded);
+        addDocument("second");
+        manager.maybeRefresh();
+        SearcherGeneration inFlight = manager.acquire();
+
+        manager.close();
+        assertThat(superseded.reader().getRefCount(), is(0));
+        assertThat(inFlight.reader().getRefCount(), is(1));
+        manager.release(inFlight);
+        assertThat(inFlight.reader().getRefCount(), is(0));
+    }
+
+    private void addDocument(String value) throws Exception {
+        Document document = new Document();
+        document.add(new Field("field", value, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        writer.addDocument(document);
+        writer.commit();
+    }
+}
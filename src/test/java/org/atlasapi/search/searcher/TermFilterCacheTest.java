@@ -0,0 +1,60 @@
+package org.atlasapi.search.searcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TermFilterCacheTest {
+
+    private static final Term BBC = new Term("publisher", "BBC");
+    private static final Term C4 = new Term("publisher", "C4");
+
+    private final TermFilterCache cache = new TermFilterCache();
+
+    @Test
+    public void testSetsSharedAcrossReopenForUnchangedSegments() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new StandardAnalyzer(Version.LUCENE_30), MaxFieldLength.UNLIMITED);
+        addDocument(writer, "BBC");
+        addDocument(writer, "C4");
+        writer.commit();
+
+        IndexReader reader = IndexReader.open(directory, true);
+        IndexSearcher searcher = new IndexSearcher(reader);
+        assertThat(searcher.search(new MatchAllDocsQuery(), cache.filterFor(ImmutableList.of(BBC, C4)), 10).totalHits, is(2));
+        assertThat(searcher.search(new MatchAllDocsQuery(), cache.filterFor(C4), 10).totalHits, is(1));
+        DocIdSet firstSegmentSet = cache.docIdSet(reader.getSequentialSubReaders()[0], BBC);
+
+        addDocument(writer, "BBC");
+        writer.commit();
+        IndexReader reopened = reader.reopen();
+
+        assertThat(reopened.getSequentialSubReaders().length, is(2));
+        assertThat(cache.docIdSet(reopened.getSequentialSubReaders()[0], BBC), is(sameInstance(firstSegmentSet)));
+        assertThat(new IndexSearcher(reopened).search(new MatchAllDocsQuery(), cache.filterFor(BBC), 10).totalHits, is(2));
+        assertThat(cache.sizeInBytes(), is(greaterThan(0L)));
+    }
+
+    private void addDocument(IndexWriter writer, String publisher) throws Exception {
+        Document document = new Document();
+        document.add(new Field("publisher", publisher, Field.Store.NO, Field.Index.NOT_ANALYZED));
+        writer.addDocument(document);
+    }
+}
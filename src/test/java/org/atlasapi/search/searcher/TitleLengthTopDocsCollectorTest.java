@@ -0,0 +1,73 @@
+package org.atlasapi.search.searcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.MaxFieldLength;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+public class TitleLengthTopDocsCollectorTest {
+
+    private static final String LENGTH = "length";
+
+    @Test
+    public void testEqualScoresOrderedByTitleLengthAcrossSegments() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new StandardAnalyzer(Version.LUCENE_30), MaxFieldLength.UNLIMITED);
+        addDocument(writer, 9);
+        addDocument(writer, 3);
+        writer.commit();
+        addDocument(writer, 5);
+        addDocument(writer, 1);
+        writer.close();
+
+        IndexSearcher searcher = new IndexSearcher(directory, true);
+
+        TopDocs page = search(searcher, 1, 2);
+        assertThat(page.totalHits, is(4));
+        assertThat(page.scoreDocs.length, is(2));
+        assertThat(page.scoreDocs[0].doc, is(1));
+        assertThat(page.scoreDocs[1].doc, is(2));
+
+        assertThat(search(searcher, 4, 2).scoreDocs.length, is(0));
+        searcher.close();
+    }
+
+    @Test
+    public void testDocsWithoutTitleLengthLoseTies() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new StandardAnalyzer(Version.LUCENE_30), MaxFieldLength.UNLIMITED);
+        writer.addDocument(new Document());
+        addDocument(writer, 9);
+        writer.close();
+
+        IndexSearcher searcher = new IndexSearcher(directory, true);
+
+        TopDocs page = search(searcher, 0, 2);
+        assertThat(page.scoreDocs[0].doc, is(1));
+        assertThat(page.scoreDocs[1].doc, is(0));
+        searcher.close();
+    }
+
+    private TopDocs search(IndexSearcher searcher, int start, int howMany) throws Exception {
+        TitleLengthTopDocsCollector collector = new TitleLengthTopDocsCollector(LENGTH, start + howMany);
+        searcher.search(new MatchAllDocsQuery(), collector);
+        return collector.topDocs(start, howMany);
+    }
+
+    private void addDocument(IndexWriter writer, int length) throws Exception {
+        Document document = new Document();
+        document.add(new NumericField(LENGTH, Field.Store.NO, true).setIntValue(length));
+        writer.addDocument(document);
+    }
+}
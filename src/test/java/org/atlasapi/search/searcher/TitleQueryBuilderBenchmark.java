@@ -0,0 +1,94 @@
+package org.atlasapi.search.searcher;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
+/**
+ * Measures the time and, with the GC profiler, the allocation of analysing
+ * title queries. The regex benchmarks tokenize and flatten as the builder used
+ * to, as a baseline.
+ *
+ * Run from the IDE or with the test classpath, e.g.
+ * {@code mvn test-compile exec:java -Dexec.mainClass=org.atlasapi.search.searcher.TitleQueryBuilderBenchmark -Dexec.classpathScope=test}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TitleQueryBuilderBenchmark {
+
+    @Param({ "eastenders", "dr who christmas special", "The Great British Bake Off: Extra Slice" })
+    public String title;
+
+    private final TitleQueryBuilder builder = new TitleQueryBuilder();
+
+    @Benchmark
+    public Query build() {
+        return builder.build(title);
+    }
+
+    @Benchmark
+    public String flatten() {
+        return builder.flatten(title);
+    }
+
+    @Benchmark
+    public String regexFlatten() {
+        return Joiner.on("").join(regexTokens(title)).replaceAll("[^a-zA-Z0-9]", "").toLowerCase();
+    }
+
+    @Benchmark
+    public Object regexAnalysis() {
+        // the former build tokenized once for tokens and twice more to flatten
+        List<String> tokens = regexTokens(title);
+        return new Object[] { tokens, regexFlatten(), regexFlatten() };
+    }
+
+    private static List<String> regexTokens(String queryString) {
+        TokenStream tokens = new StandardAnalyzer(Version.LUCENE_30).tokenStream("", new StringReader(queryString));
+        List<String> tokensAsStrings = Lists.newArrayList();
+        try {
+            while (tokens.incrementToken()) {
+                TermAttribute token = tokens.getAttribute(TermAttribute.class);
+                tokensAsStrings.add(token.term());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return tokensAsStrings;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TitleQueryBuilderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}